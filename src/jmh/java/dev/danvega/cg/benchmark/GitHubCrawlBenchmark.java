@@ -0,0 +1,175 @@
+package dev.danvega.cg.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import dev.danvega.cg.filter.ContentLimits;
+import dev.danvega.cg.filter.PathFilter;
+import dev.danvega.cg.gh.FetchMode;
+import dev.danvega.cg.gh.GitHubConfiguration;
+import dev.danvega.cg.gh.GitHubService;
+import dev.danvega.cg.metrics.PipelineMetrics;
+import dev.danvega.cg.output.DocumentWriter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.client.RestClient;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Crawls a repository of synthetic files from an in-process stub of the GitHub API that delays every response
+ * by a fixed latency. HTTP and blob caching are disabled, so every iteration fetches everything again. The stub
+ * answers GraphQL blob queries too, so the request count of each mode shows up directly in the latency.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class GitHubCrawlBenchmark {
+
+    @Param({"TREES", "GRAPHQL", "TARBALL"})
+    FetchMode fetchMode;
+
+    @Param({"0", "20"})
+    int latencyMillis;
+
+    @Param({"500"})
+    int files;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, byte[]> responses = new HashMap<>();
+    private final Map<String, String> texts = new HashMap<>();
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private GitHubService service;
+
+    @Setup
+    public void startServer() throws IOException {
+        StringBuilder tree = new StringBuilder("{\"sha\":\"root\",\"truncated\":false,\"tree\":[");
+        ByteArrayOutputStream tarball = new ByteArrayOutputStream();
+        try (GZIPOutputStream tar = new GZIPOutputStream(tarball)) {
+            for (int i = 0; i < files; i++) {
+                String path = "src/main/java/pkg" + i % 20 + "/File" + i + ".java";
+                byte[] content = SyntheticSources.javaClass("File" + i, 1 + i % 60).getBytes(StandardCharsets.UTF_8);
+                String sha = String.format("%040x", i);
+                tree.append(i == 0 ? "" : ",")
+                        .append("{\"path\":\"").append(path).append("\",\"mode\":\"100644\",\"type\":\"blob\",\"sha\":\"")
+                        .append(sha).append("\",\"size\":").append(content.length).append('}');
+                responses.put("/repos/owner/repo/git/blobs/" + sha, content);
+                texts.put("HEAD:" + path, new String(content, StandardCharsets.UTF_8));
+                writeTarEntry(tar, "owner-repo-root/" + path, content);
+            }
+            tar.write(new byte[1024]);
+        }
+        responses.put("/repos/owner/repo/git/trees/HEAD", tree.append("]}").toString().getBytes(StandardCharsets.UTF_8));
+        responses.put("/repos/owner/repo/tarball/HEAD", tarball.toByteArray());
+
+        serverExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(serverExecutor);
+        server.createContext("/", this::handle);
+        server.start();
+
+        GitHubConfiguration config = new GitHubConfiguration("benchmark", SyntheticSources.INCLUDES,
+                SyntheticSources.EXCLUDES, fetchMode, 8,
+                new GitHubConfiguration.HttpCache(false, null, null, null),
+                new GitHubConfiguration.BlobStore(false, null, null, null),
+                "http://127.0.0.1:" + server.getAddress().getPort(),
+                new GitHubConfiguration.RateLimit(false, 0, Duration.ZERO, Duration.ZERO, Duration.ZERO, 0),
+                new GitHubConfiguration.GraphQl(100, DataSize.ofMegabytes(2)));
+        service = new GitHubService(RestClient.builder(), objectMapper, config,
+                PathFilter.of(config.includePatterns(), config.excludePatterns()), ContentLimits.NONE,
+                new PipelineMetrics(new SimpleMeterRegistry()));
+    }
+
+    @TearDown
+    public void stopServer() {
+        server.stop(0);
+        serverExecutor.close();
+    }
+
+    @Benchmark
+    public long crawl() throws IOException {
+        try (DocumentWriter writer = new DocumentWriter(OutputStream.nullOutputStream())) {
+            service.downloadRepositoryContents("owner", "repo", fetchMode, writer);
+            return writer.bytesWritten();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        byte[] body = exchange.getRequestURI().getPath().equals("/graphql")
+                ? graphQlResponse(objectMapper.readTree(exchange.getRequestBody()).path("variables"))
+                : responses.get(exchange.getRequestURI().getPath());
+        if (body == null) {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private byte[] graphQlResponse(JsonNode variables) {
+        ObjectNode response = objectMapper.createObjectNode();
+        ObjectNode repository = response.putObject("data").putObject("repository");
+        for (int i = 0; variables.has("e" + i); i++) {
+            String text = texts.get(variables.path("e" + i).asText());
+            repository.putObject("f" + i)
+                    .put("text", text)
+                    .put("byteSize", text.length())
+                    .put("isBinary", false)
+                    .put("isTruncated", false);
+        }
+        return response.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void writeTarEntry(OutputStream tar, String name, byte[] data) throws IOException {
+        byte[] header = new byte[512];
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(nameBytes, 0, header, 0, Math.min(nameBytes.length, 100));
+        byte[] size = String.format("%011o", data.length).getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(size, 0, header, 124, size.length);
+        header[156] = '0';
+        System.arraycopy("ustar".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 5);
+        tar.write(header);
+        tar.write(data);
+        tar.write(new byte[(512 - data.length % 512) % 512]);
+    }
+}
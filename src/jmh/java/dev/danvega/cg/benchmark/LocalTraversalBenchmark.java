@@ -0,0 +1,73 @@
+package dev.danvega.cg.benchmark;
+
+import dev.danvega.cg.filter.ContentLimits;
+import dev.danvega.cg.filter.PathFilter;
+import dev.danvega.cg.local.LocalFileService;
+import dev.danvega.cg.metrics.PipelineMetrics;
+import dev.danvega.cg.output.DocumentWriter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scans, validates and renders a synthetic source tree with {@link LocalFileService#processLocalDirectory}.
+ * A fifth of the files sit below excluded directories, so directory pruning is part of the measurement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LocalTraversalBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    int files;
+
+    private Path root;
+    private LocalFileService service;
+
+    @Setup
+    public void createTree() throws IOException {
+        root = Files.createTempDirectory("local-traversal");
+        for (int i = 0; i < files; i++) {
+            String directory = i % 5 == 0 ? "target/classes/pkg" + i % 50 : "src/main/java/pkg" + i % 50 + "/sub" + i % 7;
+            Path file = root.resolve(directory).resolve("File" + i + ".java");
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, SyntheticSources.javaClass("File" + i, 1 + i % 40));
+        }
+        service = new LocalFileService(PathFilter.of(SyntheticSources.INCLUDES, SyntheticSources.EXCLUDES),
+                ContentLimits.NONE, new PipelineMetrics(new SimpleMeterRegistry()), true, 16, DataSize.ofMegabytes(32), false, 0);
+    }
+
+    @TearDown
+    public void deleteTree() throws IOException {
+        FileSystemUtils.deleteRecursively(root);
+    }
+
+    @Benchmark
+    public long processLocalDirectory() throws IOException {
+        try (DocumentWriter writer = new DocumentWriter(OutputStream.nullOutputStream())) {
+            service.processLocalDirectory(root.toString(), writer);
+            return writer.bytesWritten();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package dev.danvega.cg.benchmark;
+
+import dev.danvega.cg.filter.PathFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matches 10,000 repository paths against the default include and exclude patterns.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathFilterBenchmark {
+
+    private PathFilter filter;
+    private List<String> paths;
+    private List<String> directories;
+
+    @Setup
+    public void setUp() {
+        filter = PathFilter.of(SyntheticSources.INCLUDES, SyntheticSources.EXCLUDES);
+        paths = SyntheticSources.paths(10_000);
+        directories = paths.stream().map(path -> path.substring(0, path.lastIndexOf('/'))).distinct().toList();
+    }
+
+    @Benchmark
+    public int includes() {
+        int included = 0;
+        for (String path : paths) {
+            if (filter.includes(path)) {
+                included++;
+            }
+        }
+        return included;
+    }
+
+    @Benchmark
+    public int excludesDirectory() {
+        int excluded = 0;
+        for (String directory : directories) {
+            if (filter.excludesDirectory(directory)) {
+                excluded++;
+            }
+        }
+        return excluded;
+    }
+
+    @Benchmark
+    public PathFilter compile() {
+        return PathFilter.of(SyntheticSources.INCLUDES, SyntheticSources.EXCLUDES);
+    }
+}
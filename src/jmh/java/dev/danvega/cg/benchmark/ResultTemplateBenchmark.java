@@ -0,0 +1,69 @@
+package dev.danvega.cg.benchmark;
+
+import dev.danvega.cg.GeneratedContent;
+import gg.jte.ContentType;
+import gg.jte.TemplateEngine;
+import gg.jte.output.StringOutput;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders {@code result.jte} with a generated document of the given size, using the templates precompiled by
+ * the jte Maven plugin. The document is streamed in as UTF-8 bytes and contains the characters HTML escaping has
+ * to replace.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResultTemplateBenchmark {
+
+    @Param({"100000", "1000000", "10000000"})
+    int contentLength;
+
+    private TemplateEngine templateEngine;
+    private Map<String, Object> model;
+
+    @Setup
+    public void setUp() {
+        templateEngine = TemplateEngine.createPrecompiled(ContentType.Html);
+        StringBuilder content = new StringBuilder(contentLength + 1024);
+        int file = 0;
+        while (content.length() < contentLength) {
+            content.append("File: src/main/java/File").append(file).append(".java\n\n")
+                    .append(SyntheticSources.javaClass("File" + file, 30))
+                    .append("// if (a < b && b > c) { return \"quoted\"; }\n\n");
+            file++;
+        }
+        content.setLength(contentLength);
+        byte[] document = content.toString().getBytes(StandardCharsets.UTF_8);
+        model = new HashMap<>();
+        model.put("content", new GeneratedContent(out -> {
+            out.write(document);
+            return null;
+        }));
+    }
+
+    @Benchmark
+    public String render() {
+        StringOutput output = new StringOutput();
+        templateEngine.render("result.jte", model, output);
+        return output.toString();
+    }
+}
@@ -0,0 +1,50 @@
+package dev.danvega.cg.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Synthetic file names, contents and filter patterns shared by the benchmarks. The patterns are the defaults
+ * from {@code application.yaml}.
+ */
+final class SyntheticSources {
+
+    static final List<String> INCLUDES = List.of("**/*.md", "**/*.txt", "**/*.xml", "**/*.java", "**/*.jte",
+            "**/*.yaml", "**/*.yml", "**/*.graphqls", "**/*.properties");
+
+    static final List<String> EXCLUDES = List.of(".mvn/**", ".idea/**", "target/**", ".gitignore", ".gitattributes",
+            "mvnw", "mvnw.cmd", "CLIENT_ID", "HELP.md");
+
+    private static final String[] EXTENSIONS = {".java", ".md", ".xml", ".png", ".class", ".yaml", ".js", ".properties"};
+
+    private SyntheticSources() {
+    }
+
+    /**
+     * Returns a Java class of roughly {@code lines} lines.
+     */
+    static String javaClass(String name, int lines) {
+        StringBuilder source = new StringBuilder("package bench;\n\npublic class ").append(name).append(" {\n");
+        for (int i = 0; i < lines; i++) {
+            source.append("    private final String field").append(i).append(" = \"value ").append(i).append("\";\n");
+        }
+        return source.append("}\n").toString();
+    }
+
+    /**
+     * Returns repository paths with a realistic mix of directories, extensions and excluded build output.
+     */
+    static List<String> paths(int count) {
+        List<String> paths = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String directory = switch (i % 6) {
+                case 0 -> "target/classes/dev/example/pkg" + i % 40;
+                case 1 -> "docs/guide/section" + i % 12;
+                case 2 -> ".idea/libraries";
+                default -> "src/main/java/dev/example/pkg" + i % 40 + "/sub" + i % 9;
+            };
+            paths.add(directory + "/File" + i + EXTENSIONS[i % EXTENSIONS.length]);
+        }
+        return paths;
+    }
+}
@@ -1,18 +1,42 @@
 package dev.danvega.cg;
 
+import dev.danvega.cg.batch.BatchApplication;
+import dev.danvega.cg.filter.ContentLimits;
+import dev.danvega.cg.filter.FilePriority;
+import dev.danvega.cg.filter.PathFilter;
 import dev.danvega.cg.gh.GitHubConfiguration;
+import dev.danvega.cg.output.DeduplicationConfiguration;
+import dev.danvega.cg.output.TokenBudgetConfiguration;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ImportRuntimeHints;
 
+import java.util.Arrays;
+
 @ImportRuntimeHints(ResourceBundleRuntimeHints.class)
-@EnableConfigurationProperties(GitHubConfiguration.class)
+@EnableConfigurationProperties({GitHubConfiguration.class, TokenBudgetConfiguration.class, ContentLimits.class,
+		DeduplicationConfiguration.class})
 @SpringBootApplication
 public class Application {
 
 	public static void main(String[] args) {
+		// A single entry point, so the native executable can run batches too
+		if (args.length > 0 && args[0].equals("batch")) {
+			System.exit(BatchApplication.run(Arrays.copyOfRange(args, 1, args.length)));
+		}
 		SpringApplication.run(Application.class, args);
 	}
 
+	@Bean
+	PathFilter pathFilter(GitHubConfiguration config) {
+		return PathFilter.of(config.includePatterns(), config.excludePatterns());
+	}
+
+	@Bean
+	FilePriority filePriority(TokenBudgetConfiguration config) {
+		return FilePriority.of(config.priorities());
+	}
+
 }
@@ -1,19 +1,34 @@
 package dev.danvega.cg;
 
+import dev.danvega.cg.cache.ResultCache;
+import dev.danvega.cg.gh.FetchMode;
 import dev.danvega.cg.gh.GitHubService;
 import dev.danvega.cg.local.LocalFileService;
+import dev.danvega.cg.metrics.PipelineMetrics;
+import dev.danvega.cg.metrics.PipelineStage;
+import dev.danvega.cg.output.Gzip;
+import dev.danvega.cg.snapshot.ViewFilter;
 import gg.jte.TemplateEngine;
-import gg.jte.output.StringOutput;
+import gg.jte.TemplateOutput;
+import gg.jte.output.WriterOutput;
+import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.Map;
 
 @Controller
@@ -23,12 +38,14 @@ public class ContentGeneratorController {
     private final LocalFileService localFileService;
     private final TemplateEngine templateEngine;
     private final ContentGeneratorService contentGeneratorService;
+    private final PipelineMetrics metrics;
 
-    public ContentGeneratorController(GitHubService ghService, LocalFileService localFileService, TemplateEngine templateEngine, ContentGeneratorService contentGeneratorService) {
+    public ContentGeneratorController(GitHubService ghService, LocalFileService localFileService, TemplateEngine templateEngine, ContentGeneratorService contentGeneratorService, PipelineMetrics metrics) {
         this.ghService = ghService;
         this.localFileService = localFileService;
         this.templateEngine = templateEngine;
         this.contentGeneratorService = contentGeneratorService;
+        this.metrics = metrics;
     }
 
     @GetMapping("/")
@@ -36,25 +53,126 @@ public class ContentGeneratorController {
         return "index";
     }
 
+    /**
+     * Renders the result page for the generated document. The document is generated while the page is rendered and
+     * written straight to the response, so it is never held in memory as a whole. Errors that occur before the
+     * response is committed are reported as an internal server error.
+     */
     @PostMapping("/generate")
-    @ResponseBody
-    public ResponseEntity<String> generate(@RequestParam(required = false) String githubUrl,
-                                                 @RequestParam(required = false) String localPath) {
+    public void generate(@RequestParam(required = false) String githubUrl,
+                         @RequestParam(required = false) String localPath,
+                         @RequestParam(required = false) FetchMode fetchMode,
+                         @RequestParam(required = false) Long tokenBudget,
+                         @RequestParam(required = false) List<String> include,
+                         @RequestParam(required = false) List<String> exclude,
+                         @RequestParam(required = false) String prefix,
+                         HttpServletResponse response) throws IOException {
 
         if ((githubUrl == null || githubUrl.isBlank()) && (localPath == null || localPath.isBlank())) {
-            return ResponseEntity.badRequest().body("Error: Either GitHub URL or local path must be provided.");
+            writeError(response, HttpStatus.BAD_REQUEST, "Error: Either GitHub URL or local path must be provided.");
+            return;
         }
 
-
+        GenerationRequest request = request(githubUrl, localPath, fetchMode, tokenBudget,
+                ViewFilter.of(include, exclude, prefix));
+        Map<String, Object> model = Map.of("content",
+                new GeneratedContent(out -> contentGeneratorService.generateContent(request, out, false)));
+        response.setContentType(MediaType.TEXT_HTML_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
         try {
-            String content = contentGeneratorService.generateContent(githubUrl, localPath);
-            StringOutput output = new StringOutput();
-            templateEngine.render("result.jte", Map.of("content", content), output);
-            return ResponseEntity.ok(output.toString());
+            TemplateOutput output = new WriterOutput(response.getWriter());
+            metrics.observe(PipelineStage.RENDER, "result.jte", () -> {
+                templateEngine.render("result.jte", model, output);
+                return null;
+            });
         } catch (Exception e) {
             log.error("Error generating content", e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error generating content: " + e.getMessage());
+            if (response.isCommitted()) {
+                // Part of the page has been sent already, so the status can no longer be changed
+                throw new IllegalStateException("Error generating content: " + e.getMessage(), e);
+            }
+            response.reset();
+            writeError(response, HttpStatus.INTERNAL_SERVER_ERROR, "Error generating content: " + e.getMessage());
         }
     }
-}
 
+    @GetMapping("/cache/stats")
+    @ResponseBody
+    public ResultCache.Stats cacheStats() {
+        return contentGeneratorService.cacheStats();
+    }
+
+    /**
+     * Returns the stage timings, file, byte and API call counts and the rate limit gauges of the pipeline.
+     */
+    @GetMapping("/pipeline/stats")
+    @ResponseBody
+    public PipelineMetrics.Snapshot pipelineStats() {
+        return metrics.snapshot();
+    }
+
+    /**
+     * Streams the generated document as plain text. Every file section is sent to the client
+     * as soon as it has been produced, so memory use does not grow with the repository size.
+     * Clients that accept gzip get the document gzip compressed, and a cached or shared document
+     * is sent in its stored compressed form. The {@code include}, {@code exclude} and {@code prefix}
+     * parameters narrow the document down to a view, which is served from the snapshot of the full document.
+     * A {@code tokenBudget} is rejected, because a plain text stream has no place for the per-file summary;
+     * {@code /generate} and {@code /jobs} return it.
+     */
+    @PostMapping("/generate/stream")
+    public ResponseEntity<StreamingResponseBody> generateStream(@RequestParam(required = false) String githubUrl,
+                                                                @RequestParam(required = false) String localPath,
+                                                                @RequestParam(required = false) FetchMode fetchMode,
+                                                                @RequestParam(required = false) Long tokenBudget,
+                                                                @RequestParam(required = false) List<String> include,
+                                                                @RequestParam(required = false) List<String> exclude,
+                                                                @RequestParam(required = false) String prefix,
+                                                                @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+
+        if ((githubUrl == null || githubUrl.isBlank()) && (localPath == null || localPath.isBlank())) {
+            return ResponseEntity.badRequest()
+                    .contentType(MediaType.TEXT_PLAIN)
+                    .body(out -> out.write("Error: Either GitHub URL or local path must be provided.".getBytes(StandardCharsets.UTF_8)));
+        }
+        if (tokenBudget != null) {
+            return ResponseEntity.badRequest()
+                    .contentType(MediaType.TEXT_PLAIN)
+                    .body(out -> out.write(("Error: tokenBudget is not supported by /generate/stream, use /generate or /jobs "
+                            + "to get the per-file summary.").getBytes(StandardCharsets.UTF_8)));
+        }
+
+        boolean gzip = Gzip.isAccepted(acceptEncoding);
+        ViewFilter view = ViewFilter.of(include, exclude, prefix);
+        StreamingResponseBody body = out -> {
+            try {
+                contentGeneratorService.generateContent(request(githubUrl, localPath, fetchMode, null, view), out, gzip);
+            } catch (Exception e) {
+                // The response is already committed at this point, so the status can no longer be changed
+                log.error("Error streaming content", e);
+                throw new IllegalStateException("Error generating content: " + e.getMessage(), e);
+            }
+        };
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8))
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, Gzip.ENCODING);
+        }
+        return response.body(body);
+    }
+
+    private static GenerationRequest request(String githubUrl, String localPath, FetchMode fetchMode, Long tokenBudget,
+                                             ViewFilter view) {
+        return GenerationRequest.of(githubUrl, localPath, fetchMode)
+                .withTokenBudget(tokenBudget != null ? tokenBudget : 0)
+                .withView(view);
+    }
+
+    private static void writeError(HttpServletResponse response, HttpStatus status, String message) throws IOException {
+        response.setStatus(status.value());
+        response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.getWriter().write(message);
+    }
+}
@@ -1,14 +1,54 @@
 package dev.danvega.cg;
 
+import dev.danvega.cg.cache.ResultCache;
+import dev.danvega.cg.filter.ContentLimits;
+import dev.danvega.cg.filter.FilePriority;
+import dev.danvega.cg.gh.FetchMode;
+import dev.danvega.cg.gh.GitHubConfiguration;
 import dev.danvega.cg.gh.GitHubService;
 import dev.danvega.cg.local.LocalFileService;
+import dev.danvega.cg.metrics.MeteredSink;
+import dev.danvega.cg.metrics.PipelineMetrics;
+import dev.danvega.cg.metrics.PipelineStage;
+import dev.danvega.cg.mirror.MirrorService;
+import dev.danvega.cg.output.ContentSink;
+import dev.danvega.cg.output.DeduplicatingSink;
+import dev.danvega.cg.output.DeduplicationConfiguration;
+import dev.danvega.cg.output.DocumentWriter;
+import dev.danvega.cg.output.Gzip;
+import dev.danvega.cg.output.ProgressListener;
+import dev.danvega.cg.output.TokenBudgetExceededException;
+import dev.danvega.cg.output.TokenBudgetSink;
+import dev.danvega.cg.output.TeeOutputStream;
+import dev.danvega.cg.output.TokenSummary;
+import dev.danvega.cg.shard.ShardStore;
+import dev.danvega.cg.shard.ShardWriter;
+import dev.danvega.cg.snapshot.Snapshot;
+import dev.danvega.cg.snapshot.SnapshotStore;
+import dev.danvega.cg.snapshot.SnapshotWriter;
+import dev.danvega.cg.snapshot.ViewFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.zip.GZIPOutputStream;
 
 @Service
 public class ContentGeneratorService {
@@ -16,29 +56,438 @@ public class ContentGeneratorService {
     private static final Logger log = LoggerFactory.getLogger(ContentGeneratorService.class);
     private final GitHubService ghService;
     private final LocalFileService localFileService;
+    private final MirrorService mirrorService;
+    private final ResultCache resultCache;
+    private final ShardStore shardStore;
+    private final SnapshotStore snapshotStore;
+    private final String filterKey;
+    private final FetchMode defaultFetchMode;
+    private final FilePriority filePriority;
+    private final DeduplicationConfiguration deduplication;
+    private final PipelineMetrics metrics;
+    private final SingleFlight flights = new SingleFlight();
     @Value("${app.output.directory}")
     private String outputDirectory;
 
-    public ContentGeneratorService(GitHubService ghService, LocalFileService localFileService) {
+    public ContentGeneratorService(GitHubService ghService, LocalFileService localFileService,
+                                   MirrorService mirrorService, ResultCache resultCache, ShardStore shardStore,
+                                   SnapshotStore snapshotStore, GitHubConfiguration config, FilePriority filePriority, ContentLimits limits,
+                                   DeduplicationConfiguration deduplication, PipelineMetrics metrics) {
         this.ghService = ghService;
         this.localFileService = localFileService;
+        this.mirrorService = mirrorService;
+        this.resultCache = resultCache;
+        this.shardStore = shardStore;
+        this.snapshotStore = snapshotStore;
+        this.filterKey = String.join(",", config.includePatterns()) + "|" + String.join(",", config.excludePatterns())
+                + "|" + limits.maxFileSize().toBytes() + "," + limits.maxTotalSize().toBytes() + "," + limits.skipBinary()
+                + "|" + (deduplication.enabled() ? "dedup," + deduplication.minSize().toBytes() : "");
+        this.defaultFetchMode = config.fetchMode();
+        this.filePriority = filePriority;
+        this.deduplication = deduplication;
+        this.metrics = metrics;
     }
 
-    public String generateContent(String githubUrl, String localPath) throws Exception {
+    /**
+     * Generates the document for a GitHub repository or a local directory and streams it, file by file,
+     * to the given output stream and, gzip compressed, to {@code <output directory>/<name>.md.gz}. When sharding is
+     * enabled, the document is also split into context-window-sized shards, see {@link ShardStore}.
+     * <p>
+     * When the result cache is enabled, the source is first resolved to a revision (the commit SHA of a GitHub
+     * repository or a fingerprint of a local directory) and a document cached for that revision and the active
+     * filter patterns is served without fetching anything. Documents are stored compressed, so a compressed
+     * document that is served from the cache or shared with a concurrent request is copied as it is.
+     * <p>
+     * With a token budget, files are written in the configured priority order and generation stops at the first
+     * file that does not fit. Budgeted documents bypass the result cache and are never shared with concurrent
+     * requests, because every caller gets its own per-file summary. They are stored as
+     * {@code <name>-budget-<tokens>.md.gz} with shards of their own, so the full document is left as it is. The
+     * budget can only steer which files are fetched when the file list is known up front, so GitHub repositories are
+     * fetched in {@link FetchMode#TREES} mode whenever a budget is set, unless {@link FetchMode#GRAPHQL} or
+     * {@link FetchMode#MIRROR}, which list the files up front as well, is requested.
+     * <p>
+     * Views are sliced out of the {@link Snapshot} of the full document for the current revision, so several views
+     * of a repository cost a single crawl. When there is no snapshot yet, the source is crawled once and filtered, and
+     * that crawl records the snapshot; when snapshots or the result cache are disabled, the crawl is only filtered.
+     *
+     * @param request The source and the part of the document to generate.
+     * @param out     The stream every file section is written to as soon as it is produced.
+     * @param gzip    Whether {@code out} receives the document gzip compressed.
+     * @return The per-file token and byte summary, or null if no budget was set.
+     * @throws Exception If the content cannot be generated.
+     */
+    public TokenSummary generateContent(GenerationRequest request, OutputStream out, boolean gzip) throws Exception {
+        return metrics.observe(PipelineStage.GENERATE, request.source(),
+                () -> generateSource(request.githubUrl(), request.localPath(), request.fetchMode(),
+                        request.tokenBudget(), out, gzip, request.listener(), request.view()));
+    }
+
+    private TokenSummary generateSource(String githubUrl, String localPath, FetchMode fetchMode, long tokenBudget,
+                                        OutputStream out, boolean gzip, ProgressListener listener, ViewFilter view)
+            throws Exception {
         if (githubUrl != null && !githubUrl.isBlank()) {
             log.info("Processing GitHub URL: {}", githubUrl);
             String[] parts = githubUrl.split("/");
             String owner = parts[parts.length - 2];
             String repo = parts[parts.length - 1];
-            ghService.downloadRepositoryContents(owner, repo);
-            return new String(Files.readAllBytes(Paths.get(outputDirectory, repo + ".md")));
+            String source = "github:" + owner + "/" + repo;
+            FetchMode mode = fetchMode != null ? fetchMode : defaultFetchMode;
+            if (mode == FetchMode.MIRROR) {
+                String revision = resultCache.isEnabled()
+                        ? resultCache.revision(source, () -> mirrorRevision(githubUrl))
+                        : null;
+                String ref = revision != null ? revision : "HEAD";
+                return generate(repo, source, revision, view, tokenBudget, out, gzip, listener,
+                        sink -> mirrorService.processRepository(githubUrl, ref, sink));
+            }
+            String revision = resultCache.isEnabled()
+                    ? resultCache.revision(source, () -> ghService.resolveRevision(owner, repo, "HEAD"))
+                    : null;
+            String ref = revision != null ? revision : "HEAD";
+            if (tokenBudget > 0 && mode != FetchMode.TREES && mode != FetchMode.GRAPHQL) {
+                log.debug("Fetching {} in {} instead of {} mode to apply the token budget", githubUrl, FetchMode.TREES, mode);
+                mode = FetchMode.TREES;
+            }
+            FetchMode effectiveMode = mode;
+            return generate(repo, source, revision, view, tokenBudget, out, gzip, listener,
+                    sink -> ghService.downloadRepositoryContents(owner, repo, ref, effectiveMode, sink));
         } else if (localPath != null && !localPath.isBlank()) {
             log.info("Processing local path: {}", localPath);
             String outputName = Paths.get(localPath).getFileName().toString();
-            localFileService.processLocalDirectory(localPath, outputName);
-            return new String(Files.readAllBytes(Paths.get(outputDirectory, outputName + ".md")));
+            String source = "local:" + Paths.get(localPath).normalize().toAbsolutePath();
+            // Local edits must show up right away, so the directory is fingerprinted on every request
+            String revision = resultCache.isEnabled() ? fingerprint(localPath) : null;
+            return generate(outputName, source, revision, view, tokenBudget, out, gzip, listener,
+                    sink -> localFileService.processLocalDirectory(localPath, sink));
         } else {
             throw new IllegalArgumentException("Either GitHub URL or local path must be provided");
         }
     }
+
+    /**
+     * Returns the statistics of the result cache.
+     *
+     * @return The current cache statistics.
+     */
+    public ResultCache.Stats cacheStats() {
+        return resultCache.stats();
+    }
+
+    /**
+     * Returns the number of requests that were served by joining an identical generation already in flight.
+     *
+     * @return The number of coalesced requests.
+     */
+    long coalescedRequests() {
+        return flights.coalesced();
+    }
+
+    /**
+     * Generates a document or a view of it. A view is a document of its own, named and cached after its filter.
+     */
+    private TokenSummary generate(String name, String source, String revision, ViewFilter view, long tokenBudget,
+                                  OutputStream out, boolean gzip, ProgressListener listener, Generator crawl) throws Exception {
+        if (view == null) {
+            return generate(name, source, revision, tokenBudget, out, gzip, listener, crawl, true);
+        }
+        Generator generator = viewGenerator(name, source, revision, view, tokenBudget, crawl);
+        return generate(name + "-" + view.id(), source + "|view:" + view.id(), revision, tokenBudget, out, gzip,
+                listener, generator, false);
+    }
+
+    /**
+     * Returns a generator that slices a view out of the snapshot of the full document. Without a snapshot, the source
+     * is crawled once and filtered, and that crawl records the snapshot for the next view on the way, unless a token
+     * budget may stop it early or there is no revision to key the snapshot by.
+     */
+    private Generator viewGenerator(String name, String source, String revision, ViewFilter view, long tokenBudget,
+                                    Generator crawl) throws IOException {
+        if (snapshotStore.isEnabled() && revision != null) {
+            String key = ResultCache.key(source, revision, filterKey);
+            Optional<Snapshot> snapshot = snapshotStore.find(key);
+            if (snapshot.isPresent()) {
+                log.debug("Serving view {} of {} from its snapshot", view, name);
+                return sink -> snapshot.get().write(view, sink);
+            }
+            if (tokenBudget == 0) {
+                log.info("Recording the snapshot of {} while crawling it for view {}", name, view);
+                Generator recording = snapshotting(key, crawl);
+                return sink -> recording.generate(view.filter(sink));
+            }
+        }
+        return sink -> crawl.generate(view.filter(sink));
+    }
+
+    /**
+     * Generates a document, or waits for an identical generation that is already running and copies its result.
+     * All per-request state lives on the stack of this call, so any number of requests can run in parallel.
+     *
+     * @param name        The name of the output file without extension.
+     * @param source      Identifies the source, for example {@code github:owner/repo}.
+     * @param revision    The resolved revision of the source, or null when the result cache is disabled.
+     * @param tokenBudget The maximum number of tokens of the document, or 0 for no limit.
+     * @param out         The stream the document is written to.
+     * @param gzip        Whether {@code out} receives the document gzip compressed.
+     * @param listener    The listener that receives progress updates.
+     * @param generator   Writes the document when this request has to generate it.
+     * @param snapshot    Whether the generator crawls the source, so a cacheable document is recorded as a snapshot.
+     * @return The token summary of a budgeted document, otherwise null.
+     * @throws Exception If the content cannot be generated.
+     */
+    private TokenSummary generate(String name, String source, String revision, long tokenBudget, OutputStream out,
+                                  boolean gzip, ProgressListener listener, Generator generator, boolean snapshot)
+            throws Exception {
+        if (tokenBudget > 0) {
+            // A truncated document must not replace the full one or the shards clients page through
+            return lead(null, name + "-budget-" + tokenBudget, null, tokenBudget, out, gzip, listener, generator, false);
+        }
+        String key = ResultCache.key(source, revision != null ? revision : "", filterKey);
+        while (true) {
+            try (SingleFlight.Flight flight = flights.join(key)) {
+                if (flight.isLeader()) {
+                    return lead(flight, name, revision != null ? key : null, 0, out, gzip, listener, generator,
+                            snapshot && snapshotStore.isEnabled());
+                }
+                log.debug("Joining the generation of {} that is already in flight", name);
+                FileChannel document;
+                try {
+                    document = flight.await();
+                } catch (CancellationException e) {
+                    log.debug("Generation of {} was cancelled by its leader, retrying", name);
+                    continue;
+                }
+                copy(document, out, gzip);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Generates the document into a private temporary file next to the output file and atomically moves it into
+     * place once it is complete, so concurrent requests never see or overwrite each other's partial output.
+     * A cached document is only used when the shards and, if one is wanted, the snapshot of the same revision are
+     * in place as well.
+     */
+    private TokenSummary lead(SingleFlight.Flight flight, String name, String cacheKey, long tokenBudget,
+                              OutputStream out, boolean gzip, ProgressListener listener, Generator generator,
+                              boolean snapshot) throws Exception {
+        Path outputDir = Paths.get(outputDirectory);
+        Files.createDirectories(outputDir);
+        Path outputFile = outputDir.resolve(name + ".md" + Gzip.EXTENSION);
+        Path temp = Files.createFile(outputDir.resolve(name + ".md" + Gzip.EXTENSION + "." + UUID.randomUUID() + ".tmp"));
+        FileChannel document = null;
+        TokenSummary summary = null;
+        try {
+            boolean cached = false;
+            try (OutputStream file = Files.newOutputStream(temp)) {
+                boolean recordSnapshot = snapshot && cacheKey != null;
+                if (cacheKey != null && shardStore.isCurrent(name, cacheKey)
+                        && (!recordSnapshot || snapshotStore.contains(cacheKey))) {
+                    // Cached documents are stored compressed, so a client that accepts gzip gets them as they are
+                    cached = gzip ? resultCache.writeTo(cacheKey, file, out) : resultCache.writeTo(cacheKey, file);
+                }
+                if (!cached) {
+                    log.info("Writing contents to: {}", outputFile.toAbsolutePath());
+                    summary = write(name, cacheKey, file, out, gzip, tokenBudget, listener,
+                            recordSnapshot ? snapshotting(cacheKey, generator) : generator);
+                }
+            }
+            if (cached) {
+                log.info("Served {} from the result cache", name);
+                if (!gzip) {
+                    try (FileChannel stored = FileChannel.open(temp, StandardOpenOption.READ)) {
+                        copy(stored, out, false);
+                    }
+                }
+            } else if (cacheKey != null) {
+                resultCache.put(cacheKey, temp);
+            }
+            if (flight == null) {
+                Files.move(temp, outputFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                return summary;
+            }
+            // Open the document before moving it, so followers read this generation even if another one replaces it
+            document = FileChannel.open(temp, StandardOpenOption.READ);
+            Files.move(temp, outputFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            flight.complete(document);
+            return summary;
+        } catch (Exception e) {
+            if (document != null) {
+                document.close();
+            }
+            if (flight != null) {
+                boolean cancelled = e instanceof CancellationException || Thread.currentThread().isInterrupted();
+                flight.fail(cancelled ? new CancellationException("Generation of " + name + " was cancelled") : e);
+            }
+            throw e;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Runs the generator and writes the compressed document to the file. When the client accepts gzip as well,
+     * the document is compressed once and the same bytes go to both, flushed after every file section so the
+     * client can decompress what it has received so far. The shards are only published once the whole document
+     * has been generated.
+     */
+    private TokenSummary write(String name, String cacheKey, OutputStream file, OutputStream out, boolean gzip,
+                               long tokenBudget, ProgressListener listener, Generator generator) throws IOException {
+        GZIPOutputStream compressed = gzip
+                ? Gzip.compress(new TeeOutputStream(file, out), true)
+                : Gzip.compress(file, false);
+        TokenSummary summary = null;
+        try (DocumentWriter writer = gzip ? new DocumentWriter(compressed) : new DocumentWriter(compressed, out)) {
+            writer.setProgressListener(listener);
+            ContentSink sink = new MeteredSink(writer, metrics);
+            ShardWriter shards = shardStore.isEnabled() ? shardStore.open(name, cacheKey, sink) : null;
+            Generator source = deduplication.enabled() ? deduplicating(generator) : generator;
+            try {
+                if (tokenBudget > 0) {
+                    summary = generateWithinBudget(source, shards != null ? shards : sink, tokenBudget);
+                } else {
+                    source.generate(shards != null ? shards : sink);
+                }
+                if (shards != null) {
+                    shards.commit();
+                }
+            } catch (IOException | RuntimeException e) {
+                if (shards != null) {
+                    shards.abort();
+                }
+                throw e;
+            }
+        }
+        compressed.finish();
+        out.flush();
+        return summary;
+    }
+
+    private TokenSummary generateWithinBudget(Generator generator, ContentSink sink, long tokenBudget) throws IOException {
+        TokenBudgetSink budgetSink = new TokenBudgetSink(sink, tokenBudget, filePriority);
+        try {
+            generator.generate(budgetSink);
+        } catch (TokenBudgetExceededException e) {
+            log.info(e.getMessage());
+        }
+        TokenSummary summary = budgetSink.summary();
+        log.info("Wrote {} files with an estimated {} of {} tokens", summary.files().size(), summary.tokens(), tokenBudget);
+        return summary;
+    }
+
+    /**
+     * Wraps a generator so that every file it produces is also recorded in the snapshot of the document. The
+     * snapshot sits in front of deduplication, so it keeps the content of every file.
+     */
+    private Generator snapshotting(String cacheKey, Generator generator) {
+        return sink -> {
+            SnapshotWriter snapshotWriter = snapshotStore.open(cacheKey, sink);
+            try {
+                generator.generate(snapshotWriter);
+            } catch (IOException | RuntimeException e) {
+                snapshotWriter.abort();
+                throw e;
+            }
+            try {
+                snapshotWriter.commit();
+            } catch (IOException e) {
+                // The document is complete, only later views have to crawl again
+                log.warn("Could not store the snapshot of {}", cacheKey, e);
+                snapshotWriter.abort();
+            }
+        };
+    }
+
+    /**
+     * Wraps a generator so that files identical to an earlier file of the document are written as a reference.
+     * Deduplication sits in front of the token budget, so a duplicate only costs the tokens of its reference.
+     */
+    private Generator deduplicating(Generator generator) {
+        return sink -> {
+            DeduplicatingSink deduplicatingSink = new DeduplicatingSink(sink, deduplication);
+            try {
+                generator.generate(deduplicatingSink);
+            } finally {
+                DeduplicatingSink.Savings savings = deduplicatingSink.savings();
+                if (savings.duplicates() > 0) {
+                    metrics.filesDeduplicated(savings.duplicates(), savings.bytes());
+                    log.info("Wrote {} duplicate files as references, saving {} bytes and an estimated {} tokens",
+                            savings.duplicates(), savings.bytes(), savings.tokens());
+                }
+            }
+        };
+    }
+
+    /**
+     * Copies a stored, compressed document to a client, as it is when the client accepts gzip and decompressed
+     * otherwise. The channel is shared with other readers and is only read at explicit positions.
+     */
+    private static void copy(FileChannel document, OutputStream out, boolean gzip) throws IOException {
+        if (gzip) {
+            WritableByteChannel target = Channels.newChannel(out);
+            long size = document.size();
+            long position = 0;
+            while (position < size) {
+                position += document.transferTo(position, size - position, target);
+            }
+        } else {
+            try (InputStream in = Gzip.decompress(new ChannelInputStream(document))) {
+                in.transferTo(out);
+            }
+        }
+        out.flush();
+    }
+
+    private String mirrorRevision(String url) {
+        try {
+            return mirrorService.resolveRevision(url, "HEAD");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private String fingerprint(String localPath) {
+        try {
+            return localFileService.fingerprint(localPath);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Generator {
+        void generate(ContentSink sink) throws IOException;
+    }
+
+    /**
+     * Reads a channel from the start with positional reads, leaving the position of the shared channel alone.
+     * Closing the stream does not close the channel.
+     */
+    private static final class ChannelInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private long position;
+
+        ChannelInputStream(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            int read = channel.read(ByteBuffer.wrap(b, off, len), position);
+            if (read > 0) {
+                position += read;
+            }
+            return read;
+        }
+    }
 }
@@ -0,0 +1,111 @@
+package dev.danvega.cg;
+
+import dev.danvega.cg.output.TokenSummary;
+import gg.jte.Content;
+import gg.jte.TemplateOutput;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A generated document as template content. The document is generated while the template is rendered, and every
+ * chunk is written to the template output as user content, so it is escaped like any other value and never held in
+ * memory as a whole.
+ */
+public final class GeneratedContent implements Content {
+
+    /**
+     * Writes the document to a stream.
+     */
+    @FunctionalInterface
+    public interface Generation {
+        TokenSummary generate(OutputStream out) throws Exception;
+    }
+
+    private final Generation generation;
+    private TokenSummary summary;
+
+    public GeneratedContent(Generation generation) {
+        this.generation = generation;
+    }
+
+    @Override
+    public void writeTo(TemplateOutput output) {
+        try (Utf8Decoder out = new Utf8Decoder(output)) {
+            summary = generation.generate(out);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the summary of a token-budgeted document once the content has been written.
+     *
+     * @return The per-file token and byte summary, or null if no budget was set or nothing was written yet.
+     */
+    public TokenSummary summary() {
+        return summary;
+    }
+
+    /**
+     * Decodes the UTF-8 bytes of the document into chunks of text, keeping characters that are split across
+     * writes until their last byte arrives.
+     */
+    private static final class Utf8Decoder extends OutputStream {
+        private final TemplateOutput output;
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final ByteBuffer bytes = ByteBuffer.allocate(8192);
+        private final CharBuffer chars = CharBuffer.allocate(8192);
+
+        Utf8Decoder(TemplateOutput output) {
+            this.output = output;
+        }
+
+        @Override
+        public void write(int b) {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            while (len > 0) {
+                int n = Math.min(len, bytes.remaining());
+                bytes.put(b, off, n);
+                off += n;
+                len -= n;
+                decode(false);
+            }
+        }
+
+        @Override
+        public void close() {
+            decode(true);
+            decoder.flush(chars);
+            drain();
+        }
+
+        private void decode(boolean endOfInput) {
+            bytes.flip();
+            while (decoder.decode(bytes, chars, endOfInput).isOverflow()) {
+                drain();
+            }
+            bytes.compact();
+            drain();
+        }
+
+        private void drain() {
+            if (chars.position() > 0) {
+                output.writeUserContent(chars.flip().toString());
+                chars.clear();
+            }
+        }
+    }
+}
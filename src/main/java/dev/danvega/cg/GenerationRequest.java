@@ -0,0 +1,58 @@
+package dev.danvega.cg;
+
+import dev.danvega.cg.gh.FetchMode;
+import dev.danvega.cg.output.ProgressListener;
+import dev.danvega.cg.snapshot.ViewFilter;
+
+/**
+ * What to generate: the source, how to fetch it and which part of the document to produce.
+ *
+ * @param githubUrl   The URL of the GitHub repository, or null when a local path is given.
+ * @param localPath   The path of the local directory, or null when a GitHub URL is given.
+ * @param fetchMode   The GitHub fetch mode, or null for the configured default.
+ * @param tokenBudget The maximum number of tokens of the document, or 0 for no limit.
+ * @param view        The files to include, or null for the full document.
+ * @param listener    The listener that receives progress updates.
+ */
+public record GenerationRequest(String githubUrl, String localPath, FetchMode fetchMode, long tokenBudget,
+                                ViewFilter view, ProgressListener listener) {
+
+    public GenerationRequest {
+        if (listener == null) {
+            listener = ProgressListener.NONE;
+        }
+    }
+
+    /**
+     * Creates a request for the full document of a source.
+     *
+     * @param githubUrl The URL of the GitHub repository, or null when a local path is given.
+     * @param localPath The path of the local directory, or null when a GitHub URL is given.
+     * @param fetchMode The GitHub fetch mode, or null for the configured default.
+     * @return The request.
+     */
+    public static GenerationRequest of(String githubUrl, String localPath, FetchMode fetchMode) {
+        return new GenerationRequest(githubUrl, localPath, fetchMode, 0, null, null);
+    }
+
+    public GenerationRequest withTokenBudget(long tokenBudget) {
+        return new GenerationRequest(githubUrl, localPath, fetchMode, tokenBudget, view, listener);
+    }
+
+    public GenerationRequest withView(ViewFilter view) {
+        return new GenerationRequest(githubUrl, localPath, fetchMode, tokenBudget, view, listener);
+    }
+
+    public GenerationRequest withListener(ProgressListener listener) {
+        return new GenerationRequest(githubUrl, localPath, fetchMode, tokenBudget, view, listener);
+    }
+
+    /**
+     * Returns the GitHub URL if one is given, else the local path.
+     *
+     * @return The source of the document.
+     */
+    public String source() {
+        return githubUrl != null && !githubUrl.isBlank() ? githubUrl : localPath;
+    }
+}
@@ -0,0 +1,138 @@
+package dev.danvega.cg;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces concurrent generations of the same document. The first caller for a key becomes the leader and
+ * generates the document, every caller that arrives while it is running joins the flight and receives a channel
+ * on the finished document instead of generating it again.
+ * <p>
+ * The channel is shared and reference counted: it is closed when the leader and every follower have released
+ * the flight. Followers only use positional reads, so they never disturb each other.
+ */
+final class SingleFlight {
+
+    private final Map<String, Flight> flights = new ConcurrentHashMap<>();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Joins the flight for a key, starting a new one if none is running.
+     *
+     * @param key Identifies the document.
+     * @return The flight, which must be closed once the caller is done with it.
+     */
+    Flight join(String key) {
+        Flight[] joined = new Flight[1];
+        flights.compute(key, (k, running) -> {
+            if (running == null) {
+                joined[0] = new Flight(k, true);
+                return joined[0];
+            }
+            synchronized (running) {
+                running.holders++;
+            }
+            joined[0] = new Flight(running);
+            return running;
+        });
+        if (!joined[0].leader) {
+            coalesced.incrementAndGet();
+        }
+        return joined[0];
+    }
+
+    /**
+     * Returns the number of callers that have been served by another caller's generation.
+     *
+     * @return The number of coalesced calls.
+     */
+    long coalesced() {
+        return coalesced.get();
+    }
+
+    final class Flight implements AutoCloseable {
+
+        private final String key;
+        private final boolean leader;
+        private final CompletableFuture<FileChannel> document;
+        private final Flight shared;
+        private int holders = 1;
+
+        private Flight(String key, boolean leader) {
+            this.key = key;
+            this.leader = leader;
+            this.document = new CompletableFuture<>();
+            this.shared = this;
+        }
+
+        private Flight(Flight shared) {
+            this.key = shared.key;
+            this.leader = false;
+            this.document = shared.document;
+            this.shared = shared;
+        }
+
+        boolean isLeader() {
+            return leader;
+        }
+
+        /**
+         * Publishes the finished document to the followers. Called by the leader only.
+         *
+         * @param channel A channel on the document that stays readable after the file has been moved.
+         */
+        void complete(FileChannel channel) {
+            document.complete(channel);
+            flights.remove(key, shared);
+        }
+
+        /**
+         * Reports that the leader has failed. Called by the leader only.
+         *
+         * @param failure The reason the document could not be generated.
+         */
+        void fail(Throwable failure) {
+            document.completeExceptionally(failure);
+            flights.remove(key, shared);
+        }
+
+        /**
+         * Waits for the leader to finish.
+         *
+         * @return The shared channel on the document.
+         * @throws CancellationException If the leader was cancelled, in which case the caller should try again.
+         * @throws Exception             The leader's failure.
+         */
+        FileChannel await() throws Exception {
+            try {
+                return document.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (leader && !document.isDone()) {
+                fail(new CancellationException("Generation of " + key + " was abandoned"));
+            }
+            boolean last;
+            synchronized (shared) {
+                last = --shared.holders == 0;
+            }
+            // A failed leader never got to publish a channel
+            if (last && document.isDone() && !document.isCompletedExceptionally()) {
+                document.join().close();
+            }
+        }
+    }
+}
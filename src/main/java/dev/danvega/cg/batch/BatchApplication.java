@@ -0,0 +1,72 @@
+package dev.danvega.cg.batch;
+
+import dev.danvega.cg.Application;
+import org.springframework.boot.Banner;
+import org.springframework.boot.DefaultApplicationArguments;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Headless entry point that generates the documents for every source in a manifest and exits.
+ * <p>
+ * It starts the same application context as {@link Application}, so the AOT and native image build covers it
+ * too, but without a web server and with lazy initialization, so only the beans generation needs are created.
+ * Spring properties can be passed as options:
+ * <pre>
+ * java -cp app.jar dev.danvega.cg.batch.BatchApplication repos.txt --app.batch.concurrency=8
+ * ./repo-content-generator batch repos.txt
+ * </pre>
+ * The exit code is 0 when every document was generated, 1 when an item failed and 2 for invalid arguments.
+ */
+public final class BatchApplication {
+
+    private BatchApplication() {
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    /**
+     * Runs a batch and prints the per-item summary to standard output.
+     *
+     * @param args The manifest path followed by any Spring options.
+     * @return The exit code.
+     */
+    public static int run(String[] args) {
+        List<String> manifests = new DefaultApplicationArguments(args).getNonOptionArgs();
+        if (manifests.size() != 1) {
+            System.err.println("Usage: batch <manifest> [--property=value ...]");
+            return 2;
+        }
+        List<BatchItem> items;
+        try {
+            items = BatchItem.readManifest(Path.of(manifests.get(0)));
+        } catch (Exception e) {
+            System.err.println("Cannot read manifest " + manifests.get(0) + ": " + e.getMessage());
+            return 2;
+        }
+
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(Application.class)
+                .web(WebApplicationType.NONE)
+                .lazyInitialization(true)
+                .bannerMode(Banner.Mode.OFF)
+                .logStartupInfo(false)
+                .run(args);
+        return SpringApplication.exit(context, () -> {
+            try {
+                List<BatchResult> results = context.getBean(BatchRunner.class).run(items);
+                BatchRunner.printSummary(results, System.out);
+                return results.stream().allMatch(BatchResult::succeeded) ? 0 : 1;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return 1;
+            }
+        });
+    }
+}
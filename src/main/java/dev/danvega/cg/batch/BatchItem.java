@@ -0,0 +1,72 @@
+package dev.danvega.cg.batch;
+
+import dev.danvega.cg.gh.FetchMode;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * One source of a batch run, either a GitHub repository or a local directory.
+ *
+ * @param githubUrl The URL of the GitHub repository, or null for a local directory.
+ * @param localPath The path of the local directory, or null for a GitHub repository.
+ * @param fetchMode The GitHub fetch mode, or null for the configured default.
+ */
+public record BatchItem(String githubUrl, String localPath, FetchMode fetchMode) {
+
+    /**
+     * Returns the URL or path the item was read from.
+     *
+     * @return The source of the item.
+     */
+    public String source() {
+        return githubUrl != null ? githubUrl : localPath;
+    }
+
+    /**
+     * Reads a manifest with one source per line. A line holds a GitHub URL or a local path, optionally followed by
+     * a fetch mode such as {@code trees}. Blank lines and lines starting with {@code #} are ignored.
+     *
+     * @param manifest The manifest file.
+     * @return The items in manifest order.
+     * @throws IOException              If the manifest cannot be read.
+     * @throws IllegalArgumentException If a line names an unknown fetch mode.
+     */
+    public static List<BatchItem> readManifest(Path manifest) throws IOException {
+        List<BatchItem> items = new ArrayList<>();
+        int number = 0;
+        for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+            number++;
+            line = line.strip();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\\s+");
+            if (fields.length > 2) {
+                throw new IllegalArgumentException("Line " + number + " of " + manifest + " has more than two fields: " + line);
+            }
+            FetchMode fetchMode = null;
+            if (fields.length == 2) {
+                try {
+                    fetchMode = FetchMode.valueOf(fields[1].toUpperCase(Locale.ROOT));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Line " + number + " of " + manifest + " has an unknown fetch mode: " + fields[1]);
+                }
+            }
+            items.add(isGitHubUrl(fields[0])
+                    ? new BatchItem(fields[0], null, fetchMode)
+                    : new BatchItem(null, fields[0], fetchMode));
+        }
+        return items;
+    }
+
+    private static boolean isGitHubUrl(String source) {
+        return source.startsWith("https://github.com/") || source.startsWith("http://github.com/")
+                || source.startsWith("github.com/");
+    }
+}
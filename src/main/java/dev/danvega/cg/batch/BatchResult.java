@@ -0,0 +1,19 @@
+package dev.danvega.cg.batch;
+
+import java.time.Duration;
+
+/**
+ * The outcome of one item of a batch run.
+ *
+ * @param item     The item.
+ * @param files    The number of file sections written, 0 when the document was served from the result cache.
+ * @param bytes    The size of the gzip compressed document.
+ * @param duration The time the item took, excluding the time it waited for a free slot.
+ * @param error    The error message, or null if the document was generated.
+ */
+public record BatchResult(BatchItem item, int files, long bytes, Duration duration, String error) {
+
+    public boolean succeeded() {
+        return error == null;
+    }
+}
@@ -0,0 +1,142 @@
+package dev.danvega.cg.batch;
+
+import dev.danvega.cg.ContentGeneratorService;
+import dev.danvega.cg.GenerationRequest;
+import dev.danvega.cg.output.ProgressListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.FilterOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates the documents for many sources in parallel. Every item runs on its own virtual thread, at most
+ * {@code app.batch.concurrency} items are generated at the same time, and all of them share the application's
+ * GitHub client, so they also share its connection pool, caches and rate limit.
+ * <p>
+ * Documents are written gzip compressed to the output directory, exactly as for requests to the web UI, and are
+ * not kept in memory.
+ */
+@Service
+public class BatchRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchRunner.class);
+
+    private final ContentGeneratorService contentGeneratorService;
+    private final int concurrency;
+
+    public BatchRunner(ContentGeneratorService contentGeneratorService,
+                       @Value("${app.batch.concurrency:4}") int concurrency) {
+        this.contentGeneratorService = contentGeneratorService;
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Generates the documents for all items. A failing item does not stop the others.
+     *
+     * @param items The items to generate.
+     * @return The results in the order of the items.
+     * @throws InterruptedException If the thread is interrupted while waiting for the items.
+     */
+    public List<BatchResult> run(List<BatchItem> items) throws InterruptedException {
+        log.info("Generating {} documents, {} at a time", items.size(), concurrency);
+        Semaphore permits = new Semaphore(concurrency);
+        List<Future<BatchResult>> futures = new ArrayList<>(items.size());
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (BatchItem item : items) {
+                futures.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return generate(item);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+            List<BatchResult> results = new ArrayList<>(items.size());
+            for (Future<BatchResult> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Unexpected failure of a batch item", e.getCause());
+                }
+            }
+            return results;
+        }
+    }
+
+    private BatchResult generate(BatchItem item) {
+        AtomicInteger files = new AtomicInteger();
+        CountingOutputStream out = new CountingOutputStream();
+        long start = System.nanoTime();
+        try {
+            GenerationRequest request = GenerationRequest.of(item.githubUrl(), item.localPath(), item.fetchMode())
+                    .withListener(new ProgressListener() {
+                        @Override
+                        public void fileWritten(String path, long bytes) {
+                            files.incrementAndGet();
+                        }
+                    });
+            contentGeneratorService.generateContent(request, out, true);
+            return new BatchResult(item, files.get(), out.count, Duration.ofNanos(System.nanoTime() - start), null);
+        } catch (Exception e) {
+            log.error("Error generating content for {}", item.source(), e);
+            String error = e.getMessage() != null ? e.getMessage() : e.getClass().getName();
+            return new BatchResult(item, files.get(), out.count, Duration.ofNanos(System.nanoTime() - start), error);
+        }
+    }
+
+    /**
+     * Prints one line per result and a total.
+     *
+     * @param results The results of a run.
+     * @param out     The stream to print to.
+     */
+    public static void printSummary(List<BatchResult> results, PrintStream out) {
+        int failed = 0;
+        for (BatchResult result : results) {
+            if (result.succeeded()) {
+                out.printf("OK      %-60s %6d files %10d bytes %8d ms%n", result.item().source(), result.files(),
+                        result.bytes(), result.duration().toMillis());
+            } else {
+                failed++;
+                out.printf("FAILED  %-60s %s%n", result.item().source(), result.error());
+            }
+        }
+        out.printf("%d of %d documents generated, %d failed%n", results.size() - failed, results.size(), failed);
+    }
+
+    /**
+     * Counts the bytes of the compressed document and discards them, the service already writes the output file.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        CountingOutputStream() {
+            super(OutputStream.nullOutputStream());
+        }
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
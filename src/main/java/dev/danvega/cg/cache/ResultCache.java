@@ -0,0 +1,320 @@
+package dev.danvega.cg.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Two-tier cache of generated documents.
+ * <p>
+ * Entries are keyed by the source, its resolved revision (a commit SHA or a local tree fingerprint) and the
+ * active filter patterns, so a cached document is never stale for its key. Documents live on disk, bounded by
+ * {@code app.cache.disk-size}, and recently used small documents are also kept in memory, bounded by
+ * {@code app.cache.memory-size}. Both tiers evict the least recently used entries first. Documents are stored
+ * exactly as they are handed over, which is gzip compressed, so hits can be sent to clients that accept gzip
+ * without recompressing them.
+ * <p>
+ * Resolving the revision of a remote source costs a request, so it is remembered for {@code app.cache.ttl} and
+ * only revalidated once that has passed. Local directories are fingerprinted on every request instead, so edits
+ * show up immediately.
+ */
+@Component
+public class ResultCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ResultCache.class);
+    private static final String ENTRY_SUFFIX = ".md.gz";
+    private static final String LEGACY_ENTRY_SUFFIX = ".md";
+
+    private final boolean enabled;
+    private final Path directory;
+    private final long maxMemoryBytes;
+    private final long maxDiskBytes;
+    private final Duration ttl;
+    private final Clock clock;
+    private final Map<String, Revision> revisions = new ConcurrentHashMap<>();
+    private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Long> disk = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes;
+    private long diskBytes;
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+
+    @Autowired
+    public ResultCache(@Value("${app.cache.enabled:true}") boolean enabled,
+                       @Value("${app.cache.directory:.cache/results}") Path directory,
+                       @Value("${app.cache.memory-size:64MB}") DataSize memorySize,
+                       @Value("${app.cache.disk-size:1GB}") DataSize diskSize,
+                       @Value("${app.cache.ttl:1m}") Duration ttl) {
+        this(enabled, directory, memorySize, diskSize, ttl, Clock.systemUTC());
+    }
+
+    ResultCache(boolean enabled, Path directory, DataSize memorySize, DataSize diskSize, Duration ttl, Clock clock) {
+        this.enabled = enabled;
+        this.directory = directory;
+        this.maxMemoryBytes = memorySize.toBytes();
+        this.maxDiskBytes = diskSize.toBytes();
+        this.ttl = ttl;
+        this.clock = clock;
+        if (enabled) {
+            try {
+                Files.createDirectories(directory);
+                restoreIndex();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to initialize result cache in " + directory, e);
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Builds a cache key from its parts.
+     *
+     * @param parts The source, revision and filter settings that identify a document.
+     * @return The cache key.
+     */
+    public static String key(String... parts) {
+        return String.join("\n", parts);
+    }
+
+    /**
+     * Returns the revision of a source, resolving it again only when the remembered one is older than the TTL.
+     *
+     * @param source   Identifies the source, for example {@code github:owner/repo}.
+     * @param resolver Resolves the current revision of the source.
+     * @return The revision of the source.
+     */
+    public String revision(String source, Supplier<String> resolver) {
+        Instant now = clock.instant();
+        Revision known = revisions.get(source);
+        if (known != null && known.checkedAt().plus(ttl).isAfter(now)) {
+            return known.value();
+        }
+        String value = resolver.get();
+        if (known != null) {
+            revalidations.incrementAndGet();
+        }
+        revisions.put(source, new Revision(value, now));
+        return value;
+    }
+
+    /**
+     * Writes a cached document to the given targets.
+     *
+     * @param key     The cache key.
+     * @param targets The streams to copy the document to.
+     * @return true if the document was cached and has been written, false on a cache miss.
+     * @throws IOException If a target cannot be written.
+     */
+    public boolean writeTo(String key, OutputStream... targets) throws IOException {
+        if (!enabled) {
+            return false;
+        }
+        String id = id(key);
+        byte[] content;
+        synchronized (memory) {
+            content = memory.get(id);
+        }
+        if (content != null) {
+            memoryHits.incrementAndGet();
+            for (OutputStream target : targets) {
+                target.write(content);
+            }
+            return true;
+        }
+
+        Long size;
+        synchronized (disk) {
+            size = disk.get(id);
+        }
+        if (size == null) {
+            misses.incrementAndGet();
+            return false;
+        }
+        Path file = directory.resolve(id + ENTRY_SUFFIX);
+        try {
+            if (size <= maxMemoryBytes / 4) {
+                content = Files.readAllBytes(file);
+                remember(id, content);
+                for (OutputStream target : targets) {
+                    target.write(content);
+                }
+            } else {
+                for (OutputStream target : targets) {
+                    try (InputStream in = Files.newInputStream(file)) {
+                        in.transferTo(target);
+                    }
+                }
+            }
+            Files.setLastModifiedTime(file, FileTime.from(clock.instant()));
+        } catch (NoSuchFileException e) {
+            synchronized (disk) {
+                Long removed = disk.remove(id);
+                diskBytes -= removed != null ? removed : 0;
+            }
+            misses.incrementAndGet();
+            return false;
+        }
+        diskHits.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Stores a generated document.
+     *
+     * @param key      The cache key.
+     * @param document The file holding the generated document.
+     */
+    public void put(String key, Path document) {
+        if (!enabled) {
+            return;
+        }
+        String id = id(key);
+        Path file = directory.resolve(id + ENTRY_SUFFIX);
+        try {
+            Path temp = Files.createTempFile(directory, id, ".tmp");
+            Files.copy(document, temp, StandardCopyOption.REPLACE_EXISTING);
+            long size = Files.size(temp);
+            if (size > maxDiskBytes) {
+                Files.delete(temp);
+                return;
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            synchronized (disk) {
+                Long previous = disk.put(id, size);
+                diskBytes += size - (previous != null ? previous : 0);
+                evictFromDisk();
+            }
+        } catch (IOException e) {
+            log.warn("Failed to store generated document in the result cache", e);
+        }
+    }
+
+    /**
+     * Returns a snapshot of the cache statistics.
+     *
+     * @return The current statistics.
+     */
+    public Stats stats() {
+        synchronized (memory) {
+            synchronized (disk) {
+                return new Stats(memoryHits.get(), diskHits.get(), misses.get(), evictions.get(), revalidations.get(),
+                        memory.size(), memoryBytes, disk.size(), diskBytes);
+            }
+        }
+    }
+
+    private void remember(String id, byte[] content) {
+        synchronized (memory) {
+            byte[] previous = memory.put(id, content);
+            memoryBytes += content.length - (previous != null ? previous.length : 0);
+            Iterator<Map.Entry<String, byte[]>> iterator = memory.entrySet().iterator();
+            while (memoryBytes > maxMemoryBytes && iterator.hasNext()) {
+                memoryBytes -= iterator.next().getValue().length;
+                iterator.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private void evictFromDisk() {
+        Iterator<Map.Entry<String, Long>> iterator = disk.entrySet().iterator();
+        while (diskBytes > maxDiskBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            diskBytes -= eldest.getValue();
+            evictions.incrementAndGet();
+            synchronized (memory) {
+                byte[] content = memory.remove(eldest.getKey());
+                memoryBytes -= content != null ? content.length : 0;
+            }
+            try {
+                Files.deleteIfExists(directory.resolve(eldest.getKey() + ENTRY_SUFFIX));
+            } catch (IOException e) {
+                log.debug("Failed to delete evicted document {}", eldest.getKey(), e);
+            }
+        }
+    }
+
+    private void restoreIndex() throws IOException {
+        // Entries written before the suffix named their gzip content hold the same bytes
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(file -> file.getFileName().toString().endsWith(LEGACY_ENTRY_SUFFIX)).toList()) {
+                String name = file.getFileName().toString();
+                String id = name.substring(0, name.length() - LEGACY_ENTRY_SUFFIX.length());
+                Files.move(file, file.resolveSibling(id + ENTRY_SUFFIX), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(file -> file.getFileName().toString().endsWith(ENTRY_SUFFIX))
+                    .sorted(Comparator.comparing(ResultCache::lastModified))
+                    .forEach(file -> {
+                        String name = file.getFileName().toString();
+                        long size = file.toFile().length();
+                        disk.put(name.substring(0, name.length() - ENTRY_SUFFIX.length()), size);
+                        diskBytes += size;
+                    });
+        }
+        synchronized (disk) {
+            evictFromDisk();
+        }
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static String id(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(key.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private record Revision(String value, Instant checkedAt) { }
+
+    /**
+     * Hit, miss, eviction and revalidation counts together with the current size of both tiers.
+     */
+    public record Stats(long memoryHits, long diskHits, long misses, long evictions, long revalidations,
+                        long memoryEntries, long memoryBytes, long diskEntries, long diskBytes) { }
+}
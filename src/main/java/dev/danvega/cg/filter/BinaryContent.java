@@ -0,0 +1,65 @@
+package dev.danvega.cg.filter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Detects binary files from their first bytes, the same way git does: a file is binary if its first
+ * {@value #SNIFF_LENGTH} bytes contain a NUL byte or are not valid UTF-8. Only that prefix is ever looked at,
+ * so even a large file is classified with a single small read.
+ */
+public final class BinaryContent {
+
+    /**
+     * The number of leading bytes that are inspected.
+     */
+    public static final int SNIFF_LENGTH = 8000;
+
+    private BinaryContent() {
+    }
+
+    /**
+     * Checks whether content that is already in memory looks binary.
+     *
+     * @param content The file content.
+     * @return true if the content is binary.
+     */
+    public static boolean isBinary(byte[] content) {
+        int length = Math.min(content.length, SNIFF_LENGTH);
+        return isBinary(ByteBuffer.wrap(content, 0, length), length == content.length);
+    }
+
+    /**
+     * Checks whether a file looks binary by reading its first bytes.
+     *
+     * @param channel The channel of the file, its position is left unchanged.
+     * @param size    The size of the file.
+     * @return true if the file is binary.
+     * @throws IOException If the file cannot be read.
+     */
+    public static boolean isBinary(FileChannel channel, long size) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate((int) Math.min(size, SNIFF_LENGTH));
+        while (head.hasRemaining()) {
+            if (channel.read(head, head.position()) < 0) {
+                break;
+            }
+        }
+        head.flip();
+        return isBinary(head, head.limit() == size);
+    }
+
+    private static boolean isBinary(ByteBuffer head, boolean whole) {
+        for (int i = head.position(); i < head.limit(); i++) {
+            if (head.get(i) == 0) {
+                return true;
+            }
+        }
+        Utf8Validator validator = new Utf8Validator();
+        if (!validator.update(head)) {
+            return true;
+        }
+        // A multi-byte sequence may be cut off by the end of the prefix, that is only an error at the end of the file
+        return whole && !validator.isComplete();
+    }
+}
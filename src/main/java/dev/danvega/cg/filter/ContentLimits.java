@@ -0,0 +1,133 @@
+package dev.danvega.cg.filter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * Size and content limits for the files that end up in a document. Sizes are checked against listing metadata
+ * (tree entries, tar headers, file attributes) before anything is fetched or read, and binary files are skipped
+ * after sniffing their first bytes.
+ *
+ * @param maxFileSize  Files larger than this are skipped, 0 for no limit.
+ * @param maxTotalSize Files are taken in document order until their total size would exceed this,
+ *                     0 for no limit.
+ * @param skipBinary   Whether files whose first bytes contain NUL bytes or invalid UTF-8 are skipped.
+ */
+@ConfigurationProperties("app.limits")
+public record ContentLimits(@DefaultValue("0B") DataSize maxFileSize,
+                            @DefaultValue("0B") DataSize maxTotalSize,
+                            @DefaultValue("true") boolean skipBinary) {
+
+    /**
+     * Limits that let every file through.
+     */
+    public static final ContentLimits NONE = new ContentLimits(DataSize.ofBytes(0), DataSize.ofBytes(0), false);
+
+    private static final Logger log = LoggerFactory.getLogger(ContentLimits.class);
+
+    public ContentLimits {
+        if (maxFileSize == null) {
+            maxFileSize = DataSize.ofBytes(0);
+        }
+        if (maxTotalSize == null) {
+            maxTotalSize = DataSize.ofBytes(0);
+        }
+    }
+
+    /**
+     * Starts tracking the files admitted into one document.
+     *
+     * @return A new allowance with nothing admitted yet.
+     */
+    public Allowance allowance() {
+        return new Allowance(maxFileSize.toBytes(), maxTotalSize.toBytes());
+    }
+
+    /**
+     * Checks whether downloaded content should be skipped as binary.
+     *
+     * @param content The file content.
+     * @return true if binary files are skipped and the content is binary.
+     */
+    public boolean isBinary(byte[] content) {
+        return skipBinary && BinaryContent.isBinary(content);
+    }
+
+    /**
+     * Checks whether a file should be skipped as binary, reading only its first bytes.
+     *
+     * @param channel The channel of the file.
+     * @param size    The size of the file.
+     * @return true if binary files are skipped and the file is binary.
+     * @throws IOException If the file cannot be read.
+     */
+    public boolean isBinary(FileChannel channel, long size) throws IOException {
+        return skipBinary && BinaryContent.isBinary(channel, size);
+    }
+
+    /**
+     * Tracks the total size of the files admitted into one document. Not thread-safe, files are admitted by the
+     * thread that decides the document order.
+     */
+    public static final class Allowance {
+
+        private final long maxFileSize;
+        private final long maxTotalSize;
+        private long admitted;
+        private boolean exhausted;
+
+        private Allowance(long maxFileSize, long maxTotalSize) {
+            this.maxFileSize = maxFileSize;
+            this.maxTotalSize = maxTotalSize;
+        }
+
+        /**
+         * Decides whether a file goes into the document, based on its size alone. Once a file no longer fits into
+         * the total size limit, no further files are admitted, so the document is a prefix of the full one.
+         *
+         * @param path The path of the file, for logging.
+         * @param size The size of the file in bytes.
+         * @return true if the file should be fetched and written.
+         */
+        public boolean admit(String path, long size) {
+            if (exhausted) {
+                return false;
+            }
+            if (maxFileSize > 0 && size > maxFileSize) {
+                log.debug("Skipping {} of {} bytes, which is above the file size limit", path, size);
+                return false;
+            }
+            if (maxTotalSize > 0 && admitted + size > maxTotalSize) {
+                log.info("Total size limit of {} bytes reached at {}, skipping the remaining files", maxTotalSize, path);
+                exhausted = true;
+                return false;
+            }
+            admitted += size;
+            return true;
+        }
+
+        /**
+         * Returns whether the total size limit has been reached.
+         *
+         * @return true if no further files are admitted.
+         */
+        public boolean isExhausted() {
+            return exhausted;
+        }
+
+        /**
+         * Returns the total size of the files admitted so far.
+         *
+         * @return The admitted bytes.
+         */
+        public long admitted() {
+            return admitted;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package dev.danvega.cg.filter;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ranks files by an ordered list of glob patterns: a file takes the rank of the first pattern it matches, and files
+ * that match no pattern rank after all of them. Used to decide which files make it into a token-budgeted document.
+ */
+public final class FilePriority {
+
+    private final List<PathMatcher> matchers;
+
+    private FilePriority(List<PathMatcher> matchers) {
+        this.matchers = matchers;
+    }
+
+    /**
+     * Compiles a priority list.
+     *
+     * @param patterns Glob patterns, highest priority first.
+     * @return The compiled priority list.
+     */
+    public static FilePriority of(List<String> patterns) {
+        List<PathMatcher> matchers = new ArrayList<>(patterns.size());
+        for (String pattern : patterns) {
+            matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + pattern));
+        }
+        return new FilePriority(List.copyOf(matchers));
+    }
+
+    /**
+     * Returns the rank of a file, lower ranks come first.
+     *
+     * @param path The path of the file relative to the repository or directory root.
+     * @return The index of the first matching pattern, or the number of patterns if none matches.
+     */
+    public int rank(String path) {
+        Path candidate = Paths.get(path);
+        for (int i = 0; i < matchers.size(); i++) {
+            if (matchers.get(i).matches(candidate)) {
+                return i;
+            }
+        }
+        return matchers.size();
+    }
+
+    /**
+     * Returns a comparator that orders paths by rank. Sorting with it is stable, so files of equal rank keep
+     * their original order.
+     * <p>
+     * The comparator remembers the rank of every path it has seen, so a sort matches each path against the
+     * patterns once rather than on every comparison. It is meant for a single sort and is not thread-safe.
+     *
+     * @return A new comparator.
+     */
+    public Comparator<String> order() {
+        Map<String, Integer> ranks = new HashMap<>();
+        return Comparator.comparingInt(path -> ranks.computeIfAbsent(path, this::rank));
+    }
+}
@@ -0,0 +1,110 @@
+package dev.danvega.cg.filter;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@code .gitignore} rules that apply to a directory, including the rules inherited from its parents.
+ * <p>
+ * Supports the commonly used subset of the gitignore format: comments, negation with {@code !},
+ * directory-only patterns ending in {@code /}, patterns anchored to their {@code .gitignore} by a
+ * {@code /}, and unanchored patterns that match a name at any depth. As in git, the last matching rule wins.
+ * Instances are immutable, so a parent's rules can be shared by concurrently scanned sub-directories.
+ */
+public final class GitIgnore {
+
+    /**
+     * Rules that ignore nothing.
+     */
+    public static final GitIgnore EMPTY = new GitIgnore(List.of());
+
+    private final List<Rule> rules;
+
+    private GitIgnore(List<Rule> rules) {
+        this.rules = rules;
+    }
+
+    /**
+     * Returns these rules extended with the lines of a {@code .gitignore} file found in a sub-directory.
+     *
+     * @param directory The relative, {@code /}-separated directory containing the file, empty for the root.
+     * @param lines     The lines of the file.
+     * @return The combined rules.
+     */
+    public GitIgnore withRules(String directory, List<String> lines) {
+        List<Rule> combined = new ArrayList<>(rules);
+        String base = directory.isEmpty() ? "" : directory + "/";
+        for (String line : lines) {
+            Rule rule = Rule.parse(base, line);
+            if (rule != null) {
+                combined.add(rule);
+            }
+        }
+        return combined.size() == rules.size() ? this : new GitIgnore(List.copyOf(combined));
+    }
+
+    /**
+     * Checks whether a path is ignored.
+     *
+     * @param path      The relative, {@code /}-separated path.
+     * @param directory Whether the path is a directory.
+     * @return true if the path is ignored, false otherwise.
+     */
+    public boolean isIgnored(String path, boolean directory) {
+        boolean ignored = false;
+        Path candidate = null;
+        Path name = null;
+        for (Rule rule : rules) {
+            if (rule.directoryOnly() && !directory) {
+                continue;
+            }
+            if (!path.startsWith(rule.base())) {
+                continue;
+            }
+            boolean matches;
+            if (rule.anchored()) {
+                candidate = candidate != null ? candidate : Paths.get(path);
+                matches = rule.matcher().matches(candidate);
+            } else {
+                name = name != null ? name : Paths.get(path.substring(path.lastIndexOf('/') + 1));
+                matches = rule.matcher().matches(name);
+            }
+            if (matches) {
+                ignored = !rule.negated();
+            }
+        }
+        return ignored;
+    }
+
+    private record Rule(String base, PathMatcher matcher, boolean anchored, boolean negated, boolean directoryOnly) {
+
+        static Rule parse(String base, String line) {
+            String pattern = line.stripTrailing();
+            if (pattern.isEmpty() || pattern.startsWith("#")) {
+                return null;
+            }
+            boolean negated = pattern.startsWith("!");
+            if (negated || pattern.startsWith("\\!") || pattern.startsWith("\\#")) {
+                pattern = pattern.substring(1);
+            }
+            boolean directoryOnly = pattern.endsWith("/");
+            if (directoryOnly) {
+                pattern = pattern.substring(0, pattern.length() - 1);
+            }
+            boolean anchored = pattern.contains("/");
+            if (pattern.startsWith("/")) {
+                pattern = pattern.substring(1);
+            }
+            if (pattern.isEmpty()) {
+                return null;
+            }
+            String glob = anchored ? base + pattern : pattern;
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+            return new Rule(base, matcher, anchored, negated, directoryOnly);
+        }
+    }
+}
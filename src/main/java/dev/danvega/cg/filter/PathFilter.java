@@ -0,0 +1,56 @@
+package dev.danvega.cg.filter;
+
+import java.util.List;
+
+/**
+ * Compiled include and exclude patterns shared by every content source.
+ * <p>
+ * A path is included when it matches no exclude pattern and matches at least one include pattern
+ * (or no include patterns are configured). Patterns are globs relative to the repository or directory root,
+ * matched against {@code /}-separated paths. Directories whose whole subtree is excluded (for example
+ * through {@code target/**}) can be skipped without listing them.
+ */
+public final class PathFilter {
+
+    private final PatternIndex includes;
+    private final PatternIndex excludes;
+
+    private PathFilter(List<String> includePatterns, List<String> excludePatterns) {
+        this.includes = new PatternIndex(includePatterns);
+        this.excludes = new PatternIndex(excludePatterns);
+    }
+
+    /**
+     * Compiles a filter from include and exclude glob patterns.
+     *
+     * @param includePatterns The patterns a file must match, or an empty list to include every file.
+     * @param excludePatterns The patterns that exclude a file even if it is included.
+     * @return The compiled filter.
+     */
+    public static PathFilter of(List<String> includePatterns, List<String> excludePatterns) {
+        return new PathFilter(includePatterns, excludePatterns);
+    }
+
+    /**
+     * Determines whether a file should be included.
+     *
+     * @param path The relative, {@code /}-separated path of the file.
+     * @return true if the file should be included, false otherwise.
+     */
+    public boolean includes(String path) {
+        if (excludes.matches(path)) {
+            return false;
+        }
+        return includes.isEmpty() || includes.matches(path);
+    }
+
+    /**
+     * Determines whether a directory can be skipped entirely because everything below it is excluded.
+     *
+     * @param path The relative, {@code /}-separated path of the directory.
+     * @return true if the directory should not be traversed, false otherwise.
+     */
+    public boolean excludesDirectory(String path) {
+        return excludes.matchesSubtree(path) || excludes.matches(path);
+    }
+}
@@ -0,0 +1,145 @@
+package dev.danvega.cg.filter;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A set of glob patterns compiled into hash-based lookup tables.
+ * <p>
+ * The common pattern shapes are answered without running a glob matcher:
+ * <ul>
+ *     <li>literal paths such as {@code mvnw} via an exact-match set,</li>
+ *     <li>subtrees such as {@code target/**} via a set of directory prefixes checked for every ancestor of the path,</li>
+ *     <li>extensions such as {@code **}{@code /*.java} or {@code *.md} via a map keyed by file extension.</li>
+ * </ul>
+ * Every other pattern falls back to a precompiled {@link PathMatcher}. The results are identical to matching
+ * each pattern with {@code FileSystems.getDefault().getPathMatcher("glob:" + pattern)}.
+ */
+final class PatternIndex {
+
+    private static final String GLOB_CHARS = "*?[]{}\\";
+
+    private final Set<String> exact = new HashSet<>();
+    private final Set<String> subtrees = new HashSet<>();
+    private final Map<String, ExtensionRule> extensions = new HashMap<>();
+    private final List<PathMatcher> fallback = new ArrayList<>();
+    private final int size;
+
+    PatternIndex(List<String> patterns) {
+        for (String raw : patterns) {
+            String pattern = raw.trim().replace('\\', '/');
+            if (!addIndexed(pattern)) {
+                fallback.add(FileSystems.getDefault().getPathMatcher("glob:" + pattern));
+            }
+        }
+        this.size = patterns.size();
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Checks whether a relative, {@code /}-separated path matches any pattern.
+     *
+     * @param path The path to check.
+     * @return true if the path matches, false otherwise.
+     */
+    boolean matches(String path) {
+        if (exact.contains(path)) {
+            return true;
+        }
+        if (!subtrees.isEmpty()) {
+            for (int slash = path.indexOf('/'); slash > 0; slash = path.indexOf('/', slash + 1)) {
+                if (subtrees.contains(path.substring(0, slash))) {
+                    return true;
+                }
+            }
+        }
+        if (!extensions.isEmpty()) {
+            int nameStart = path.lastIndexOf('/') + 1;
+            int dot = path.lastIndexOf('.');
+            if (dot >= nameStart) {
+                ExtensionRule rule = extensions.get(path.substring(dot + 1));
+                if (rule != null && (nameStart > 0 ? rule.nested() : rule.root())) {
+                    return true;
+                }
+            }
+        }
+        if (!fallback.isEmpty()) {
+            Path candidate = Paths.get(path);
+            for (PathMatcher matcher : fallback) {
+                if (matcher.matches(candidate)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether every path below a directory is guaranteed to match, so the whole subtree can be pruned.
+     *
+     * @param directory The relative, {@code /}-separated directory path.
+     * @return true if the directory and everything below it matches.
+     */
+    boolean matchesSubtree(String directory) {
+        if (subtrees.contains(directory) || exact.contains(directory)) {
+            return true;
+        }
+        for (int slash = directory.indexOf('/'); slash > 0; slash = directory.indexOf('/', slash + 1)) {
+            if (subtrees.contains(directory.substring(0, slash))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean addIndexed(String pattern) {
+        if (pattern.isEmpty()) {
+            return false;
+        }
+        if (isLiteral(pattern)) {
+            exact.add(pattern);
+            return true;
+        }
+        if (pattern.endsWith("/**") && isLiteral(pattern.substring(0, pattern.length() - 3))
+                && pattern.length() > 3) {
+            subtrees.add(pattern.substring(0, pattern.length() - 3));
+            return true;
+        }
+        boolean nested = pattern.startsWith("**/*.");
+        boolean root = !nested && pattern.startsWith("*.");
+        String extension = nested ? pattern.substring(5) : root ? pattern.substring(2) : null;
+        if (extension != null && !extension.isEmpty() && isLiteral(extension)
+                && extension.indexOf('.') < 0 && extension.indexOf('/') < 0) {
+            ExtensionRule existing = extensions.getOrDefault(extension, new ExtensionRule(false, false));
+            extensions.put(extension, new ExtensionRule(existing.root() || root, existing.nested() || nested));
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isLiteral(String pattern) {
+        for (int i = 0; i < pattern.length(); i++) {
+            if (GLOB_CHARS.indexOf(pattern.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Where an extension pattern applies: {@code *.ext} only matches files in the root directory,
+     * {@code **}{@code /*.ext} only matches files in a sub-directory.
+     */
+    private record ExtensionRule(boolean root, boolean nested) { }
+}
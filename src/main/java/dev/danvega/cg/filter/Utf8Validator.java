@@ -0,0 +1,109 @@
+package dev.danvega.cg.filter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Incremental, allocation-free UTF-8 validator that follows the well-formedness rules of the
+ * Unicode standard (no overlong encodings, surrogates or code points above U+10FFFF), matching
+ * what {@link java.nio.file.Files#readString} accepts. Input can be fed in arbitrary chunks.
+ */
+public final class Utf8Validator {
+
+    private static final long MAP_THRESHOLD = 1024 * 1024;
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private int pending;
+    private int lower = 0x80;
+    private int upper = 0xBF;
+    private boolean valid = true;
+
+    /**
+     * Checks whether the first {@code size} bytes of a file are well-formed UTF-8. Large files are
+     * memory-mapped, smaller ones are read in chunks, and no characters are ever decoded.
+     *
+     * @param channel The channel to read, starting at position 0.
+     * @param size    The number of bytes to check.
+     * @return true if the content is valid UTF-8, false otherwise.
+     * @throws IOException If the file cannot be read.
+     */
+    public static boolean isValid(FileChannel channel, long size) throws IOException {
+        Utf8Validator validator = new Utf8Validator();
+        if (size >= MAP_THRESHOLD) {
+            for (long position = 0; position < size && validator.valid; position += Integer.MAX_VALUE) {
+                long length = Math.min(Integer.MAX_VALUE, size - position);
+                validator.update(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+            }
+            return validator.isComplete();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size, CHUNK_SIZE));
+        long position = 0;
+        while (position < size && validator.valid) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            position += read;
+            buffer.flip();
+            validator.update(buffer);
+        }
+        return validator.isComplete();
+    }
+
+    /**
+     * Feeds the remaining bytes of a buffer into the validator.
+     *
+     * @param buffer The bytes to validate.
+     * @return false as soon as an invalid sequence has been seen, true otherwise.
+     */
+    public boolean update(ByteBuffer buffer) {
+        while (valid && buffer.hasRemaining()) {
+            int b = buffer.get() & 0xFF;
+            if (pending == 0) {
+                if (b < 0x80) {
+                    continue;
+                }
+                lower = 0x80;
+                upper = 0xBF;
+                if (b >= 0xC2 && b <= 0xDF) {
+                    pending = 1;
+                } else if (b >= 0xE0 && b <= 0xEF) {
+                    pending = 2;
+                    if (b == 0xE0) {
+                        lower = 0xA0;
+                    } else if (b == 0xED) {
+                        upper = 0x9F;
+                    }
+                } else if (b >= 0xF0 && b <= 0xF4) {
+                    pending = 3;
+                    if (b == 0xF0) {
+                        lower = 0x90;
+                    } else if (b == 0xF4) {
+                        upper = 0x8F;
+                    }
+                } else {
+                    valid = false;
+                }
+            } else {
+                if (b < lower || b > upper) {
+                    valid = false;
+                }
+                lower = 0x80;
+                upper = 0xBF;
+                pending--;
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * Returns whether everything fed so far is valid and no multi-byte sequence is left incomplete.
+     *
+     * @return true if the input is complete, valid UTF-8.
+     */
+    public boolean isComplete() {
+        return valid && pending == 0;
+    }
+}
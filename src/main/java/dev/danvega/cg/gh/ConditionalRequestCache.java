@@ -0,0 +1,296 @@
+package dev.danvega.cg.gh;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Disk-backed HTTP cache for GitHub API responses based on conditional requests.
+ * <p>
+ * Successful GET responses that carry an {@code ETag} are stored on disk. Subsequent requests for the
+ * same resource are sent with {@code If-None-Match}; when GitHub answers {@code 304 Not Modified}
+ * (which does not count against the rate limit) the stored body is replayed as a {@code 200} response.
+ * The total size of the cache is bounded and the least recently used entries are evicted first.
+ */
+class ConditionalRequestCache implements ClientHttpRequestInterceptor {
+
+    private static final Logger log = LoggerFactory.getLogger(ConditionalRequestCache.class);
+    private static final String ENTRY_SUFFIX = ".entry";
+
+    private final Path directory;
+    private final long maxSize;
+    private final long maxEntrySize;
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalSize;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Creates a cache rooted at the given directory, restoring any entries left by a previous run.
+     *
+     * @param directory    The directory the entries are stored in.
+     * @param maxSize      The maximum total size of all entries in bytes.
+     * @param maxEntrySize The maximum size of a single cached body in bytes.
+     * @throws IOException If the directory cannot be created or read.
+     */
+    ConditionalRequestCache(Path directory, long maxSize, long maxEntrySize) throws IOException {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.maxEntrySize = Math.min(maxEntrySize, maxSize);
+        Files.createDirectories(directory);
+        restoreIndex();
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+        if (request.getMethod() != HttpMethod.GET) {
+            return execution.execute(request, body);
+        }
+
+        String key = cacheKey(request);
+        CachedEntry cached = read(key);
+        if (cached != null) {
+            request.getHeaders().setIfNoneMatch(cached.etag());
+        }
+
+        ClientHttpResponse response = execution.execute(request, body);
+        if (cached != null && response.getStatusCode().value() == HttpStatus.NOT_MODIFIED.value()) {
+            hits.incrementAndGet();
+            HttpHeaders headers = new HttpHeaders();
+            headers.addAll(response.getHeaders());
+            headers.set(HttpHeaders.CONTENT_TYPE, cached.contentType());
+            headers.setContentLength(cached.body().length);
+            response.close();
+            log.debug("HTTP cache hit for {}", request.getURI());
+            return new CachedResponse(HttpStatus.OK, headers, cached.body());
+        }
+
+        misses.incrementAndGet();
+        String etag = response.getHeaders().getETag();
+        String contentType = response.getHeaders().getFirst(HttpHeaders.CONTENT_TYPE);
+        long contentLength = response.getHeaders().getContentLength();
+        if (response.getStatusCode().value() != HttpStatus.OK.value() || etag == null
+                || !isCacheable(contentType) || contentLength > maxEntrySize) {
+            return response;
+        }
+
+        InputStream in = response.getBody();
+        byte[] data = in.readNBytes((int) maxEntrySize + 1);
+        if (data.length > maxEntrySize) {
+            // Too large to cache, hand back what has been read followed by the rest of the stream
+            return new CachedResponse(response.getStatusCode(), response.getHeaders(),
+                    new SequenceInputStream(new ByteArrayInputStream(data), in), response);
+        }
+        response.close();
+        write(key, new CachedEntry(etag, contentType, data));
+        return new CachedResponse(response.getStatusCode(), response.getHeaders(), data);
+    }
+
+    /**
+     * Returns a snapshot of the cache statistics.
+     *
+     * @return The current statistics.
+     */
+    Stats stats() {
+        synchronized (entries) {
+            return new Stats(hits.get(), misses.get(), evictions.get(), entries.size(), totalSize);
+        }
+    }
+
+    private static boolean isCacheable(String contentType) {
+        return contentType != null && (contentType.contains("json") || contentType.startsWith("text/")
+                || contentType.contains("vnd.github.raw") || contentType.contains("vnd.github.sha"));
+    }
+
+    private static String cacheKey(HttpRequest request) {
+        String accept = String.join(",", request.getHeaders().getOrEmpty(HttpHeaders.ACCEPT));
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(request.getURI().toString().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+            digest.update(accept.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private CachedEntry read(String key) {
+        synchronized (entries) {
+            if (entries.get(key) == null) {
+                return null;
+            }
+        }
+        Path file = directory.resolve(key + ENTRY_SUFFIX);
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            String etag = in.readUTF();
+            String contentType = in.readUTF();
+            byte[] data = in.readAllBytes();
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return new CachedEntry(etag, contentType, data);
+        } catch (IOException e) {
+            log.debug("Dropping unreadable cache entry {}", key, e);
+            remove(key);
+            return null;
+        }
+    }
+
+    private void write(String key, CachedEntry entry) {
+        Path file = directory.resolve(key + ENTRY_SUFFIX);
+        try {
+            Path temp = Files.createTempFile(directory, key, ".tmp");
+            try (OutputStream os = Files.newOutputStream(temp);
+                 DataOutputStream out = new DataOutputStream(os)) {
+                out.writeUTF(entry.etag());
+                out.writeUTF(entry.contentType());
+                out.write(entry.body());
+            }
+            long size = Files.size(temp);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            synchronized (entries) {
+                Long previous = entries.put(key, size);
+                totalSize += size - (previous != null ? previous : 0);
+                evictIfNecessary();
+            }
+        } catch (IOException e) {
+            log.warn("Failed to write HTTP cache entry {}", key, e);
+        }
+    }
+
+    private void remove(String key) {
+        synchronized (entries) {
+            Long size = entries.remove(key);
+            if (size != null) {
+                totalSize -= size;
+            }
+        }
+        try {
+            Files.deleteIfExists(directory.resolve(key + ENTRY_SUFFIX));
+        } catch (IOException e) {
+            log.debug("Failed to delete cache entry {}", key, e);
+        }
+    }
+
+    private void evictIfNecessary() {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (totalSize > maxSize && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            totalSize -= eldest.getValue();
+            evictions.incrementAndGet();
+            try {
+                Files.deleteIfExists(directory.resolve(eldest.getKey() + ENTRY_SUFFIX));
+            } catch (IOException e) {
+                log.debug("Failed to delete evicted cache entry {}", eldest.getKey(), e);
+            }
+        }
+    }
+
+    private void restoreIndex() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(file -> file.getFileName().toString().endsWith(ENTRY_SUFFIX))
+                    .sorted(Comparator.comparing(ConditionalRequestCache::lastModified))
+                    .forEach(file -> {
+                        String name = file.getFileName().toString();
+                        long size = file.toFile().length();
+                        entries.put(name.substring(0, name.length() - ENTRY_SUFFIX.length()), size);
+                        totalSize += size;
+                    });
+        }
+        synchronized (entries) {
+            evictIfNecessary();
+        }
+        log.debug("Restored {} HTTP cache entries ({} bytes) from {}", entries.size(), totalSize, directory);
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private record CachedEntry(String etag, String contentType, byte[] body) { }
+
+    /**
+     * Hit, miss and eviction counts together with the current size of the cache.
+     */
+    record Stats(long hits, long misses, long evictions, long entries, long bytes) { }
+
+    private static final class CachedResponse implements ClientHttpResponse {
+
+        private final HttpStatusCode status;
+        private final HttpHeaders headers;
+        private final InputStream body;
+        private final ClientHttpResponse delegate;
+
+        CachedResponse(HttpStatusCode status, HttpHeaders headers, byte[] body) {
+            this(status, headers, new ByteArrayInputStream(body), null);
+        }
+
+        CachedResponse(HttpStatusCode status, HttpHeaders headers, InputStream body, ClientHttpResponse delegate) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() {
+            return status;
+        }
+
+        @Override
+        public String getStatusText() {
+            return status instanceof HttpStatus httpStatus ? httpStatus.getReasonPhrase() : "";
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public InputStream getBody() {
+            return body;
+        }
+
+        @Override
+        public void close() {
+            if (delegate != null) {
+                delegate.close();
+            }
+        }
+    }
+}
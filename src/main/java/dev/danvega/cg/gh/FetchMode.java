@@ -0,0 +1,35 @@
+package dev.danvega.cg.gh;
+
+/**
+ * Strategies {@link GitHubService} can use to fetch repository contents. {@link #MIRROR} bypasses the API and is
+ * served by {@link dev.danvega.cg.mirror.MirrorService} instead.
+ */
+public enum FetchMode {
+
+    /**
+     * Walks the repository with one {@code /contents/{path}} call per directory and per file.
+     */
+    CONTENTS,
+
+    /**
+     * Downloads the repository tarball once and filters its entries while stream-decompressing it.
+     */
+    TARBALL,
+
+    /**
+     * Lists every file with one recursive {@code /git/trees} call and fetches the matching blobs concurrently.
+     */
+    TREES,
+
+    /**
+     * Lists every file with one recursive {@code /git/trees} call and fetches the matching blobs in batches of
+     * aliased GraphQL {@code object} queries, so a hundred files cost a single request.
+     */
+    GRAPHQL,
+
+    /**
+     * Keeps a local bare mirror of the repository, updated with {@code git fetch}, and reads the matching blobs
+     * straight from its object database.
+     */
+    MIRROR
+}
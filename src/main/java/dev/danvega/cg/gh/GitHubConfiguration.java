@@ -2,11 +2,20 @@ package dev.danvega.cg.gh;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
 
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
 
 @ConfigurationProperties(value = "github")
-public record GitHubConfiguration(String token, List<String> includePatterns, @DefaultValue("") List<String> excludePatterns) {
+public record GitHubConfiguration(String token, List<String> includePatterns, @DefaultValue("") List<String> excludePatterns,
+                                  @DefaultValue("tarball") FetchMode fetchMode, @DefaultValue("8") int maxConcurrency,
+                                  @DefaultValue HttpCache cache,
+                                  @DefaultValue BlobStore blobStore,
+                                  @DefaultValue("https://api.github.com") String apiUrl,
+                                  @DefaultValue RateLimit rateLimit,
+                                  @DefaultValue GraphQl graphql) {
 
     public GitHubConfiguration {
         if (includePatterns == null) {
@@ -19,5 +28,92 @@ public record GitHubConfiguration(String token, List<String> includePatterns, @D
         if (excludePatterns == null) {
             excludePatterns = List.of();
         }
+        if (fetchMode == null) {
+            fetchMode = FetchMode.TARBALL;
+        }
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be at least 1");
+        }
+        if (cache == null) {
+            cache = new HttpCache(false, null, null, null);
+        }
+        if (blobStore == null) {
+            blobStore = new BlobStore(false, null, null, null);
+        }
+        if (apiUrl == null || apiUrl.isBlank()) {
+            apiUrl = "https://api.github.com";
+        }
+        if (rateLimit == null) {
+            rateLimit = new RateLimit(true, 5, Duration.ofSeconds(1), Duration.ofMinutes(1), Duration.ofMinutes(5), 100);
+        }
+        if (graphql == null) {
+            graphql = new GraphQl(100, DataSize.ofMegabytes(2));
+        }
+    }
+
+    /**
+     * Settings for the on-disk conditional request (ETag) cache used for GitHub API responses.
+     *
+     * @param enabled      Whether responses are cached.
+     * @param directory    The directory the cached responses are stored in.
+     * @param maxSize      The maximum total size of the cache.
+     * @param maxEntrySize The maximum size of a single cached response.
+     */
+    public record HttpCache(@DefaultValue("true") boolean enabled,
+                            @DefaultValue(".cache/github/http") Path directory,
+                            @DefaultValue("256MB") DataSize maxSize,
+                            @DefaultValue("8MB") DataSize maxEntrySize) { }
+
+    /**
+     * Settings for the local content-addressed store of decoded blobs, keyed by git SHA.
+     *
+     * @param enabled     Whether blobs are stored and reused across runs.
+     * @param directory   The directory the packed segments and index are stored in.
+     * @param segmentSize The size at which a new segment file is started.
+     * @param maxSize     The total size of all segments beyond which the oldest segments are dropped, 0 for no limit.
+     */
+    public record BlobStore(@DefaultValue("true") boolean enabled,
+                            @DefaultValue(".cache/github/blobs") Path directory,
+                            @DefaultValue("64MB") DataSize segmentSize,
+                            @DefaultValue("1GB") DataSize maxSize) {
+
+        public BlobStore {
+            if (maxSize == null) {
+                maxSize = DataSize.ofBytes(0);
+            }
+        }
+    }
+
+    /**
+     * Settings for the scheduler that paces GitHub API calls against the rate limit reported in response headers.
+     *
+     * @param enabled          Whether calls are scheduled and rate limited responses retried.
+     * @param maxRetries       The number of times a rate limited request is retried.
+     * @param initialBackoff   The first backoff when the response does not say how long to wait.
+     * @param maxBackoff       The upper bound of the exponential backoff.
+     * @param maxWait          The longest a single wait may take before the request fails instead.
+     * @param pacingThreshold  Below this many remaining requests, calls are spread evenly until the quota resets.
+     */
+    public record RateLimit(@DefaultValue("true") boolean enabled,
+                            @DefaultValue("5") int maxRetries,
+                            @DefaultValue("1s") Duration initialBackoff,
+                            @DefaultValue("1m") Duration maxBackoff,
+                            @DefaultValue("5m") Duration maxWait,
+                            @DefaultValue("100") int pacingThreshold) { }
+
+    /**
+     * Settings for fetching blobs in batches through the GraphQL API.
+     *
+     * @param batchSize    The maximum number of files per query.
+     * @param maxBatchSize The maximum total size of the files of a query, taken from the tree listing.
+     */
+    public record GraphQl(@DefaultValue("100") int batchSize,
+                          @DefaultValue("2MB") DataSize maxBatchSize) {
+
+        public GraphQl {
+            if (batchSize < 1) {
+                throw new IllegalArgumentException("graphql.batchSize must be at least 1");
+            }
+        }
     }
 }
@@ -6,7 +6,7 @@ record GitHubContent(
         String name,
         String path,
         String sha,
-        String size,
+        long size,
         String url,
         @JsonProperty("html_url")
         String htmlUrl,
@@ -14,6 +14,5 @@ record GitHubContent(
         String gitUrl,
         @JsonProperty("download_url")
         String downloadUrl,
-        String type,
-        String content)
+        String type)
 { }
\ No newline at end of file
@@ -1,16 +1,38 @@
 package dev.danvega.cg.gh;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.danvega.cg.filter.ContentLimits;
+import dev.danvega.cg.filter.PathFilter;
+import dev.danvega.cg.metrics.PipelineMetrics;
+import dev.danvega.cg.metrics.PipelineStage;
+import dev.danvega.cg.output.ContentSink;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestClient;
 
 import java.io.IOException;
-import java.nio.file.*;
-import java.util.Base64;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
 
 /**
  * Service class for interacting with GitHub API and downloading repository contents.
@@ -21,9 +43,21 @@ import java.util.List;
 public class GitHubService {
 
     private static final Logger log = LoggerFactory.getLogger(GitHubService.class);
+    /**
+     * Makes the contents and blobs endpoints return the file itself instead of base64 inside JSON.
+     */
+    private static final MediaType RAW = MediaType.valueOf("application/vnd.github.raw+json");
+    private static final byte[] EMPTY = new byte[0];
     private final RestClient restClient;
     private final ObjectMapper objectMapper;
     private final GitHubConfiguration config;
+    private final PathFilter pathFilter;
+    private final ContentLimits limits;
+    private final PipelineMetrics metrics;
+    private final ConditionalRequestCache cache;
+    private final PackedBlobStore blobStore;
+    private final RateLimitScheduler rateLimiter;
+    private final GraphQlBlobFetcher graphQl;
 
     /**
      * Constructs a new GithubService with the specified dependencies.
@@ -31,37 +65,150 @@ public class GitHubService {
      * @param builder       The RestClient.Builder to use for creating the RestClient.
      * @param objectMapper  The ObjectMapper to use for JSON processing.
      * @param config       The GitHub configuration properties.
+     * @param pathFilter   The compiled include and exclude patterns.
+     * @param limits       The size and binary content limits for fetched files.
+     * @param metrics      Times the listing, filtering and fetching stages and counts API calls.
      */
     public GitHubService(RestClient.Builder builder,
                          ObjectMapper objectMapper,
-                         GitHubConfiguration config) {
+                         GitHubConfiguration config,
+                         PathFilter pathFilter,
+                         ContentLimits limits,
+                         PipelineMetrics metrics) {
         this.config = config;
+        this.pathFilter = pathFilter;
+        this.limits = limits;
+        this.metrics = metrics;
+        this.cache = createCache(config.cache());
+        this.blobStore = createBlobStore(config.blobStore());
+        this.rateLimiter = config.rateLimit().enabled()
+                ? new RateLimitScheduler(config.rateLimit(), config.maxConcurrency())
+                : null;
+        if (cache != null) {
+            builder.requestInterceptor(cache);
+        }
+        // Behind the cache, so only calls that go over the network are counted
+        builder.requestInterceptor((request, body, execution) -> {
+            metrics.apiCall();
+            return execution.execute(request, body);
+        });
+        // Registered last, so replayed cache hits never wait for quota and retries go straight to the wire
+        if (rateLimiter != null) {
+            builder.requestInterceptor(rateLimiter);
+            metrics.gauge("github.rate-limit.remaining", () -> rateLimiter.stats().remaining());
+            metrics.gauge("github.rate-limit.reset", () -> {
+                Instant reset = rateLimiter.stats().reset();
+                return reset != null ? reset.getEpochSecond() : null;
+            });
+            metrics.gauge("github.rate-limit.concurrency", () -> rateLimiter.stats().concurrency());
+        }
         this.restClient = builder
-                .baseUrl("https://api.github.com")
+                .baseUrl(config.apiUrl())
                 .defaultHeader("Accept", "application/vnd.github+json")
                 .defaultHeader("X-GitHub-Api-Version","2022-11-28")
                 .defaultHeader("Authorization", "Bearer " + config.token())  // Remove the colon after Bearer
                 .build();
         this.objectMapper = objectMapper;
+        this.graphQl = new GraphQlBlobFetcher(restClient, objectMapper, config.graphql());
     }
 
     /**
-     * Downloads the contents of a specified GitHub repository and writes them to a file.
+     * Downloads the contents of a specified GitHub repository and writes them to a sink,
+     * using the fetch mode configured in {@link GitHubConfiguration}.
      *
      * @param owner The owner of the repository.
      * @param repo  The name of the repository.
+     * @param sink  The sink each matching file is written to.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void downloadRepositoryContents(String owner, String repo, ContentSink sink) throws IOException {
+        downloadRepositoryContents(owner, repo, config.fetchMode(), sink);
+    }
+
+    /**
+     * Downloads the contents of a specified GitHub repository and writes them to a sink.
+     * Files are written one at a time as soon as they are fetched.
+     *
+     * @param owner     The owner of the repository.
+     * @param repo      The name of the repository.
+     * @param fetchMode The strategy used to fetch the contents, or null for the configured default.
+     * @param sink      The sink each matching file is written to.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void downloadRepositoryContents(String owner, String repo, FetchMode fetchMode, ContentSink sink) throws IOException {
+        downloadRepositoryContents(owner, repo, "HEAD", fetchMode, sink);
+    }
+
+    /**
+     * Downloads the contents of a specified GitHub repository at a given ref and writes them to a sink.
+     * Files are written one at a time as soon as they are fetched. Files above the size limits of
+     * {@link ContentLimits} are skipped using the sizes reported by the listing, before they are fetched,
+     * and binary files are skipped after sniffing their first bytes.
+     *
+     * @param owner     The owner of the repository.
+     * @param repo      The name of the repository.
+     * @param ref       The branch, tag or commit to download.
+     * @param fetchMode The strategy used to fetch the contents, or null for the configured default.
+     * @param sink      The sink each matching file is written to.
      * @throws IOException If an I/O error occurs.
      */
-    public void downloadRepositoryContents(String owner, String repo) throws IOException {
-        StringBuilder contentBuilder = new StringBuilder();
-        downloadContentsRecursively(owner, repo, "", contentBuilder);
+    public void downloadRepositoryContents(String owner, String repo, String ref, FetchMode fetchMode, ContentSink sink) throws IOException {
+        FetchMode mode = fetchMode != null ? fetchMode : config.fetchMode();
+        log.debug("Fetching {}/{}@{} using {} mode", owner, repo, ref, mode);
+        switch (mode) {
+            case CONTENTS -> downloadContentsRecursively(owner, repo, ref, "", limits.allowance(), sink);
+            case TARBALL -> downloadTarball(owner, repo, ref, sink);
+            case TREES -> downloadTree(owner, repo, ref, sink);
+            case GRAPHQL -> downloadTreeWithGraphQl(owner, repo, ref, sink);
+            case MIRROR -> throw new IllegalArgumentException("Mirrored repositories are read by MirrorService");
+        }
+
+        log.info("Repository contents of {}/{} downloaded", owner, repo);
+        if (cache != null) {
+            log.info("HTTP cache statistics: {}", cache.stats());
+        }
+        if (blobStore != null) {
+            log.info("Blob store contains {} blobs", blobStore.size());
+        }
+        if (rateLimiter != null) {
+            log.info("Rate limit state: {}", rateLimiter.stats());
+        }
+    }
+
+    /**
+     * Closes the blob store when the application shuts down.
+     *
+     * @throws IOException If the store cannot be closed.
+     */
+    @PreDestroy
+    void close() throws IOException {
+        if (blobStore != null) {
+            blobStore.close();
+        }
+    }
 
-        Path outputDir = Paths.get("output");
-        Files.createDirectories(outputDir);
-        Path outputFile = outputDir.resolve(repo + ".md");
-        Files.write(outputFile, contentBuilder.toString().getBytes());
+    private static ConditionalRequestCache createCache(GitHubConfiguration.HttpCache settings) {
+        if (!settings.enabled()) {
+            return null;
+        }
+        try {
+            return new ConditionalRequestCache(settings.directory(),
+                    settings.maxSize().toBytes(), settings.maxEntrySize().toBytes());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to initialize HTTP cache in " + settings.directory(), e);
+        }
+    }
 
-        log.info("Repository contents written to: {}", outputFile.toAbsolutePath());
+    private static PackedBlobStore createBlobStore(GitHubConfiguration.BlobStore settings) {
+        if (!settings.enabled()) {
+            return null;
+        }
+        try {
+            return new PackedBlobStore(settings.directory(), settings.segmentSize().toBytes(),
+                    settings.maxSize().toBytes());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open blob store in " + settings.directory(), e);
+        }
     }
 
     /**
@@ -69,20 +216,31 @@ public class GitHubService {
      *
      * @param owner           The owner of the repository.
      * @param repo            The name of the repository.
+     * @param ref             The branch, tag or commit to download.
      * @param path            The path within the repository to download.
-     * @param contentBuilder  The StringBuilder to append the content to.
+     * @param allowance       Tracks the total size of the files written so far.
+     * @param sink            The sink each matching file is written to.
      * @throws IOException If an I/O error occurs.
      */
-    private void downloadContentsRecursively(String owner, String repo, String path, StringBuilder contentBuilder) throws IOException {
-        List<GitHubContent> contents = getRepositoryContents(owner, repo, path);
+    private void downloadContentsRecursively(String owner, String repo, String ref, String path,
+                                             ContentLimits.Allowance allowance, ContentSink sink) throws IOException {
+        List<GitHubContent> contents = metrics.observe(PipelineStage.LIST, path,
+                () -> getRepositoryContents(owner, repo, ref, path));
+        sink.filesDiscovered((int) contents.stream()
+                .filter(content -> "file".equals(content.type()) && pathFilter.includes(content.path()))
+                .count());
 
         for (GitHubContent content : contents) {
-            if ("file".equals(content.type()) && shouldIncludeFile(content.path())) {
-                String fileContent = getFileContent(owner, repo, content.path());
-                contentBuilder.append("File: ").append(content.path()).append("\n\n");
-                contentBuilder.append(fileContent).append("\n\n");
-            } else if ("dir".equals(content.type()) && !isExcludedDirectory(content.path())) {
-                downloadContentsRecursively(owner, repo, content.path(), contentBuilder);
+            if (allowance.isExhausted()) {
+                return;
+            }
+            if ("file".equals(content.type()) && pathFilter.includes(content.path())) {
+                if (allowance.admit(content.path(), content.size())) {
+                    writeText(sink, content.path(), getContent(content.sha(), content.path(),
+                            () -> getFileContent(owner, repo, ref, content.path())));
+                }
+            } else if ("dir".equals(content.type()) && !pathFilter.excludesDirectory(content.path())) {
+                downloadContentsRecursively(owner, repo, ref, content.path(), allowance, sink);
             } else {
                 log.debug("Skipping content: {} of type {}", content.path(), content.type());
             }
@@ -90,51 +248,268 @@ public class GitHubService {
     }
 
     /**
-     * Determines whether a file should be included based on include and exclude patterns.
+     * Lists the whole repository with a single recursive trees call, filters the listing with the
+     * include and exclude patterns and then fetches the matching blobs concurrently on virtual threads.
+     * At most {@link GitHubConfiguration#maxConcurrency()} blobs are in flight at any time, and the
+     * content is appended in tree order so the output is the same as a sequential walk.
      *
-     * @param filePath The file path to check.
-     * @return true if the file should be included, false otherwise.
+     * @param owner           The owner of the repository.
+     * @param repo            The name of the repository.
+     * @param ref             The branch, tag or commit to list.
+     * @param sink            The sink each matching file is written to.
+     * @throws IOException If an I/O error occurs.
      */
-    private boolean shouldIncludeFile(String filePath) {
-        // First check if the file is explicitly excluded
-        if (matchesPatterns(filePath, config.excludePatterns())) {
-            log.debug("File {} excluded by exclude patterns", filePath);
-            return false;
+    private void downloadTree(String owner, String repo, String ref, ContentSink sink) throws IOException {
+        List<GitTree.Entry> files = listTree(owner, repo, ref, sink);
+        if (files == null) {
+            return;
         }
 
-        // Then check if it matches include patterns
-        return matchesPatterns(filePath, config.includePatterns());
+        // Keep a bounded window of fetches ahead of the writer, so completed blobs never pile up in memory
+        int window = config.maxConcurrency() * 2;
+        Semaphore permits = new Semaphore(config.maxConcurrency());
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Deque<Future<byte[]>> pending = new ArrayDeque<>(window);
+            int next = 0;
+            for (GitTree.Entry file : files) {
+                while (next < files.size() && pending.size() < window) {
+                    GitTree.Entry ahead = files.get(next++);
+                    pending.add(executor.submit(() -> {
+                        permits.acquire();
+                        try {
+                            return getContent(ahead.sha(), ahead.path(), () -> getBlobContent(owner, repo, ahead.sha()));
+                        } finally {
+                            permits.release();
+                        }
+                    }));
+                }
+                writeText(sink, file.path(), awaitBlob(pending.poll()));
+            }
+        }
     }
 
     /**
-     * Checks if a directory should be excluded from processing.
+     * Lists the repository like {@link #downloadTree} and fetches the matching blobs with batched GraphQL queries.
+     * Blobs already in the blob store are not queried. The next batch is fetched while the current one is
+     * written, and files a batch does not resolve, binary files that are not skipped, truncated texts and texts
+     * that do not encode back to the blob's size (because GitHub decoded them lossily) are fetched from the REST
+     * blobs endpoint instead.
      *
-     * @param dirPath The directory path to check.
-     * @return true if the directory should be excluded, false otherwise.
+     * @param owner           The owner of the repository.
+     * @param repo            The name of the repository.
+     * @param ref             The branch, tag or commit to list.
+     * @param sink            The sink each matching file is written to.
+     * @throws IOException If an I/O error occurs.
      */
-    private boolean isExcludedDirectory(String dirPath) {
-        return matchesPatterns(dirPath, config.excludePatterns());
+    private void downloadTreeWithGraphQl(String owner, String repo, String ref, ContentSink sink) throws IOException {
+        List<GitTree.Entry> files = listTree(owner, repo, ref, sink);
+        if (files == null) {
+            return;
+        }
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            int start = 0;
+            int end = graphQl.nextBatchSize(files, 0);
+            Future<List<byte[]>> pending = end > start ? fetchBatch(executor, owner, repo, ref, files.subList(start, end)) : null;
+            while (pending != null) {
+                List<GitTree.Entry> batch = files.subList(start, end);
+                List<byte[]> contents = awaitBatch(pending);
+                // Sized after the previous batch completed, so a batch that had to be split shrinks the next one
+                start = end;
+                end = start + graphQl.nextBatchSize(files, start);
+                pending = end > start ? fetchBatch(executor, owner, repo, ref, files.subList(start, end)) : null;
+                for (int i = 0; i < batch.size(); i++) {
+                    if (contents.get(i) != null) {
+                        writeText(sink, batch.get(i).path(), contents.get(i));
+                    }
+                }
+            }
+        }
+    }
+
+    private Future<List<byte[]>> fetchBatch(ExecutorService executor, String owner, String repo, String ref,
+                                            List<GitTree.Entry> batch) {
+        return executor.submit(() -> {
+            byte[][] contents = new byte[batch.size()][];
+            List<GitTree.Entry> missing = new ArrayList<>(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                contents[i] = blobStore != null ? blobStore.get(batch.get(i).sha()) : null;
+                if (contents[i] == null) {
+                    missing.add(batch.get(i));
+                }
+            }
+            Map<String, GraphQlBlobFetcher.Blob> blobs = missing.isEmpty() ? Map.of()
+                    : metrics.observe(PipelineStage.FETCH, owner + "/" + repo + " (" + missing.size() + " files)",
+                            () -> graphQl.fetch(owner, repo, ref, missing));
+            for (int i = 0; i < batch.size(); i++) {
+                if (contents[i] != null) {
+                    continue;
+                }
+                GitTree.Entry entry = batch.get(i);
+                GraphQlBlobFetcher.Blob blob = blobs.get(entry.path());
+                byte[] exact = blob != null ? blob.exactContent() : null;
+                if (blob != null && blob.binary() && limits.skipBinary()) {
+                    log.debug("Skipping binary file: {}", entry.path());
+                } else if (exact != null) {
+                    // Only text that encodes back to the blob is stored under its SHA
+                    contents[i] = exact;
+                    if (blobStore != null) {
+                        blobStore.put(entry.sha(), contents[i]);
+                    }
+                } else {
+                    contents[i] = getContent(entry.sha(), entry.path(), () -> getBlobContent(owner, repo, entry.sha()));
+                }
+            }
+            return Arrays.asList(contents);
+        });
+    }
+
+    private List<byte[]> awaitBatch(Future<List<byte[]>> batch) throws IOException {
+        try {
+            return batch.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while fetching blobs", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IOException("Failed to fetch blobs", e.getCause());
+        }
     }
 
     /**
-     * Checks if a given path matches any of the provided patterns.
+     * Lists the whole repository with a single recursive trees call and returns the blobs that match the include
+     * and exclude patterns and fit into the size limits, in the order of the sink. When the listing is truncated,
+     * the repository is walked with the contents API instead and null is returned.
      *
-     * @param path     The path to check.
-     * @param patterns The list of patterns to match against.
-     * @return true if the path matches any pattern, false otherwise.
+     * @param owner           The owner of the repository.
+     * @param repo            The name of the repository.
+     * @param ref             The branch, tag or commit to list.
+     * @param sink            The sink each matching file is written to.
+     * @return The blobs to fetch, or null if the repository has already been written.
+     * @throws IOException If an I/O error occurs.
      */
-    private boolean matchesPatterns(String path, List<String> patterns) {
-        if (patterns.isEmpty()) {
-            return patterns == config.excludePatterns(); // Return false for include patterns, true for exclude patterns
+    private List<GitTree.Entry> listTree(String owner, String repo, String ref, ContentSink sink) throws IOException {
+        GitTree tree = metrics.observe(PipelineStage.LIST, owner + "/" + repo, () -> restClient.get()
+                .uri("/repos/{owner}/{repo}/git/trees/{sha}?recursive=1", owner, repo, ref)
+                .retrieve()
+                .body(GitTree.class));
+        if (tree.truncated()) {
+            log.warn("Tree listing for {}/{} was truncated, falling back to the contents API", owner, repo);
+            downloadContentsRecursively(owner, repo, ref, "", limits.allowance(), sink);
+            return null;
+        }
+
+        List<GitTree.Entry> files = metrics.observe(PipelineStage.FILTER, owner + "/" + repo, () -> {
+            Stream<GitTree.Entry> matching = tree.tree().stream()
+                    .filter(entry -> "blob".equals(entry.type()))
+                    .filter(entry -> pathFilter.includes(entry.path()));
+            if (sink.fileOrder() != null) {
+                matching = matching.sorted(Comparator.comparing(GitTree.Entry::path, sink.fileOrder()));
+            }
+            ContentLimits.Allowance allowance = limits.allowance();
+            return matching
+                    .takeWhile(entry -> !allowance.isExhausted())
+                    .filter(entry -> allowance.admit(entry.path(), entry.size() != null ? entry.size() : 0))
+                    .toList();
+        });
+        log.debug("Fetching {} of {} tree entries for {}/{}", files.size(), tree.tree().size(), owner, repo);
+        sink.filesDiscovered(files.size());
+        return files;
+    }
+
+    private void writeText(ContentSink sink, String path, byte[] content) throws IOException {
+        if (limits.isBinary(content)) {
+            log.debug("Skipping binary file: {}", path);
+            return;
+        }
+        sink.writeFile(path, content);
+    }
+
+    private byte[] awaitBlob(Future<byte[]> blob) throws IOException {
+        try {
+            return blob.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while fetching blobs", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IOException("Failed to fetch blob", e.getCause());
         }
+    }
 
-        for (String pattern : patterns) {
-            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern.trim());
-            if (matcher.matches(Paths.get(path))) {
-                return true;
+    /**
+     * Downloads the repository archive in a single request and writes every matching entry
+     * while the archive is being stream-decompressed.
+     *
+     * @param owner           The owner of the repository.
+     * @param repo            The name of the repository.
+     * @param ref             The branch, tag or commit to download.
+     * @param sink            The sink each matching file is written to.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void downloadTarball(String owner, String repo, String ref, ContentSink sink) throws IOException {
+        metrics.observe(PipelineStage.FETCH, owner + "/" + repo, () -> restClient.get()
+                .uri("/repos/{owner}/{repo}/tarball/{ref}", owner, repo, ref)
+                .exchange((request, response) -> {
+                    if (response.getStatusCode().isError()) {
+                        throw new IOException("Failed to download tarball for " + owner + "/" + repo + ": " + response.getStatusCode());
+                    }
+                    try (InputStream in = new GZIPInputStream(response.getBody(), 64 * 1024)) {
+                        readTarEntries(new TarArchiveReader(in), sink);
+                    }
+                    return null;
+                }));
+    }
+
+    /**
+     * Writes every file entry of the archive that matches the include and exclude patterns.
+     * Entries are prefixed with a {@code <owner>-<repo>-<sha>/} root directory, which is stripped.
+     *
+     * @param reader          The reader positioned at the start of the archive.
+     * @param sink            The sink each matching file is written to.
+     * @throws IOException If the archive cannot be read.
+     */
+    private void readTarEntries(TarArchiveReader reader, ContentSink sink) throws IOException {
+        ContentLimits.Allowance allowance = limits.allowance();
+        TarArchiveReader.Entry entry;
+        while (!allowance.isExhausted() && (entry = reader.nextEntry()) != null) {
+            int rootEnd = entry.path().indexOf('/');
+            String path = rootEnd >= 0 ? entry.path().substring(rootEnd + 1) : "";
+            if (entry.directory() || path.isEmpty()) {
+                continue;
+            }
+            if (pathFilter.includes(path)) {
+                if (allowance.admit(path, entry.size())) {
+                    // The archive has no listing up front, so entries are discovered as they are reached
+                    sink.filesDiscovered(1);
+                    writeText(sink, path, reader.readCurrent());
+                }
+            } else {
+                log.debug("Skipping archive entry: {}", path);
             }
         }
-        return false;
+    }
+
+    /**
+     * Resolves a branch, tag or other ref to the SHA of the commit it currently points to.
+     * The response is small and revalidated through the HTTP cache, so this is cheap to call repeatedly.
+     *
+     * @param owner The owner of the repository.
+     * @param repo  The name of the repository.
+     * @param ref   The ref to resolve.
+     * @return The commit SHA.
+     */
+    public String resolveRevision(String owner, String repo, String ref) {
+        String sha = restClient.get()
+                .uri("/repos/{owner}/{repo}/commits/{ref}", owner, repo, ref)
+                .accept(MediaType.valueOf("application/vnd.github.sha"))
+                .retrieve()
+                .body(String.class);
+        return sha != null ? sha.trim() : ref;
     }
 
     /**
@@ -142,30 +517,73 @@ public class GitHubService {
      *
      * @param owner The owner of the repository.
      * @param repo  The name of the repository.
+     * @param ref   The branch, tag or commit to read.
      * @param path  The path within the repository to retrieve.
      * @return A list of GitHubContent objects representing the contents of the directory.
      */
-    private List<GitHubContent> getRepositoryContents(String owner, String repo, String path) {
+    private List<GitHubContent> getRepositoryContents(String owner, String repo, String ref, String path) {
         return restClient.get()
-                .uri("/repos/{owner}/{repo}/contents/{path}", owner, repo, path)
+                .uri("/repos/{owner}/{repo}/contents/{path}?ref={ref}", owner, repo, path, ref)
                 .retrieve()
                 .body(new ParameterizedTypeReference<List<GitHubContent>>() {});
     }
 
     /**
-     * Retrieves the content of a specific file from the repository.
+     * Retrieves the raw content of a specific file from the repository. The bytes are read straight into an
+     * array of the file's size, with no base64 or JSON in between.
      *
      * @param owner The owner of the repository.
      * @param repo  The name of the repository.
+     * @param ref   The branch, tag or commit to read.
      * @param path  The path to the file within the repository.
-     * @return The content of the file as a String.
+     * @return The content of the file.
+     */
+    private byte[] getFileContent(String owner, String repo, String ref, String path) {
+        byte[] content = restClient.get()
+                .uri("/repos/{owner}/{repo}/contents/{path}?ref={ref}", owner, repo, path, ref)
+                .accept(RAW)
+                .retrieve()
+                .body(byte[].class);
+        return content != null ? content : EMPTY;
+    }
+
+    /**
+     * Retrieves the raw content of a blob by its SHA.
+     *
+     * @param owner The owner of the repository.
+     * @param repo  The name of the repository.
+     * @param sha   The SHA of the blob.
+     * @return The content of the blob.
      */
-    private String getFileContent(String owner, String repo, String path) {
-        GitHubContent response = restClient.get()
-                .uri("/repos/{owner}/{repo}/contents/{path}", owner, repo, path)
+    private byte[] getBlobContent(String owner, String repo, String sha) {
+        byte[] content = restClient.get()
+                .uri("/repos/{owner}/{repo}/git/blobs/{sha}", owner, repo, sha)
+                .accept(RAW)
                 .retrieve()
-                .body(GitHubContent.class);
-        String cleanedString = response.content().replaceAll("[^A-Za-z0-9+/=]", "");
-        return new String(Base64.getDecoder().decode(cleanedString));
+                .body(byte[].class);
+        return content != null ? content : EMPTY;
+    }
+
+    /**
+     * Returns the content of a blob, reading it from the blob store when its SHA is already known
+     * and downloading (and storing) it otherwise.
+     *
+     * @param sha      The git SHA of the blob, may be null.
+     * @param path     The path of the file, for the fetch metrics.
+     * @param download Downloads the decoded blob content.
+     * @return The decoded content of the blob.
+     */
+    private byte[] getContent(String sha, String path, Supplier<byte[]> download) {
+        if (blobStore == null || sha == null) {
+            return metrics.observe(PipelineStage.FETCH, path, download::get);
+        }
+        byte[] content = blobStore.get(sha);
+        if (content != null) {
+            log.trace("Blob {} served from the blob store", sha);
+        } else {
+            content = metrics.observe(PipelineStage.FETCH, path, download::get);
+            blobStore.put(sha, content);
+        }
+        return content;
     }
 }
\ No newline at end of file
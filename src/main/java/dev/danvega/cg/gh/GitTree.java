@@ -0,0 +1,17 @@
+package dev.danvega.cg.gh;
+
+import java.util.List;
+
+record GitTree(
+        String sha,
+        List<Entry> tree,
+        boolean truncated)
+{
+    record Entry(
+            String path,
+            String mode,
+            String type,
+            String sha,
+            Long size)
+    { }
+}
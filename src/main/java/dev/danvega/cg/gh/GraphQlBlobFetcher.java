@@ -0,0 +1,186 @@
+package dev.danvega.cg.gh;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClient;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fetches the text of many blobs with a single GraphQL query, one aliased
+ * {@code object(expression: "<ref>:<path>")} field per file.
+ * <p>
+ * A query without connections costs one point of the GraphQL rate limit no matter how many aliases it has, so
+ * a batch of a hundred files costs as much as a single REST call. Batches are capped both by the number of files
+ * and by the sum of their sizes from the tree listing, so the response stays small enough not to time out.
+ * A batch that fails is split in halves that are retried on their own, and the batch size for the following
+ * batches is halved. It doubles again, up to the configured size, after every few full batches that succeeded.
+ */
+class GraphQlBlobFetcher {
+
+    private static final Logger log = LoggerFactory.getLogger(GraphQlBlobFetcher.class);
+    private static final String FIELDS = "... on Blob { text byteSize isBinary isTruncated }";
+    private static final int SUCCESSES_BEFORE_GROWING = 4;
+
+    private final RestClient restClient;
+    private final ObjectMapper objectMapper;
+    private final GitHubConfiguration.GraphQl settings;
+    private volatile int batchSize;
+    private volatile int successes;
+
+    GraphQlBlobFetcher(RestClient restClient, ObjectMapper objectMapper, GitHubConfiguration.GraphQl settings) {
+        this.restClient = restClient;
+        this.objectMapper = objectMapper;
+        this.settings = settings;
+        this.batchSize = settings.batchSize();
+    }
+
+    /**
+     * Returns the number of entries of the next batch, starting at {@code from}. A batch always holds at least
+     * one entry, even when that entry alone is larger than the size cap.
+     *
+     * @param entries The entries to fetch.
+     * @param from    The index of the first entry of the batch.
+     * @return The number of entries to put into the batch.
+     */
+    int nextBatchSize(List<GitTree.Entry> entries, int from) {
+        int limit = batchSize;
+        long maxBytes = settings.maxBatchSize().toBytes();
+        long bytes = 0;
+        int count = 0;
+        while (from + count < entries.size() && count < limit) {
+            Long size = entries.get(from + count).size();
+            bytes += size != null ? size : 0;
+            if (count > 0 && bytes > maxBytes) {
+                break;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Fetches a batch of blobs. Entries that the response does not resolve to a blob, for example because the
+     * path could not be read, are missing from the result, so the caller can fetch them another way.
+     *
+     * @param owner   The owner of the repository.
+     * @param repo    The name of the repository.
+     * @param ref     The branch, tag or commit to read.
+     * @param entries The entries to fetch.
+     * @return The fetched blobs keyed by path.
+     */
+    Map<String, Blob> fetch(String owner, String repo, String ref, List<GitTree.Entry> entries) {
+        try {
+            Map<String, Blob> blobs = query(owner, repo, ref, entries);
+            if (entries.size() >= batchSize && ++successes >= SUCCESSES_BEFORE_GROWING) {
+                batchSize = Math.min(settings.batchSize(), batchSize * 2);
+                successes = 0;
+            }
+            return blobs;
+        } catch (HttpServerErrorException | ResourceAccessException | GraphQlException e) {
+            if (entries.size() == 1) {
+                log.debug("GraphQL query for {} failed: {}", entries.get(0).path(), e.getMessage());
+                return Map.of();
+            }
+            successes = 0;
+            batchSize = Math.max(1, Math.min(batchSize, entries.size() / 2));
+            log.debug("GraphQL query for {} blobs failed, retrying in halves: {}", entries.size(), e.getMessage());
+            int half = entries.size() / 2;
+            Map<String, Blob> blobs = new HashMap<>(fetch(owner, repo, ref, entries.subList(0, half)));
+            blobs.putAll(fetch(owner, repo, ref, entries.subList(half, entries.size())));
+            return blobs;
+        }
+    }
+
+    private Map<String, Blob> query(String owner, String repo, String ref, List<GitTree.Entry> entries) {
+        StringBuilder declarations = new StringBuilder("$owner: String!, $name: String!");
+        StringBuilder fields = new StringBuilder();
+        Map<String, Object> variables = new LinkedHashMap<>();
+        variables.put("owner", owner);
+        variables.put("name", repo);
+        for (int i = 0; i < entries.size(); i++) {
+            // Expressions are passed as variables, so paths never need GraphQL string escaping
+            declarations.append(", $e").append(i).append(": String!");
+            fields.append(" f").append(i).append(": object(expression: $e").append(i).append(") { ").append(FIELDS).append(" }");
+            variables.put("e" + i, ref + ":" + entries.get(i).path());
+        }
+        String query = "query(" + declarations + ") { repository(owner: $owner, name: $name) {" + fields + " } }";
+
+        byte[] body = restClient.post()
+                .uri("/graphql")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(Map.of("query", query, "variables", variables))
+                .retrieve()
+                .body(byte[].class);
+        JsonNode response;
+        try {
+            response = objectMapper.readTree(body);
+        } catch (IOException e) {
+            throw new GraphQlException("Unreadable GraphQL response: " + e.getMessage());
+        }
+        JsonNode repository = response.path("data").path("repository");
+        if (!repository.isObject()) {
+            throw new GraphQlException("GraphQL query failed: " + response.path("errors"));
+        }
+        if (response.has("errors")) {
+            log.debug("GraphQL query for {}/{} returned partial errors: {}", owner, repo, response.get("errors"));
+        }
+
+        Map<String, Blob> blobs = new HashMap<>();
+        for (int i = 0; i < entries.size(); i++) {
+            JsonNode object = repository.path("f" + i);
+            if (object.has("byteSize")) {
+                JsonNode text = object.path("text");
+                blobs.put(entries.get(i).path(), new Blob(text.isTextual() ? text.asText() : null,
+                        object.path("byteSize").asLong(), object.path("isBinary").asBoolean(),
+                        object.path("isTruncated").asBoolean()));
+            }
+        }
+        return blobs;
+    }
+
+    /**
+     * A blob as returned by the GraphQL API.
+     *
+     * @param text      The UTF-8 text, or null for a binary blob.
+     * @param byteSize  The size of the blob in bytes.
+     * @param binary    Whether GitHub considers the blob binary.
+     * @param truncated Whether the text was cut off because the blob is too large.
+     */
+    record Blob(String text, long byteSize, boolean binary, boolean truncated) {
+
+        /**
+         * Returns the content of the blob, if the text is known to encode back to it. Blobs that are not valid
+         * UTF-8 are decoded lossily by GitHub, which shows as a size that no longer matches.
+         *
+         * @return The exact content, or null if the text is missing, truncated or not byte-identical to the blob.
+         */
+        byte[] exactContent() {
+            if (text == null || truncated) {
+                return null;
+            }
+            byte[] content = text.getBytes(StandardCharsets.UTF_8);
+            return content.length == byteSize ? content : null;
+        }
+    }
+
+    /**
+     * Thrown when a query is answered with errors and without data.
+     */
+    static class GraphQlException extends RuntimeException {
+
+        GraphQlException(String message) {
+            super(message);
+        }
+    }
+}
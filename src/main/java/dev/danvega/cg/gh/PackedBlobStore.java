@@ -0,0 +1,278 @@
+package dev.danvega.cg.gh;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Content-addressed store of decoded blobs keyed by their git SHA.
+ * <p>
+ * Blobs are appended to packed segment files ({@code segment-NNNNN.pack}) that roll over once they
+ * reach the configured size. An append-only {@code index} file records the segment, offset and
+ * length of every blob and is loaded into memory when the store is opened. Since a SHA always
+ * identifies the same content, entries are never rewritten.
+ * <p>
+ * Once all segments together exceed the maximum size, whole segments are dropped oldest first and
+ * the index is rewritten without their blobs, which are then simply downloaded again when needed.
+ */
+class PackedBlobStore implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(PackedBlobStore.class);
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final Path directory;
+    private final long segmentSize;
+    private final long maxSize;
+    private final Path indexFile;
+    private final Map<String, Location> index = new ConcurrentHashMap<>();
+    private final Map<Integer, FileChannel> readers = new HashMap<>();
+    // Segment sizes by segment number, so the oldest segment comes first
+    private final TreeMap<Integer, Long> segmentSizes = new TreeMap<>();
+    private DataOutputStream indexOut;
+    private FileChannel writer;
+    private int currentSegment;
+
+    /**
+     * Opens (or creates) a blob store in the given directory.
+     *
+     * @param directory   The directory the segments and the index are stored in.
+     * @param segmentSize The size at which a new segment file is started.
+     * @param maxSize     The total size of all segments beyond which the oldest segments are dropped, 0 for no limit.
+     * @throws IOException If the store cannot be opened.
+     */
+    PackedBlobStore(Path directory, long segmentSize, long maxSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSize = maxSize;
+        this.indexFile = directory.resolve("index");
+        Files.createDirectories(directory);
+        loadIndex(indexFile);
+        for (int segment = 0; segment <= currentSegment; segment++) {
+            if (Files.exists(segmentFile(segment))) {
+                segmentSizes.put(segment, Files.size(segmentFile(segment)));
+            }
+        }
+        this.indexOut = openIndexForAppend();
+        this.writer = openSegmentForAppend(currentSegment);
+        segmentSizes.putIfAbsent(currentSegment, writer.size());
+        evict();
+        log.debug("Opened blob store {} with {} blobs", directory, index.size());
+    }
+
+    /**
+     * Checks whether a blob is present in the store.
+     *
+     * @param sha The git SHA of the blob.
+     * @return true if the blob is stored, false otherwise.
+     */
+    boolean contains(String sha) {
+        return index.containsKey(sha);
+    }
+
+    /**
+     * Reads a blob from the store.
+     *
+     * @param sha The git SHA of the blob.
+     * @return The decoded content of the blob, or null if it is not stored.
+     */
+    byte[] get(String sha) {
+        Location location = index.get(sha);
+        if (location == null) {
+            return null;
+        }
+        try {
+            FileChannel channel = reader(location.segment());
+            ByteBuffer buffer = ByteBuffer.allocate(location.length());
+            long position = location.offset();
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new EOFException("Blob " + sha + " is truncated");
+                }
+                position += read;
+            }
+            return buffer.array();
+        } catch (IOException e) {
+            log.warn("Failed to read blob {} from store, it will be downloaded again", sha, e);
+            index.remove(sha);
+            return null;
+        }
+    }
+
+    /**
+     * Adds a blob to the store. Blobs that are already stored are ignored.
+     *
+     * @param sha     The git SHA of the blob.
+     * @param content The decoded content of the blob.
+     */
+    synchronized void put(String sha, byte[] content) {
+        if (index.containsKey(sha)) {
+            return;
+        }
+        try {
+            if (writer.size() > 0 && writer.size() + content.length > segmentSize) {
+                writer.close();
+                writer = openSegmentForAppend(++currentSegment);
+                segmentSizes.put(currentSegment, 0L);
+            }
+            long offset = writer.size();
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) {
+                writer.write(buffer, offset + buffer.position());
+            }
+            Location location = new Location(currentSegment, offset, content.length);
+            writeRecord(indexOut, sha, location);
+            indexOut.flush();
+            index.put(sha, location);
+            segmentSizes.merge(currentSegment, (long) content.length, Long::sum);
+            evict();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to store blob " + sha, e);
+        }
+    }
+
+    /**
+     * Returns the number of blobs in the store.
+     *
+     * @return The number of stored blobs.
+     */
+    int size() {
+        return index.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        indexOut.close();
+        writer.close();
+        synchronized (readers) {
+            for (FileChannel channel : readers.values()) {
+                channel.close();
+            }
+            readers.clear();
+        }
+    }
+
+    /**
+     * Drops the oldest segments while all segments together exceed the maximum size. The segment that is
+     * being appended to is always kept.
+     */
+    private void evict() throws IOException {
+        if (maxSize <= 0) {
+            return;
+        }
+        long total = segmentSizes.values().stream().mapToLong(Long::longValue).sum();
+        boolean dropped = false;
+        while (total > maxSize && segmentSizes.firstKey() != currentSegment) {
+            Map.Entry<Integer, Long> oldest = segmentSizes.pollFirstEntry();
+            int segment = oldest.getKey();
+            index.values().removeIf(location -> location.segment() == segment);
+            synchronized (readers) {
+                FileChannel channel = readers.remove(segment);
+                if (channel != null) {
+                    channel.close();
+                }
+            }
+            Files.deleteIfExists(segmentFile(segment));
+            total -= oldest.getValue();
+            dropped = true;
+            log.debug("Evicted blob segment {} of {} bytes", segment, oldest.getValue());
+        }
+        if (dropped) {
+            rewriteIndex();
+        }
+    }
+
+    /**
+     * Replaces the index file with the records of the blobs that are still stored.
+     */
+    private void rewriteIndex() throws IOException {
+        indexOut.close();
+        Path temp = directory.resolve("index.tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            for (Map.Entry<String, Location> entry : index.entrySet()) {
+                writeRecord(out, entry.getKey(), entry.getValue());
+            }
+        }
+        Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        indexOut = openIndexForAppend();
+    }
+
+    private static void writeRecord(DataOutputStream out, String sha, Location location) throws IOException {
+        byte[] rawSha = HEX.parseHex(sha);
+        out.writeByte(rawSha.length);
+        out.write(rawSha);
+        out.writeInt(location.segment());
+        out.writeLong(location.offset());
+        out.writeInt(location.length());
+    }
+
+    private DataOutputStream openIndexForAppend() throws IOException {
+        return new DataOutputStream(Files.newOutputStream(indexFile, StandardOpenOption.CREATE, StandardOpenOption.APPEND));
+    }
+
+    private void loadIndex(Path indexFile) throws IOException {
+        if (!Files.exists(indexFile)) {
+            return;
+        }
+        long validLength = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            while (true) {
+                int shaLength = in.read();
+                if (shaLength < 0) {
+                    break;
+                }
+                byte[] rawSha = new byte[shaLength];
+                in.readFully(rawSha);
+                Location location = new Location(in.readInt(), in.readLong(), in.readInt());
+                index.put(HEX.formatHex(rawSha), location);
+                currentSegment = Math.max(currentSegment, location.segment());
+                validLength += 1 + shaLength + Integer.BYTES + Long.BYTES + Integer.BYTES;
+            }
+        } catch (EOFException e) {
+            // A partially written record from an interrupted run, drop it so new records stay aligned
+            log.debug("Truncating partial record at the end of {}", indexFile);
+            try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.WRITE)) {
+                channel.truncate(validLength);
+            }
+        }
+    }
+
+    private FileChannel openSegmentForAppend(int segment) throws IOException {
+        return FileChannel.open(segmentFile(segment), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    private FileChannel reader(int segment) throws IOException {
+        synchronized (readers) {
+            FileChannel channel = readers.get(segment);
+            if (channel == null) {
+                channel = FileChannel.open(segmentFile(segment), StandardOpenOption.READ);
+                readers.put(segment, channel);
+            }
+            return channel;
+        }
+    }
+
+    private Path segmentFile(int segment) {
+        return directory.resolve("segment-%05d.pack".formatted(segment));
+    }
+
+    private record Location(int segment, long offset, int length) { }
+}
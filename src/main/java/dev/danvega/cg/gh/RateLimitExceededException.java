@@ -0,0 +1,29 @@
+package dev.danvega.cg.gh;
+
+import org.springframework.web.client.RestClientException;
+
+import java.time.Instant;
+
+/**
+ * Thrown when a GitHub API call is still rate limited after all retries, or when the wait for the quota to reset
+ * would take longer than allowed. Blobs fetched before the failure are kept in the blob store, so running the same
+ * crawl again after {@link #retryAt()} resumes where it stopped.
+ */
+public class RateLimitExceededException extends RestClientException {
+
+    private final Instant retryAt;
+
+    public RateLimitExceededException(String message, Instant retryAt) {
+        super(message);
+        this.retryAt = retryAt;
+    }
+
+    /**
+     * Returns when the request may be retried.
+     *
+     * @return The earliest time a retry can succeed.
+     */
+    public Instant retryAt() {
+        return retryAt;
+    }
+}
@@ -0,0 +1,298 @@
+package dev.danvega.cg.gh;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Schedules GitHub API calls against the rate limit reported in the {@code X-RateLimit-Remaining} and
+ * {@code X-RateLimit-Reset} response headers.
+ * <ul>
+ *     <li>When the quota is exhausted, calls wait for the reset instead of failing.</li>
+ *     <li>When fewer than {@link GitHubConfiguration.RateLimit#pacingThreshold()} calls remain, they are spread
+ *     evenly over the time left until the reset.</li>
+ *     <li>Responses with status 429, and 403 responses that carry {@code Retry-After} or an exhausted quota, are
+ *     retried after the delay the server asks for, or after a jittered exponential backoff.</li>
+ *     <li>403 responses without those headers whose message mentions a secondary rate limit are retried after at
+ *     least a minute, doubling the wait on every further attempt, as GitHub asks clients to do.</li>
+ *     <li>Concurrency adapts to secondary rate limits: it is halved on every rate limited response and grows back by
+ *     one after a run of successful calls.</li>
+ * </ul>
+ * Retrying executes the request again, so this interceptor must be registered last, directly in front of the wire.
+ */
+class RateLimitScheduler implements ClientHttpRequestInterceptor {
+
+    private static final Logger log = LoggerFactory.getLogger(RateLimitScheduler.class);
+    private static final Duration SECONDARY_LIMIT_BACKOFF = Duration.ofMinutes(1);
+
+    private final GitHubConfiguration.RateLimit settings;
+    private final int maxConcurrency;
+    private final Clock clock;
+    private final Sleeper sleeper;
+
+    private int concurrency;
+    private int inFlight;
+    private int successes;
+    private long remaining = -1;
+    private Instant reset;
+    private Instant notBefore = Instant.MIN;
+    private Instant nextSlot = Instant.MIN;
+
+    RateLimitScheduler(GitHubConfiguration.RateLimit settings, int maxConcurrency) {
+        this(settings, maxConcurrency, Clock.systemUTC(), duration -> Thread.sleep(duration.toMillis()));
+    }
+
+    RateLimitScheduler(GitHubConfiguration.RateLimit settings, int maxConcurrency, Clock clock, Sleeper sleeper) {
+        this.settings = settings;
+        this.maxConcurrency = maxConcurrency;
+        this.concurrency = maxConcurrency;
+        this.clock = clock;
+        this.sleeper = sleeper;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            acquire();
+            ClientHttpResponse response;
+            try {
+                response = execution.execute(request, body);
+            } finally {
+                release();
+            }
+
+            HttpHeaders headers = response.getHeaders();
+            updateQuota(headers);
+            int status = response.getStatusCode().value();
+            boolean secondaryLimit = false;
+            if (status == HttpStatus.FORBIDDEN.value() && !isRateLimited(status, headers)) {
+                // Secondary rate limits often only say so in the message, so the body has to be inspected
+                byte[] content = response.getBody().readAllBytes();
+                response = new BufferedResponse(response, content);
+                secondaryLimit = isSecondaryRateLimit(content);
+            }
+            if (!secondaryLimit && !isRateLimited(status, headers)) {
+                onSuccess();
+                return response;
+            }
+
+            Duration delay = retryDelay(headers, attempt, secondaryLimit);
+            Instant retryAt = clock.instant().plus(delay);
+            response.close();
+            if (attempt >= settings.maxRetries() || delay.compareTo(settings.maxWait()) > 0) {
+                throw new RateLimitExceededException("GitHub rate limit exceeded for " + request.getURI()
+                        + ", retry after " + retryAt, retryAt);
+            }
+            onRateLimited(retryAt);
+            log.warn("Rate limited by GitHub on {}, retrying in {} ms (attempt {} of {})",
+                    request.getURI().getPath(), delay.toMillis(), attempt + 1, settings.maxRetries());
+        }
+    }
+
+    /**
+     * Returns a snapshot of the scheduler state.
+     *
+     * @return The current scheduler statistics.
+     */
+    synchronized Stats stats() {
+        return new Stats(concurrency, remaining, reset);
+    }
+
+    private void acquire() throws IOException {
+        while (true) {
+            Duration delay;
+            synchronized (this) {
+                while (inFlight >= concurrency) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while waiting for a request slot");
+                    }
+                }
+                Instant now = clock.instant();
+                Instant earliest = notBefore.isAfter(nextSlot) ? notBefore : nextSlot;
+                if (!earliest.isAfter(now)) {
+                    inFlight++;
+                    nextSlot = now.plus(pacingInterval(now));
+                    if (remaining > 0) {
+                        remaining--;
+                    }
+                    return;
+                }
+                delay = Duration.between(now, earliest);
+                if (delay.compareTo(settings.maxWait()) > 0) {
+                    throw new RateLimitExceededException("GitHub rate limit exhausted until " + earliest, earliest);
+                }
+            }
+            try {
+                sleeper.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the GitHub rate limit");
+            }
+        }
+    }
+
+    private synchronized void release() {
+        inFlight--;
+        notifyAll();
+    }
+
+    /**
+     * Spreads the remaining calls evenly over the time left until the reset once the quota runs low.
+     */
+    private Duration pacingInterval(Instant now) {
+        if (remaining < 0 || remaining >= settings.pacingThreshold() || reset == null || !reset.isAfter(now)) {
+            return Duration.ZERO;
+        }
+        return Duration.between(now, reset).dividedBy(Math.max(1, remaining));
+    }
+
+    private synchronized void updateQuota(HttpHeaders headers) {
+        String remainingHeader = headers.getFirst("X-RateLimit-Remaining");
+        String resetHeader = headers.getFirst("X-RateLimit-Reset");
+        if (remainingHeader == null || resetHeader == null) {
+            return;
+        }
+        try {
+            remaining = Long.parseLong(remainingHeader.trim());
+            reset = Instant.ofEpochSecond(Long.parseLong(resetHeader.trim()));
+        } catch (NumberFormatException e) {
+            log.debug("Ignoring malformed rate limit headers {} / {}", remainingHeader, resetHeader);
+            return;
+        }
+        if (remaining == 0 && reset.isAfter(notBefore)) {
+            notBefore = reset;
+        }
+    }
+
+    private boolean isRateLimited(int status, HttpHeaders headers) {
+        if (status == HttpStatus.TOO_MANY_REQUESTS.value()) {
+            return true;
+        }
+        return status == HttpStatus.FORBIDDEN.value()
+                && (headers.getFirst(HttpHeaders.RETRY_AFTER) != null || "0".equals(headers.getFirst("X-RateLimit-Remaining")));
+    }
+
+    private static boolean isSecondaryRateLimit(byte[] content) {
+        return new String(content, StandardCharsets.UTF_8).toLowerCase(Locale.ROOT).contains("secondary rate limit");
+    }
+
+    /**
+     * Waits as long as the server asks for, falling back to a jittered exponential backoff that starts at a minute
+     * for secondary rate limits. A small random delay is added on top of server provided delays, so concurrent
+     * requests do not all retry at the same instant.
+     */
+    private Duration retryDelay(HttpHeaders headers, int attempt, boolean secondaryLimit) {
+        long jitterBound = Math.max(1, settings.initialBackoff().toMillis());
+        String retryAfter = headers.getFirst(HttpHeaders.RETRY_AFTER);
+        if (retryAfter != null) {
+            try {
+                return Duration.ofSeconds(Long.parseLong(retryAfter.trim()))
+                        .plusMillis(ThreadLocalRandom.current().nextLong(jitterBound));
+            } catch (NumberFormatException e) {
+                log.debug("Ignoring non-numeric Retry-After {}", retryAfter);
+            }
+        }
+        if (secondaryLimit) {
+            return SECONDARY_LIMIT_BACKOFF.multipliedBy(1L << Math.min(attempt, 10))
+                    .plusMillis(ThreadLocalRandom.current().nextLong(jitterBound));
+        }
+        synchronized (this) {
+            Instant now = clock.instant();
+            if (remaining == 0 && reset != null && reset.isAfter(now)) {
+                return Duration.between(now, reset).plusMillis(ThreadLocalRandom.current().nextLong(jitterBound));
+            }
+        }
+        long backoff = Math.min(settings.maxBackoff().toMillis(), settings.initialBackoff().toMillis() << Math.min(attempt, 20));
+        // Equal jitter: wait at least half the backoff, and a random share of the other half
+        return Duration.ofMillis(backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1));
+    }
+
+    private synchronized void onRateLimited(Instant retryAt) {
+        if (retryAt.isAfter(notBefore)) {
+            notBefore = retryAt;
+        }
+        concurrency = Math.max(1, concurrency / 2);
+        successes = 0;
+    }
+
+    private synchronized void onSuccess() {
+        if (concurrency < maxConcurrency && ++successes >= concurrency) {
+            concurrency++;
+            successes = 0;
+            notifyAll();
+        }
+    }
+
+    /**
+     * A response whose body has already been read into memory.
+     */
+    private static final class BufferedResponse implements ClientHttpResponse {
+
+        private final ClientHttpResponse response;
+        private final byte[] content;
+
+        BufferedResponse(ClientHttpResponse response, byte[] content) {
+            this.response = response;
+            this.content = content;
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() throws IOException {
+            return response.getStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return response.getStatusText();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return response.getHeaders();
+        }
+
+        @Override
+        public InputStream getBody() {
+            return new ByteArrayInputStream(content);
+        }
+
+        @Override
+        public void close() {
+            response.close();
+        }
+    }
+
+    @FunctionalInterface
+    interface Sleeper {
+        void sleep(Duration duration) throws InterruptedException;
+    }
+
+    /**
+     * The adaptive concurrency limit and the last known quota.
+     *
+     * @param concurrency The number of calls currently allowed in flight.
+     * @param remaining   The remaining quota, or -1 if GitHub has not reported it yet.
+     * @param reset       When the quota resets, or null if unknown.
+     */
+    record Stats(int concurrency, long remaining, Instant reset) { }
+}
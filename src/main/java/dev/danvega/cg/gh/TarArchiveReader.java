@@ -0,0 +1,183 @@
+package dev.danvega.cg.gh;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal forward-only reader for (ustar/pax) tar streams such as the archives served by the
+ * GitHub tarball endpoint. Entries are read one at a time straight from the underlying stream,
+ * so the archive is never buffered in memory or on disk.
+ */
+class TarArchiveReader {
+
+    private static final int BLOCK_SIZE = 512;
+
+    private final InputStream in;
+    private final byte[] header = new byte[BLOCK_SIZE];
+    private long remaining;
+    private long padding;
+
+    TarArchiveReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Advances to the next regular file or directory entry, skipping any unread data of the current one.
+     *
+     * @return The next entry, or null when the end of the archive has been reached.
+     * @throws IOException If the stream cannot be read or is not a valid tar archive.
+     */
+    Entry nextEntry() throws IOException {
+        skipCurrent();
+        String paxPath = null;
+        String longName = null;
+        while (true) {
+            if (!readBlock(header)) {
+                return null;
+            }
+            if (isZeroBlock(header)) {
+                return null;
+            }
+            String name = readString(header, 0, 100);
+            long size = readOctal(header, 124, 12);
+            char type = (char) header[156];
+            String prefix = readString(header, 345, 155);
+            remaining = size;
+            padding = (BLOCK_SIZE - (size % BLOCK_SIZE)) % BLOCK_SIZE;
+
+            switch (type) {
+                case 'x' -> paxPath = readPaxPath(readCurrent());
+                case 'g' -> skipCurrent();
+                case 'L' -> longName = trimNul(new String(readCurrent(), StandardCharsets.UTF_8));
+                default -> {
+                    String path = paxPath != null ? paxPath
+                            : longName != null ? longName
+                            : prefix.isEmpty() ? name : prefix + "/" + name;
+                    boolean directory = type == '5' || path.endsWith("/");
+                    boolean file = type == '0' || type == '\0' || type == '7';
+                    if (directory || file) {
+                        return new Entry(path, size, directory);
+                    }
+                    skipCurrent();
+                    paxPath = null;
+                    longName = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the remaining data of the current entry.
+     *
+     * @return The entry data.
+     * @throws IOException If the stream cannot be read.
+     */
+    byte[] readCurrent() throws IOException {
+        if (remaining > Integer.MAX_VALUE - 8) {
+            throw new IOException("Tar entry too large: " + remaining + " bytes");
+        }
+        byte[] data = in.readNBytes((int) remaining);
+        if (data.length != remaining) {
+            throw new EOFException("Unexpected end of tar archive");
+        }
+        remaining = 0;
+        in.skipNBytes(padding);
+        padding = 0;
+        return data;
+    }
+
+    private void skipCurrent() throws IOException {
+        if (remaining > 0 || padding > 0) {
+            in.skipNBytes(remaining + padding);
+            remaining = 0;
+            padding = 0;
+        }
+    }
+
+    private boolean readBlock(byte[] block) throws IOException {
+        int read = in.readNBytes(block, 0, BLOCK_SIZE);
+        if (read == 0) {
+            return false;
+        }
+        if (read != BLOCK_SIZE) {
+            throw new EOFException("Truncated tar header");
+        }
+        return true;
+    }
+
+    private static boolean isZeroBlock(byte[] block) {
+        for (byte b : block) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String readPaxPath(byte[] data) {
+        // Records have the form "<length> <key>=<value>\n", where length counts bytes
+        int pos = 0;
+        String path = null;
+        while (pos < data.length) {
+            int space = pos;
+            while (space < data.length && data[space] != ' ') {
+                space++;
+            }
+            if (space >= data.length) {
+                break;
+            }
+            int length = Integer.parseInt(new String(data, pos, space - pos, StandardCharsets.US_ASCII));
+            if (length <= 0) {
+                break;
+            }
+            String record = new String(data, space + 1, pos + length - space - 2, StandardCharsets.UTF_8);
+            if (record.startsWith("path=")) {
+                path = record.substring("path=".length());
+            }
+            pos += length;
+        }
+        return path;
+    }
+
+    private static String readString(byte[] block, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && block[end] != 0) {
+            end++;
+        }
+        return new String(block, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    private static long readOctal(byte[] block, int offset, int length) throws IOException {
+        long value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            byte b = block[i];
+            if (b == 0 || b == ' ') {
+                if (value > 0) {
+                    break;
+                }
+                continue;
+            }
+            if (b < '0' || b > '7') {
+                throw new IOException("Invalid tar header size field");
+            }
+            value = (value << 3) + (b - '0');
+        }
+        return value;
+    }
+
+    private static String trimNul(String value) {
+        int nul = value.indexOf('\0');
+        return nul >= 0 ? value.substring(0, nul) : value;
+    }
+
+    /**
+     * A single archive entry.
+     *
+     * @param path      The path of the entry inside the archive.
+     * @param size      The size of the entry data in bytes.
+     * @param directory Whether the entry is a directory.
+     */
+    record Entry(String path, long size, boolean directory) { }
+}
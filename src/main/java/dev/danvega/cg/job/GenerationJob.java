@@ -0,0 +1,201 @@
+package dev.danvega.cg.job;
+
+import dev.danvega.cg.gh.FetchMode;
+import dev.danvega.cg.output.ProgressListener;
+import dev.danvega.cg.output.TokenSummary;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A document generation running in the background. The job receives progress from the document writer and
+ * aborts generation at the next file once it has been cancelled.
+ */
+public class GenerationJob implements ProgressListener {
+
+    private final String id;
+    private final String githubUrl;
+    private final String localPath;
+    private final FetchMode fetchMode;
+    private final long tokenBudget;
+    private final Path resultFile;
+    private final AtomicInteger filesDiscovered = new AtomicInteger();
+    private final AtomicInteger filesFetched = new AtomicInteger();
+    private final AtomicLong bytes = new AtomicLong();
+    private final List<SseEmitter> subscribers = new CopyOnWriteArrayList<>();
+    private volatile JobState state = JobState.QUEUED;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String error;
+    private volatile boolean subscribed;
+    private volatile Future<?> future;
+    private volatile TokenSummary summary;
+
+    GenerationJob(String id, String githubUrl, String localPath, FetchMode fetchMode, long tokenBudget, Path resultFile) {
+        this.id = id;
+        this.githubUrl = githubUrl;
+        this.localPath = localPath;
+        this.fetchMode = fetchMode;
+        this.tokenBudget = tokenBudget;
+        this.resultFile = resultFile;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public JobState state() {
+        return state;
+    }
+
+    String githubUrl() {
+        return githubUrl;
+    }
+
+    String localPath() {
+        return localPath;
+    }
+
+    FetchMode fetchMode() {
+        return fetchMode;
+    }
+
+    long tokenBudget() {
+        return tokenBudget;
+    }
+
+    Path resultFile() {
+        return resultFile;
+    }
+
+    /**
+     * Returns the per-file token summary of a completed job that had a token budget.
+     *
+     * @return The summary, or null if the job had no budget or has not completed.
+     */
+    public TokenSummary summary() {
+        return summary;
+    }
+
+    Instant finishedAt() {
+        return finishedAt;
+    }
+
+    List<SseEmitter> subscribers() {
+        return subscribers;
+    }
+
+    void subscribe(SseEmitter emitter) {
+        subscribed = true;
+        subscribers.add(emitter);
+    }
+
+    /**
+     * Checks whether every client that followed the job's progress has gone away.
+     *
+     * @return true if the job has had subscribers and none are left.
+     */
+    boolean isAbandoned() {
+        return subscribed && subscribers.isEmpty();
+    }
+
+    void setFuture(Future<?> future) {
+        this.future = future;
+    }
+
+    synchronized boolean start() {
+        if (state != JobState.QUEUED) {
+            return false;
+        }
+        state = JobState.RUNNING;
+        startedAt = Instant.now();
+        return true;
+    }
+
+    synchronized void complete(long size, TokenSummary summary) {
+        if (state == JobState.RUNNING) {
+            bytes.set(size);
+            this.summary = summary;
+            finish(JobState.COMPLETED);
+        }
+    }
+
+    synchronized void fail(String message) {
+        if (state == JobState.RUNNING) {
+            error = message;
+            finish(JobState.FAILED);
+        }
+    }
+
+    /**
+     * Cancels the job. A queued job never starts, and a running job is interrupted and stops before writing
+     * its next file.
+     *
+     * @return true if the job was cancelled, false if it had already finished.
+     */
+    synchronized boolean cancel() {
+        if (state.isTerminal()) {
+            return false;
+        }
+        finish(JobState.CANCELLED);
+        Future<?> running = future;
+        if (running != null) {
+            running.cancel(true);
+        }
+        return true;
+    }
+
+    private void finish(JobState terminal) {
+        state = terminal;
+        finishedAt = Instant.now();
+    }
+
+    @Override
+    public void filesDiscovered(int count) {
+        checkCancelled();
+        filesDiscovered.addAndGet(count);
+    }
+
+    @Override
+    public void fileWritten(String path, long sectionBytes) {
+        filesFetched.incrementAndGet();
+        bytes.addAndGet(sectionBytes);
+        checkCancelled();
+    }
+
+    private void checkCancelled() {
+        if (state == JobState.CANCELLED) {
+            throw new CancellationException("Job " + id + " was cancelled");
+        }
+    }
+
+    /**
+     * Takes a snapshot of the current progress. The ETA extrapolates the rate at which files have been
+     * written so far to the files that are still outstanding.
+     *
+     * @return The current progress.
+     */
+    public JobProgress progress() {
+        JobState current = state;
+        int discovered = filesDiscovered.get();
+        int fetched = filesFetched.get();
+        Instant started = startedAt;
+        Instant end = finishedAt != null ? finishedAt : Instant.now();
+        long elapsed = started != null ? Duration.between(started, end).toMillis() : 0;
+        Long eta = null;
+        if (current.isTerminal()) {
+            eta = 0L;
+        } else if (fetched > 0 && discovered >= fetched) {
+            eta = elapsed * (discovered - fetched) / fetched;
+        }
+        return new JobProgress(id, current, discovered, fetched, bytes.get(), elapsed, eta, error);
+    }
+}
@@ -0,0 +1,158 @@
+package dev.danvega.cg.job;
+
+import dev.danvega.cg.GeneratedContent;
+import dev.danvega.cg.gh.FetchMode;
+import dev.danvega.cg.metrics.PipelineMetrics;
+import dev.danvega.cg.metrics.PipelineStage;
+import dev.danvega.cg.output.Gzip;
+import dev.danvega.cg.output.TokenSummary;
+import gg.jte.TemplateEngine;
+import gg.jte.TemplateOutput;
+import gg.jte.output.WriterOutput;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Asynchronous counterpart of {@code /generate}: submitting returns a job ID straight away, progress is
+ * streamed from {@code /jobs/{id}/events} and the document is fetched from {@code /jobs/{id}/result}.
+ */
+@RestController
+@RequestMapping("/jobs")
+public class GenerationJobController {
+
+    private final GenerationJobService jobService;
+    private final TemplateEngine templateEngine;
+    private final PipelineMetrics metrics;
+
+    public GenerationJobController(GenerationJobService jobService, TemplateEngine templateEngine, PipelineMetrics metrics) {
+        this.jobService = jobService;
+        this.templateEngine = templateEngine;
+        this.metrics = metrics;
+    }
+
+    @PostMapping
+    public ResponseEntity<JobProgress> submit(@RequestParam(required = false) String githubUrl,
+                                              @RequestParam(required = false) String localPath,
+                                              @RequestParam(required = false) FetchMode fetchMode,
+                                              @RequestParam(required = false) Long tokenBudget) {
+        if ((githubUrl == null || githubUrl.isBlank()) && (localPath == null || localPath.isBlank())) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            GenerationJob job = jobService.submit(githubUrl, localPath, fetchMode, tokenBudget != null ? tokenBudget : 0);
+            return ResponseEntity.accepted().body(job.progress());
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<JobProgress> status(@PathVariable String id) {
+        return jobService.find(id)
+                .map(job -> ResponseEntity.ok(job.progress()))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @GetMapping(path = "/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> events(@PathVariable String id) {
+        return jobService.find(id)
+                .map(job -> ResponseEntity.ok(jobService.subscribe(job)))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Returns the generated document of a completed job, or 409 while the job has not completed. The result is
+     * stored gzip compressed and sent as it is to clients that accept gzip, decompressed for all others.
+     */
+    @GetMapping("/{id}/result")
+    public ResponseEntity<Resource> result(@PathVariable String id,
+                                           @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding)
+            throws IOException {
+        GenerationJob job = jobService.find(id).orElse(null);
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (job.state() != JobState.COMPLETED) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8))
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (Gzip.isAccepted(acceptEncoding)) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, Gzip.ENCODING)
+                    .body(new FileSystemResource(job.resultFile()));
+        }
+        return response.body(new InputStreamResource(Gzip.decompress(Files.newInputStream(job.resultFile()))));
+    }
+
+    /**
+     * Renders the document of a completed job with the {@code result} template, for the htmx front end. The stored
+     * result is decompressed while the page is rendered and written straight to the response.
+     */
+    @GetMapping("/{id}/view")
+    public void view(@PathVariable String id, HttpServletResponse response) throws IOException {
+        GenerationJob job = jobService.find(id).orElse(null);
+        if (job == null) {
+            response.setStatus(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+        if (job.state() != JobState.COMPLETED) {
+            response.setStatus(HttpStatus.CONFLICT.value());
+            return;
+        }
+        Map<String, Object> model = Map.of("content", new GeneratedContent(out -> {
+            try (InputStream in = Gzip.decompress(Files.newInputStream(job.resultFile()))) {
+                in.transferTo(out);
+            }
+            return job.summary();
+        }));
+        response.setContentType(MediaType.TEXT_HTML_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        TemplateOutput output = new WriterOutput(response.getWriter());
+        metrics.observe(PipelineStage.RENDER, "result.jte", () -> {
+            templateEngine.render("result.jte", model, output);
+            return null;
+        });
+    }
+
+    /**
+     * Returns the per-file token and byte summary of a completed job that was submitted with a token budget.
+     */
+    @GetMapping("/{id}/summary")
+    public ResponseEntity<TokenSummary> summary(@PathVariable String id) {
+        return jobService.find(id)
+                .map(GenerationJob::summary)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> cancel(@PathVariable String id) {
+        if (jobService.find(id).isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return jobService.cancel(id) ? ResponseEntity.noContent().build() : ResponseEntity.status(HttpStatus.CONFLICT).build();
+    }
+}
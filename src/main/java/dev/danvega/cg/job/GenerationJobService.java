@@ -0,0 +1,240 @@
+package dev.danvega.cg.job;
+
+import dev.danvega.cg.ContentGeneratorService;
+import dev.danvega.cg.GenerationRequest;
+import dev.danvega.cg.gh.FetchMode;
+import dev.danvega.cg.output.Gzip;
+import dev.danvega.cg.output.TokenSummary;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs document generation as background jobs on a bounded executor, so request threads return immediately.
+ * Subscribers receive {@code progress} Server-Sent Events at a fixed interval until the job finishes, and the
+ * document is written to a per-job result file that can be fetched once the job has completed.
+ */
+@Service
+public class GenerationJobService {
+
+    private static final Logger log = LoggerFactory.getLogger(GenerationJobService.class);
+    private static final String PROGRESS_EVENT = "progress";
+
+    private final ContentGeneratorService contentGeneratorService;
+    private final Path directory;
+    private final Duration retention;
+    private final boolean cancelWhenAbandoned;
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService scheduler;
+    private final Map<String, GenerationJob> jobs = new ConcurrentHashMap<>();
+
+    public GenerationJobService(ContentGeneratorService contentGeneratorService,
+                                @Value("${app.jobs.directory:.cache/jobs}") Path directory,
+                                @Value("${app.jobs.concurrency:4}") int concurrency,
+                                @Value("${app.jobs.queue-capacity:100}") int queueCapacity,
+                                @Value("${app.jobs.retention:10m}") Duration retention,
+                                @Value("${app.jobs.progress-interval:500ms}") Duration progressInterval,
+                                @Value("${app.jobs.cancel-when-abandoned:true}") boolean cancelWhenAbandoned) {
+        this.contentGeneratorService = contentGeneratorService;
+        this.directory = directory;
+        this.retention = retention;
+        this.cancelWhenAbandoned = cancelWhenAbandoned;
+        this.executor = new ThreadPoolExecutor(concurrency, concurrency, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), Thread.ofPlatform().name("generation-job-", 0).factory());
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("generation-job-progress").daemon().factory());
+        this.scheduler.scheduleAtFixedRate(this::tick, progressInterval.toMillis(), progressInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues a new generation job.
+     *
+     * @param githubUrl The URL of the GitHub repository, or null when a local path is given.
+     * @param localPath The path of the local directory, or null when a GitHub URL is given.
+     * @param fetchMode The GitHub fetch mode, or null for the configured default.
+     * @return The queued job.
+     * @throws RejectedExecutionException If the job queue is full.
+     */
+    public GenerationJob submit(String githubUrl, String localPath, FetchMode fetchMode) {
+        return submit(githubUrl, localPath, fetchMode, 0);
+    }
+
+    /**
+     * Queues a new generation job whose document has to fit into a token budget.
+     *
+     * @param githubUrl   The URL of the GitHub repository, or null when a local path is given.
+     * @param localPath   The path of the local directory, or null when a GitHub URL is given.
+     * @param fetchMode   The GitHub fetch mode, or null for the configured default.
+     * @param tokenBudget The maximum number of tokens of the document, or 0 for no limit.
+     * @return The queued job.
+     * @throws RejectedExecutionException If the job queue is full.
+     */
+    public GenerationJob submit(String githubUrl, String localPath, FetchMode fetchMode, long tokenBudget) {
+        String id = UUID.randomUUID().toString();
+        GenerationJob job = new GenerationJob(id, githubUrl, localPath, fetchMode, tokenBudget,
+                directory.resolve(id + ".md" + Gzip.EXTENSION));
+        jobs.put(id, job);
+        try {
+            job.setFuture(executor.submit(() -> run(job)));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(id);
+            throw e;
+        }
+        log.info("Queued generation job {}", id);
+        return job;
+    }
+
+    /**
+     * Looks up a job that is still running or finished within the retention period.
+     *
+     * @param id The job ID.
+     * @return The job, or empty if it is unknown or has expired.
+     */
+    public Optional<GenerationJob> find(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    /**
+     * Cancels a job.
+     *
+     * @param id The job ID.
+     * @return true if the job was cancelled, false if it is unknown or has already finished.
+     */
+    public boolean cancel(String id) {
+        GenerationJob job = jobs.get(id);
+        if (job == null || !job.cancel()) {
+            return false;
+        }
+        log.info("Cancelled generation job {}", id);
+        publish(job);
+        return true;
+    }
+
+    /**
+     * Subscribes to the progress events of a job. The current progress is sent immediately, and the
+     * emitter is completed after the event for the terminal state.
+     *
+     * @param job The job to follow.
+     * @return The emitter to return from the controller.
+     */
+    public SseEmitter subscribe(GenerationJob job) {
+        SseEmitter emitter = new SseEmitter(0L);
+        Runnable unsubscribe = () -> unsubscribe(job, emitter);
+        emitter.onCompletion(unsubscribe);
+        emitter.onTimeout(unsubscribe);
+        emitter.onError(e -> unsubscribe.run());
+        job.subscribe(emitter);
+        send(job, emitter, job.progress());
+        return emitter;
+    }
+
+    private void run(GenerationJob job) {
+        if (!job.start()) {
+            return;
+        }
+        try {
+            Files.createDirectories(directory);
+            TokenSummary summary = null;
+            try (OutputStream out = Files.newOutputStream(job.resultFile())) {
+                summary = contentGeneratorService.generateContent(
+                        GenerationRequest.of(job.githubUrl(), job.localPath(), job.fetchMode())
+                                .withTokenBudget(job.tokenBudget())
+                                .withListener(job), out, true);
+            }
+            job.complete(Files.size(job.resultFile()), summary);
+            log.info("Generation job {} completed", job.id());
+        } catch (CancellationException e) {
+            log.debug("Generation job {} stopped after cancellation", job.id());
+        } catch (Exception e) {
+            if (job.state() != JobState.CANCELLED) {
+                log.error("Generation job {} failed", job.id(), e);
+                job.fail(e.getMessage());
+            }
+        } finally {
+            if (job.state() != JobState.COMPLETED) {
+                deleteResult(job);
+            }
+            publish(job);
+        }
+    }
+
+    private void tick() {
+        try {
+            Instant expiry = Instant.now().minus(retention);
+            for (GenerationJob job : jobs.values()) {
+                if (job.state().isTerminal()) {
+                    if (job.finishedAt().isBefore(expiry)) {
+                        jobs.remove(job.id());
+                        deleteResult(job);
+                    }
+                } else if (cancelWhenAbandoned && job.isAbandoned()) {
+                    log.info("Cancelling generation job {}, no client is following it any more", job.id());
+                    cancel(job.id());
+                } else {
+                    publish(job);
+                }
+            }
+        } catch (RuntimeException e) {
+            // An exception would stop the scheduled task for good
+            log.warn("Failed to publish job progress", e);
+        }
+    }
+
+    private void publish(GenerationJob job) {
+        JobProgress progress = job.progress();
+        for (SseEmitter emitter : job.subscribers()) {
+            send(job, emitter, progress);
+        }
+    }
+
+    private void send(GenerationJob job, SseEmitter emitter, JobProgress progress) {
+        try {
+            emitter.send(SseEmitter.event().name(PROGRESS_EVENT).data(progress));
+            if (progress.state().isTerminal()) {
+                emitter.complete();
+            }
+        } catch (IOException | IllegalStateException e) {
+            // The client has gone away or the emitter was already completed
+            unsubscribe(job, emitter);
+        }
+    }
+
+    private void unsubscribe(GenerationJob job, SseEmitter emitter) {
+        job.subscribers().remove(emitter);
+    }
+
+    private void deleteResult(GenerationJob job) {
+        try {
+            Files.deleteIfExists(job.resultFile());
+        } catch (IOException e) {
+            log.warn("Failed to delete the result of job {}", job.id(), e);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        scheduler.shutdownNow();
+        executor.shutdownNow();
+        jobs.values().forEach(GenerationJob::cancel);
+    }
+}
@@ -0,0 +1,18 @@
+package dev.danvega.cg.job;
+
+/**
+ * A snapshot of the progress of a generation job, sent to clients as the payload of every progress event.
+ *
+ * @param id              The job ID.
+ * @param state           The current state.
+ * @param filesDiscovered The number of files the source has reported so far.
+ * @param filesFetched    The number of files written to the document so far.
+ * @param bytes           The size of the document written so far, or the gzip compressed size of the stored
+ *                        result once the job has completed.
+ * @param elapsedMillis   The time since the job started running.
+ * @param etaMillis       The estimated time until completion, or null while it cannot be estimated.
+ * @param error           The failure message of a failed job, otherwise null.
+ */
+public record JobProgress(String id, JobState state, int filesDiscovered, int filesFetched, long bytes,
+                          long elapsedMillis, Long etaMillis, String error) {
+}
@@ -0,0 +1,17 @@
+package dev.danvega.cg.job;
+
+/**
+ * The lifecycle of a {@link GenerationJob}. A job moves from {@code QUEUED} to {@code RUNNING} and
+ * ends in exactly one of the terminal states.
+ */
+public enum JobState {
+    QUEUED,
+    RUNNING,
+    COMPLETED,
+    FAILED,
+    CANCELLED;
+
+    public boolean isTerminal() {
+        return this == COMPLETED || this == FAILED || this == CANCELLED;
+    }
+}
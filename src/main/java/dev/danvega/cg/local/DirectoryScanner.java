@@ -0,0 +1,201 @@
+package dev.danvega.cg.local;
+
+import dev.danvega.cg.filter.GitIgnore;
+import dev.danvega.cg.filter.PathFilter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+
+/**
+ * Lists the regular files below a directory, scanning sub-directories in parallel on a fork-join pool.
+ * <p>
+ * Entries of every directory are sorted by name and the results of the sub-directories are joined
+ * in that order, so the returned list is always in the same (depth-first, name-sorted) order no matter
+ * how the work was scheduled. Symbolic links to directories are not followed.
+ * <p>
+ * Directories excluded by the {@link PathFilter} or ignored by a {@code .gitignore} file are pruned as a whole,
+ * so they are never listed.
+ */
+class DirectoryScanner {
+
+    private final ForkJoinPool pool;
+
+    DirectoryScanner(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Lists all regular files below the given directory that are accepted by the filter.
+     *
+     * @param root             The directory to scan.
+     * @param filter           Decides whether a file is included and whether a directory can be pruned.
+     * @param respectGitIgnore Whether {@code .gitignore} files found during the scan are honoured.
+     * @return The accepted files in stable, name-sorted depth-first order.
+     * @throws IOException If a directory cannot be read.
+     */
+    List<Path> scan(Path root, PathFilter filter, boolean respectGitIgnore) throws IOException {
+        return scan(root, "", GitIgnore.EMPTY, filter, respectGitIgnore, directory -> { });
+    }
+
+    /**
+     * Lists all accepted regular files below a sub-directory of the root, reporting every directory that is traversed.
+     *
+     * @param root              The root the relative paths are resolved against.
+     * @param relativeDirectory The relative, {@code /}-separated directory to scan, empty for the root itself.
+     * @param inherited         The {@code .gitignore} rules inherited from the parents of the directory.
+     * @param filter            Decides whether a file is included and whether a directory can be pruned.
+     * @param respectGitIgnore  Whether {@code .gitignore} files found during the scan are honoured.
+     * @param directories       Receives every traversed directory, possibly from several threads at once.
+     * @return The accepted files in stable, name-sorted depth-first order.
+     * @throws IOException If a directory cannot be read.
+     */
+    List<Path> scan(Path root, String relativeDirectory, GitIgnore inherited, PathFilter filter, boolean respectGitIgnore,
+                    Consumer<Path> directories) throws IOException {
+        Path directory = relativeDirectory.isEmpty() ? root : root.resolve(relativeDirectory);
+        try {
+            return pool.invoke(new ScanTask(directory, relativeDirectory, inherited, filter, respectGitIgnore, directories));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Collects the {@code .gitignore} rules that apply to the entries of a directory, reading the
+     * files of the root and of every directory down to and including the given one.
+     *
+     * @param root              The root directory.
+     * @param relativeDirectory The relative, {@code /}-separated directory, empty for the root itself.
+     * @return The applicable rules.
+     * @throws IOException If a {@code .gitignore} file cannot be read.
+     */
+    static GitIgnore gitIgnoreFor(Path root, String relativeDirectory) throws IOException {
+        GitIgnore rules = readGitIgnore(root, "", GitIgnore.EMPTY);
+        if (relativeDirectory.isEmpty()) {
+            return rules;
+        }
+        int slash = -1;
+        do {
+            slash = relativeDirectory.indexOf('/', slash + 1);
+            String directory = slash < 0 ? relativeDirectory : relativeDirectory.substring(0, slash);
+            rules = readGitIgnore(root.resolve(directory), directory, rules);
+        } while (slash >= 0);
+        return rules;
+    }
+
+    /**
+     * Checks whether a directory is skipped as a whole, either because it is excluded by the filter,
+     * because it is ignored by a {@code .gitignore} file or because it is the {@code .git} directory.
+     *
+     * @param relativeDirectory The relative, {@code /}-separated directory.
+     * @param gitIgnore         The {@code .gitignore} rules of the directory's parent.
+     * @param filter            The include and exclude patterns.
+     * @param respectGitIgnore  Whether {@code .gitignore} files are honoured.
+     * @return true if the directory is not traversed.
+     */
+    static boolean isPruned(String relativeDirectory, GitIgnore gitIgnore, PathFilter filter, boolean respectGitIgnore) {
+        if (filter.excludesDirectory(relativeDirectory)) {
+            return true;
+        }
+        if (!respectGitIgnore) {
+            return false;
+        }
+        String name = relativeDirectory.substring(relativeDirectory.lastIndexOf('/') + 1);
+        return name.equals(".git") || gitIgnore.isIgnored(relativeDirectory, true);
+    }
+
+    private static GitIgnore readGitIgnore(Path directory, String relativeDirectory, GitIgnore inherited) throws IOException {
+        Path file = directory.resolve(".gitignore");
+        if (!Files.isRegularFile(file)) {
+            return inherited;
+        }
+        return inherited.withRules(relativeDirectory, Files.readAllLines(file));
+    }
+
+    private static final class ScanTask extends RecursiveTask<List<Path>> {
+
+        private final Path directory;
+        private final String relativePath;
+        private final GitIgnore inherited;
+        private final PathFilter filter;
+        private final boolean respectGitIgnore;
+        private final Consumer<Path> directories;
+
+        ScanTask(Path directory, String relativePath, GitIgnore inherited, PathFilter filter, boolean respectGitIgnore,
+                 Consumer<Path> directories) {
+            this.directory = directory;
+            this.relativePath = relativePath;
+            this.inherited = inherited;
+            this.filter = filter;
+            this.respectGitIgnore = respectGitIgnore;
+            this.directories = directories;
+        }
+
+        @Override
+        protected List<Path> compute() {
+            directories.accept(directory);
+            List<Path> children = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                stream.forEach(children::add);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            children.sort(Comparator.comparing(path -> path.getFileName().toString()));
+            GitIgnore gitIgnore = inherited;
+            if (respectGitIgnore) {
+                try {
+                    gitIgnore = readGitIgnore(directory, relativePath, inherited);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            // Either a matching file or the forked scan of a sub-directory, kept in name order
+            List<Object> parts = new ArrayList<>(children.size());
+            for (Path child : children) {
+                String name = child.getFileName().toString();
+                String childPath = relativePath.isEmpty() ? name : relativePath + "/" + name;
+                if (isDirectory(child)) {
+                    if (isPruned(childPath, gitIgnore, filter, respectGitIgnore)) {
+                        continue;
+                    }
+                    parts.add(new ScanTask(child, childPath, gitIgnore, filter, respectGitIgnore, directories).fork());
+                } else if (Files.isRegularFile(child) && filter.includes(childPath)
+                        && !gitIgnore.isIgnored(childPath, false)) {
+                    parts.add(child);
+                }
+            }
+
+            List<Path> files = new ArrayList<>();
+            for (Object part : parts) {
+                if (part instanceof ForkJoinTask<?> task) {
+                    @SuppressWarnings("unchecked")
+                    List<Path> nested = (List<Path>) task.join();
+                    files.addAll(nested);
+                } else {
+                    files.add((Path) part);
+                }
+            }
+            return files;
+        }
+
+        private static boolean isDirectory(Path path) {
+            try {
+                return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).isDirectory();
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+}
@@ -1,85 +1,342 @@
 package dev.danvega.cg.local;
 
-import dev.danvega.cg.gh.GitHubConfiguration;
+import dev.danvega.cg.filter.ContentLimits;
+import dev.danvega.cg.filter.PathFilter;
+import dev.danvega.cg.filter.Utf8Validator;
+import dev.danvega.cg.metrics.PipelineMetrics;
+import dev.danvega.cg.metrics.PipelineStage;
+import dev.danvega.cg.output.ContentSink;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 @Service
 public class LocalFileService {
 
     private static final Logger log = LoggerFactory.getLogger(LocalFileService.class);
-    private final GitHubConfiguration config;
-    private Path sourceDir;
-    private final List<PathMatcher> includeMatchers;
-    private final List<PathMatcher> excludeMatchers;
-
-    public LocalFileService(GitHubConfiguration config) {
-        this.config = config;
-        this.includeMatchers = config.includePatterns().stream()
-                .map(pattern -> FileSystems.getDefault().getPathMatcher("glob:" + normalizePattern(pattern)))
-                .collect(Collectors.toList());
-        this.excludeMatchers = config.excludePatterns().stream()
-                .map(pattern -> FileSystems.getDefault().getPathMatcher("glob:" + normalizePattern(pattern)))
-                .collect(Collectors.toList());
+    private final PathFilter pathFilter;
+    private final ContentLimits limits;
+    private final PipelineMetrics metrics;
+    private final boolean respectGitIgnore;
+    private final ForkJoinPool scanPool;
+    private final DirectoryScanner scanner;
+    private final int readConcurrency;
+    private final long maxInFlightBytes;
+    private final boolean watchEnabled;
+    private final int maxWatchedDirectories;
+    private final Map<Path, WatchedDirectory> watchedDirectories = new LinkedHashMap<>(16, 0.75f, true);
+
+    public LocalFileService(PathFilter pathFilter,
+                            ContentLimits limits,
+                            PipelineMetrics metrics,
+                            @Value("${app.local.respect-gitignore:true}") boolean respectGitIgnore,
+                            @Value("${app.local.read-concurrency:16}") int readConcurrency,
+                            @Value("${app.local.max-in-flight:32MB}") DataSize maxInFlight,
+                            @Value("${app.local.watch.enabled:false}") boolean watchEnabled,
+                            @Value("${app.local.watch.max-directories:8}") int maxWatchedDirectories) {
+        this.pathFilter = pathFilter;
+        this.limits = limits;
+        this.metrics = metrics;
+        this.respectGitIgnore = respectGitIgnore;
+        this.readConcurrency = Math.max(1, readConcurrency);
+        this.maxInFlightBytes = Math.max(1, maxInFlight.toBytes());
+        this.scanPool = new ForkJoinPool(this.readConcurrency);
+        this.scanner = new DirectoryScanner(scanPool);
+        this.watchEnabled = watchEnabled;
+        this.maxWatchedDirectories = Math.max(1, maxWatchedDirectories);
     }
 
-    public void processLocalDirectory(String directoryPath, String outputFileName) throws IOException {
-        sourceDir = Paths.get(directoryPath).normalize().toAbsolutePath();
-        if (!Files.exists(sourceDir) || !Files.isDirectory(sourceDir)) {
+    /**
+     * Writes every matching file below a directory to the sink.
+     * <p>
+     * Directories are scanned in parallel, and excluded or {@code .gitignore}d directories are pruned without
+     * being listed. Every file is read once, on a virtual thread, and validated as UTF-8 while its bytes are in
+     * memory, with at most {@code app.local.read-concurrency} reads and {@code app.local.max-in-flight} bytes of
+     * read-ahead outstanding. A file larger than the read-ahead budget is validated in place and handed to the sink
+     * as an open {@link FileChannel} instead of being loaded. Files above the size limits of {@link ContentLimits}
+     * are skipped by their size alone, binary files after sniffing their first bytes, and files that are not valid
+     * text after validation. Contents are copied as bytes and never decoded into strings. Files are always written
+     * in sorted path order, so the output is byte-identical to a sequential run.
+     * <p>
+     * When {@code app.local.watch.enabled} is set, the directory is kept in an in-memory index that is updated
+     * from file system change events, and later requests for the same directory are served from that index.
+     *
+     * @param directoryPath The directory to process.
+     * @param sink          The sink each matching file is written to.
+     * @throws IOException If the directory cannot be read or the sink fails.
+     */
+    public void processLocalDirectory(String directoryPath, ContentSink sink) throws IOException {
+        Path root = Paths.get(directoryPath).normalize().toAbsolutePath();
+        if (!Files.exists(root) || !Files.isDirectory(root)) {
             throw new IllegalArgumentException("Invalid directory path: " + directoryPath);
         }
+        if (watchEnabled) {
+            watchedDirectory(root).writeTo(sink);
+            return;
+        }
+
+        List<Path> scanned = metrics.observe(PipelineStage.LIST, root.toString(),
+                () -> scanner.scan(root, pathFilter, respectGitIgnore));
+        List<Path> files = metrics.observe(PipelineStage.FILTER, root.toString(), () -> {
+            List<Path> ordered = scanned;
+            Comparator<String> order = sink.fileOrder();
+            if (order != null) {
+                ordered = new ArrayList<>(scanned);
+                ordered.sort(Comparator.comparing(file -> root.relativize(file).toString(), order));
+            }
+            return admit(root, ordered);
+        });
+        log.debug("Found {} matching files in {}", files.size(), root);
+        sink.filesDiscovered(files.size());
 
-        StringBuilder contentBuilder = new StringBuilder();
-        try (Stream<Path> paths = Files.walk(sourceDir)) {
-            paths.filter(Files::isRegularFile)
-                    .filter(this::shouldIncludeFile)
-                    .forEach(file -> readFileContent(file, contentBuilder));
+        Deque<PendingRead> pending = new ArrayDeque<>(readConcurrency);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            long inFlightBytes = 0;
+            int next = 0;
+            while (next < files.size() || !pending.isEmpty()) {
+                if (next < files.size() && pending.size() < readConcurrency) {
+                    Path file = files.get(next);
+                    long cost = Math.min(sizeOf(file), maxInFlightBytes);
+                    if (pending.isEmpty() || inFlightBytes + cost <= maxInFlightBytes) {
+                        pending.add(new PendingRead(file, cost, executor.submit(() -> load(file))));
+                        inFlightBytes += cost;
+                        next++;
+                        continue;
+                    }
+                }
+                // Either the read window is full or the byte budget is used up, write out the oldest file
+                PendingRead head = pending.poll();
+                LoadedFile loaded = await(head);
+                if (loaded != null) {
+                    write(root.relativize(head.file()).toString(), loaded, sink);
+                }
+                inFlightBytes -= head.cost();
+            }
+        } finally {
+            // Files read ahead of a failed write still hold their channels open
+            for (PendingRead read : pending) {
+                read.discard();
+            }
         }
 
-        Path outputDir = Paths.get("output");
-        Files.createDirectories(outputDir);
-        Path outputFile = outputDir.resolve(outputFileName + ".md");
-        Files.write(outputFile, contentBuilder.toString().getBytes());
+        log.info("Local directory contents of {} processed", root);
+    }
 
-        log.info("Local directory contents written to: {}", outputFile.toAbsolutePath());
+    /**
+     * Computes a fingerprint of the included files below a directory from their paths, sizes and modification
+     * times. Only metadata is read, so this is much cheaper than processing the directory, and the fingerprint
+     * changes whenever a file that would end up in the document is added, removed or modified. A watched
+     * directory is fingerprinted from its index after applying the pending change events, without a scan.
+     *
+     * @param directoryPath The directory to fingerprint.
+     * @return A hex encoded fingerprint.
+     * @throws IOException If the directory cannot be scanned.
+     */
+    public String fingerprint(String directoryPath) throws IOException {
+        Path root = Paths.get(directoryPath).normalize().toAbsolutePath();
+        if (!Files.exists(root) || !Files.isDirectory(root)) {
+            throw new IllegalArgumentException("Invalid directory path: " + directoryPath);
+        }
+        if (watchEnabled) {
+            return watchedDirectory(root).fingerprint();
+        }
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        ByteBuffer metadata = ByteBuffer.allocate(2 * Long.BYTES);
+        for (Path file : scanner.scan(root, pathFilter, respectGitIgnore)) {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            digest.update(root.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+            metadata.clear();
+            metadata.putLong(attributes.size()).putLong(attributes.lastModifiedTime().toMillis());
+            digest.update(metadata.array());
+        }
+        return HexFormat.of().formatHex(digest.digest());
     }
 
-    private boolean shouldIncludeFile(Path filePath) {
-        String relativePath = normalizePath(sourceDir.relativize(filePath));
-        if (excludeMatchers.stream().anyMatch(matcher -> matcher.matches(Paths.get(relativePath)))) {
-            return false;
+    @PreDestroy
+    void close() throws IOException {
+        synchronized (watchedDirectories) {
+            for (WatchedDirectory watched : watchedDirectories.values()) {
+                watched.close();
+            }
+            watchedDirectories.clear();
         }
-        if (includeMatchers.isEmpty()) {
-            return true;
+        scanPool.shutdown();
+    }
+
+    private WatchedDirectory watchedDirectory(Path root) throws IOException {
+        synchronized (watchedDirectories) {
+            WatchedDirectory watched = watchedDirectories.get(root);
+            if (watched == null) {
+                watched = new WatchedDirectory(root, scanner, pathFilter, limits, respectGitIgnore);
+                watchedDirectories.put(root, watched);
+                Iterator<WatchedDirectory> eldest = watchedDirectories.values().iterator();
+                while (watchedDirectories.size() > maxWatchedDirectories) {
+                    WatchedDirectory evicted = eldest.next();
+                    eldest.remove();
+                    evicted.close();
+                }
+            }
+            return watched;
+        }
+    }
+
+    private List<Path> admit(Path root, List<Path> files) {
+        ContentLimits.Allowance allowance = limits.allowance();
+        List<Path> admitted = new ArrayList<>(files.size());
+        for (Path file : files) {
+            if (allowance.admit(root.relativize(file).toString(), sizeOf(file))) {
+                admitted.add(file);
+            } else if (allowance.isExhausted()) {
+                break;
+            }
         }
-        return includeMatchers.stream().anyMatch(matcher -> matcher.matches(Paths.get(relativePath)));
+        return admitted;
     }
 
-    private void readFileContent(Path file, StringBuilder builder) {
+    /**
+     * Reads a file once and validates it, on a worker thread.
+     *
+     * @return The content, or an open channel for a file larger than the read-ahead budget, or null if the file is
+     *         skipped.
+     */
+    private LoadedFile load(Path file) {
         try {
-            String relativePath = sourceDir.relativize(file).toString();
-            String content = Files.readString(file);
-            builder.append("File: ").append(relativePath).append("\n\n")
-                    .append(content).append("\n\n");
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+            boolean keepOpen = false;
+            try {
+                long size = channel.size();
+                if (size <= maxInFlightBytes) {
+                    byte[] content = readFully(channel, size);
+                    return isText(file, content) ? new LoadedFile(content, null) : null;
+                }
+                keepOpen = isText(file, channel, size);
+                return keepOpen ? new LoadedFile(null, channel) : null;
+            } finally {
+                if (!keepOpen) {
+                    channel.close();
+                }
+            }
         } catch (IOException e) {
             log.error("Error reading file: {}", file, e);
+            return null;
+        }
+    }
+
+    private boolean isText(Path file, byte[] content) {
+        if (limits.isBinary(content)) {
+            log.debug("Skipping binary file: {}", file);
+            return false;
+        }
+        Utf8Validator validator = new Utf8Validator();
+        validator.update(ByteBuffer.wrap(content));
+        if (validator.isComplete()) {
+            return true;
         }
+        log.warn("Skipping file that is not valid UTF-8 text: {}", file);
+        return false;
     }
 
-    private String normalizePattern(String pattern) {
-        return pattern.trim()
-                .replace('\\', '/');
+    private boolean isText(Path file, FileChannel channel, long size) throws IOException {
+        if (limits.isBinary(channel, size)) {
+            log.debug("Skipping binary file: {}", file);
+            return false;
+        }
+        if (Utf8Validator.isValid(channel, size)) {
+            return true;
+        }
+        log.warn("Skipping file that is not valid UTF-8 text: {}", file);
+        return false;
+    }
+
+    private static byte[] readFully(FileChannel channel, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) < 0) {
+                // The file was truncated after its size was read
+                return Arrays.copyOf(buffer.array(), buffer.position());
+            }
+        }
+        return buffer.array();
     }
 
-    private String normalizePath(Path path) {
-        return path.toString().replace('\\', '/');
+    private static void write(String path, LoadedFile loaded, ContentSink sink) throws IOException {
+        if (loaded.content() != null) {
+            sink.writeFile(path, loaded.content());
+            return;
+        }
+        try (FileChannel channel = loaded.channel()) {
+            sink.writeFile(path, channel, channel.size());
+        }
     }
 
+    private LoadedFile await(PendingRead read) throws IOException {
+        try {
+            return read.loaded().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading " + read.file(), e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to read " + read.file(), e.getCause());
+        }
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private record PendingRead(Path file, long cost, Future<LoadedFile> loaded) {
+
+        void discard() {
+            try {
+                LoadedFile file = loaded.isDone() ? loaded.get() : null;
+                if (file != null && file.channel() != null) {
+                    file.channel().close();
+                }
+            } catch (InterruptedException | ExecutionException | IOException e) {
+                log.debug("Failed to release {}", this.file, e);
+            }
+        }
+    }
+
+    /**
+     * A validated file: its content, or an open channel when it is too large to hold in memory.
+     */
+    private record LoadedFile(byte[] content, FileChannel channel) { }
+
 }
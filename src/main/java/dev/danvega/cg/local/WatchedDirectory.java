@@ -0,0 +1,325 @@
+package dev.danvega.cg.local;
+
+import dev.danvega.cg.filter.ContentLimits;
+import dev.danvega.cg.filter.GitIgnore;
+import dev.danvega.cg.filter.PathFilter;
+import dev.danvega.cg.filter.Utf8Validator;
+import dev.danvega.cg.output.ContentSink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * An in-memory index of the rendered sections of a local directory that is kept up to date with a
+ * {@link WatchService}.
+ * <p>
+ * The directory is scanned and read once. After that, every request only drains the pending change events,
+ * re-reads the files that were created or modified (and whose size or modification time actually changed),
+ * drops deleted ones and rescans a subtree when a directory appears or a {@code .gitignore} changes.
+ * The document is then written straight from the index in the same order as a full scan.
+ */
+final class WatchedDirectory implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(WatchedDirectory.class);
+
+    /**
+     * Orders relative paths component by component, which is the depth-first, name-sorted order of
+     * {@link DirectoryScanner}.
+     */
+    private static final Comparator<String> DOCUMENT_ORDER = WatchedDirectory::compareComponents;
+
+    private final Path root;
+    private final DirectoryScanner scanner;
+    private final PathFilter filter;
+    private final ContentLimits limits;
+    private final boolean respectGitIgnore;
+    private final WatchService watchService;
+    private final Map<WatchKey, String> directories = new HashMap<>();
+    private final Map<String, GitIgnore> gitIgnores = new HashMap<>();
+    private final TreeMap<String, Section> sections = new TreeMap<>(DOCUMENT_ORDER);
+
+    WatchedDirectory(Path root, DirectoryScanner scanner, PathFilter filter, ContentLimits limits,
+                     boolean respectGitIgnore) throws IOException {
+        this.root = root;
+        this.scanner = scanner;
+        this.filter = filter;
+        this.limits = limits;
+        this.respectGitIgnore = respectGitIgnore;
+        this.watchService = root.getFileSystem().newWatchService();
+        rescan("");
+        log.info("Watching {} with {} indexed files", root, sections.size());
+    }
+
+    /**
+     * Applies all pending changes and writes the indexed sections to the sink.
+     *
+     * @param sink The sink each file is written to.
+     * @throws IOException If a changed file cannot be read or the sink fails.
+     */
+    synchronized void writeTo(ContentSink sink) throws IOException {
+        int changes = applyPendingChanges();
+        log.debug("Serving {} from the watch index after {} change events", root, changes);
+        List<Section> ordered = new ArrayList<>(sections.values());
+        if (sink.fileOrder() != null) {
+            ordered.sort(Comparator.comparing(Section::displayPath, sink.fileOrder()));
+        }
+        // The index holds every file below the per-file limit, the total limit depends on the order of this request
+        ContentLimits.Allowance allowance = limits.allowance();
+        List<Section> admitted = new ArrayList<>(ordered.size());
+        for (Section section : ordered) {
+            if (allowance.admit(section.displayPath(), section.size())) {
+                admitted.add(section);
+            } else if (allowance.isExhausted()) {
+                break;
+            }
+        }
+        sink.filesDiscovered(admitted.size());
+        for (Section section : admitted) {
+            sink.writeFile(section.displayPath(), section.content());
+        }
+    }
+
+    /**
+     * Applies all pending changes and computes a fingerprint of the indexed files from their paths, sizes and
+     * modification times.
+     *
+     * @return A hex encoded fingerprint.
+     * @throws IOException If a changed file cannot be read.
+     */
+    synchronized String fingerprint() throws IOException {
+        applyPendingChanges();
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        ByteBuffer metadata = ByteBuffer.allocate(2 * Long.BYTES);
+        for (Section section : sections.values()) {
+            digest.update(section.displayPath().getBytes(StandardCharsets.UTF_8));
+            metadata.clear();
+            metadata.putLong(section.size()).putLong(section.lastModified());
+            digest.update(metadata.array());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Returns the number of files currently held in the index.
+     *
+     * @return The number of indexed files.
+     */
+    synchronized int size() {
+        return sections.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        watchService.close();
+        sections.clear();
+    }
+
+    private int applyPendingChanges() throws IOException {
+        int changes = 0;
+        WatchKey key;
+        try {
+            while ((key = watchService.poll()) != null) {
+                String directory = directories.get(key);
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    changes++;
+                    if (directory == null) {
+                        continue;
+                    }
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        log.debug("Watch events for {} overflowed, rescanning", root);
+                        rescan("");
+                        return changes;
+                    }
+                    applyChange(directory, event.kind(), event.context().toString());
+                }
+                if (!key.reset()) {
+                    directories.remove(key);
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            throw new IOException("Watch on " + root + " has been closed", e);
+        }
+        return changes;
+    }
+
+    private void applyChange(String directory, WatchEvent.Kind<?> kind, String name) throws IOException {
+        String path = directory.isEmpty() ? name : directory + "/" + name;
+        Path file = root.resolve(path);
+        if (name.equals(".gitignore") && respectGitIgnore) {
+            gitIgnores.clear();
+            rescan(directory);
+        } else if (kind == StandardWatchEventKinds.ENTRY_DELETE) {
+            removeSubtree(path);
+        } else if (Files.isDirectory(file, LinkOption.NOFOLLOW_LINKS)) {
+            if (kind == StandardWatchEventKinds.ENTRY_CREATE) {
+                rescan(path);
+            }
+        } else {
+            updateFile(directory, path, file);
+        }
+    }
+
+    private void updateFile(String directory, String path, Path file) throws IOException {
+        boolean included = filter.includes(path)
+                && !(respectGitIgnore && gitIgnoreFor(directory).isIgnored(path, false));
+        if (!included || !Files.isRegularFile(file)) {
+            sections.remove(path);
+            return;
+        }
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            sections.remove(path);
+            return;
+        }
+        Section current = sections.get(path);
+        if (current != null && current.size() == attributes.size()
+                && current.lastModified() == attributes.lastModifiedTime().toMillis()) {
+            return;
+        }
+        load(path, file);
+    }
+
+    private void rescan(String directory) throws IOException {
+        removeSubtree(directory);
+        GitIgnore inherited = GitIgnore.EMPTY;
+        if (!directory.isEmpty()) {
+            int slash = directory.lastIndexOf('/');
+            GitIgnore parentRules = gitIgnoreFor(slash < 0 ? "" : directory.substring(0, slash));
+            if (DirectoryScanner.isPruned(directory, parentRules, filter, respectGitIgnore)) {
+                return;
+            }
+            inherited = parentRules;
+        }
+
+        ConcurrentLinkedQueue<Path> visited = new ConcurrentLinkedQueue<>();
+        List<Path> files = scanner.scan(root, directory, inherited, filter, respectGitIgnore, visited::add);
+        for (Path visitedDirectory : visited) {
+            WatchKey key = visitedDirectory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            directories.put(key, relativePath(visitedDirectory));
+        }
+        for (Path file : files) {
+            load(relativePath(file), file);
+        }
+    }
+
+    private void load(String path, Path file) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            if (!limits.allowance().admit(path, attributes.size())) {
+                sections.remove(path);
+                return;
+            }
+            byte[] content = Files.readAllBytes(file);
+            if (limits.isBinary(content)) {
+                log.debug("Skipping binary file: {}", file);
+                sections.remove(path);
+                return;
+            }
+            Utf8Validator validator = new Utf8Validator();
+            if (!validator.update(ByteBuffer.wrap(content)) || !validator.isComplete()) {
+                log.warn("Skipping file that is not valid UTF-8 text: {}", file);
+                sections.remove(path);
+                return;
+            }
+            sections.put(path, new Section(root.relativize(file).toString(),
+                    attributes.lastModifiedTime().toMillis(), attributes.size(), content));
+        } catch (IOException e) {
+            log.error("Error reading file: {}", file, e);
+            sections.remove(path);
+        }
+    }
+
+    private void removeSubtree(String path) {
+        if (path.isEmpty()) {
+            sections.clear();
+            directories.keySet().forEach(WatchKey::cancel);
+            directories.clear();
+            return;
+        }
+        sections.remove(path);
+        String prefix = path + "/";
+        sections.keySet().removeIf(candidate -> candidate.startsWith(prefix));
+        List<WatchKey> removed = new ArrayList<>();
+        directories.forEach((key, directory) -> {
+            if (directory.equals(path) || directory.startsWith(prefix)) {
+                removed.add(key);
+            }
+        });
+        for (WatchKey key : removed) {
+            key.cancel();
+            directories.remove(key);
+        }
+    }
+
+    private GitIgnore gitIgnoreFor(String directory) throws IOException {
+        if (!respectGitIgnore) {
+            return GitIgnore.EMPTY;
+        }
+        GitIgnore rules = gitIgnores.get(directory);
+        if (rules == null) {
+            rules = DirectoryScanner.gitIgnoreFor(root, directory);
+            gitIgnores.put(directory, rules);
+        }
+        return rules;
+    }
+
+    private String relativePath(Path path) {
+        return root.relativize(path).toString().replace('\\', '/');
+    }
+
+    private static int compareComponents(String a, String b) {
+        int aStart = 0;
+        int bStart = 0;
+        while (true) {
+            int aEnd = a.indexOf('/', aStart);
+            int bEnd = b.indexOf('/', bStart);
+            aEnd = aEnd < 0 ? a.length() : aEnd;
+            bEnd = bEnd < 0 ? b.length() : bEnd;
+            int result = a.substring(aStart, aEnd).compareTo(b.substring(bStart, bEnd));
+            if (result != 0) {
+                return result;
+            }
+            boolean aLast = aEnd == a.length();
+            boolean bLast = bEnd == b.length();
+            if (aLast || bLast) {
+                return aLast == bLast ? 0 : aLast ? -1 : 1;
+            }
+            aStart = aEnd + 1;
+            bStart = bEnd + 1;
+        }
+    }
+
+    private record Section(String displayPath, long lastModified, long size, byte[] content) { }
+}
@@ -0,0 +1,50 @@
+package dev.danvega.cg.metrics;
+
+import dev.danvega.cg.output.ContentSink;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Comparator;
+
+/**
+ * Times every file section written to a delegate as a {@link PipelineStage#WRITE} stage and counts the files and
+ * bytes that were written.
+ */
+public class MeteredSink implements ContentSink {
+
+    private final ContentSink delegate;
+    private final PipelineMetrics metrics;
+
+    public MeteredSink(ContentSink delegate, PipelineMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void filesDiscovered(int count) {
+        delegate.filesDiscovered(count);
+    }
+
+    @Override
+    public Comparator<String> fileOrder() {
+        return delegate.fileOrder();
+    }
+
+    @Override
+    public void writeFile(String path, byte[] content) throws IOException {
+        metrics.observe(PipelineStage.WRITE, path, content.length, () -> {
+            delegate.writeFile(path, content);
+            return null;
+        });
+        metrics.fileWritten(content.length);
+    }
+
+    @Override
+    public void writeFile(String path, FileChannel content, long size) throws IOException {
+        metrics.observe(PipelineStage.WRITE, path, size, () -> {
+            delegate.writeFile(path, content, size);
+            return null;
+        });
+        metrics.fileWritten(size);
+    }
+}
@@ -0,0 +1,226 @@
+package dev.danvega.cg.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Instruments the stages of the generation pipeline.
+ * <p>
+ * Every {@link PipelineStage} is a Micrometer {@link Timer} on the application's {@link MeterRegistry}, tagged with
+ * the stage and the exception a failed run threw. Files and bytes written, GitHub API calls and deduplicated files
+ * are counters, and values such as the remaining rate limit are gauges, so all of them reach the configured metrics
+ * backend and {@code /actuator/metrics}. Every stage run also emits a {@link StageEvent} for JFR.
+ * {@link #snapshot()} reads the same meters back for {@code /pipeline/stats}.
+ */
+@Component
+public class PipelineMetrics {
+
+    static final String FILES = "cg.files.written";
+    static final String BYTES = "cg.bytes.written";
+    static final String API_CALLS = "cg.github.api.calls";
+    static final String DUPLICATES = "cg.dedup.files";
+    static final String DEDUPLICATED_BYTES = "cg.dedup.bytes";
+
+    private final MeterRegistry registry;
+    private final Counter files;
+    private final Counter bytes;
+    private final Counter apiCalls;
+    private final Counter duplicates;
+    private final Counter deduplicatedBytes;
+    private final Map<String, Gauge> gauges = new ConcurrentHashMap<>();
+
+    public PipelineMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.files = Counter.builder(FILES)
+                .description("File sections written to documents")
+                .register(registry);
+        this.bytes = Counter.builder(BYTES)
+                .description("Content bytes of the file sections written to documents")
+                .baseUnit("bytes")
+                .register(registry);
+        this.apiCalls = Counter.builder(API_CALLS)
+                .description("GitHub API calls that were not answered from the HTTP cache")
+                .register(registry);
+        this.duplicates = Counter.builder(DUPLICATES)
+                .description("Files written as a reference to an identical earlier file")
+                .register(registry);
+        this.deduplicatedBytes = Counter.builder(DEDUPLICATED_BYTES)
+                .description("Content bytes that deduplication kept out of documents")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    /**
+     * Runs one stage of the pipeline and records its duration.
+     *
+     * @param stage  The stage.
+     * @param detail The source, path or template the stage works on, may be null.
+     * @param action The work of the stage.
+     * @param <T>    The result type of the action.
+     * @param <E>    The exception type of the action.
+     * @return The result of the action.
+     * @throws E If the action fails.
+     */
+    public <T, E extends Exception> T observe(PipelineStage stage, String detail, StageAction<T, E> action) throws E {
+        return observe(stage, detail, 0, action);
+    }
+
+    /**
+     * Runs one stage of the pipeline that processes a known number of bytes and records its duration.
+     *
+     * @param stage  The stage.
+     * @param detail The source, path or template the stage works on, may be null.
+     * @param size   The number of bytes the stage processes, for the JFR event.
+     * @param action The work of the stage.
+     * @param <T>    The result type of the action.
+     * @param <E>    The exception type of the action.
+     * @return The result of the action.
+     * @throws E If the action fails.
+     */
+    public <T, E extends Exception> T observe(PipelineStage stage, String detail, long size,
+                                              StageAction<T, E> action) throws E {
+        StageEvent event = new StageEvent();
+        event.begin();
+        Timer.Sample sample = Timer.start(registry);
+        String error = "none";
+        try {
+            return action.run();
+        } catch (Exception e) {
+            error = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            sample.stop(Timer.builder(stage.meterName())
+                    .description("Time spent in the " + stage.name().toLowerCase(Locale.ROOT) + " stage")
+                    .tag("stage", stage.name().toLowerCase(Locale.ROOT))
+                    .tag("error", error)
+                    .register(registry));
+            event.end();
+            if (event.shouldCommit()) {
+                event.stage = stage.name();
+                event.detail = detail;
+                event.bytes = size;
+                event.failed = !error.equals("none");
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Counts a file section that has been written to a document.
+     *
+     * @param size The size of the file content in bytes.
+     */
+    public void fileWritten(long size) {
+        files.increment();
+        bytes.increment(size);
+    }
+
+    /**
+     * Counts the files of a document whose content was replaced by a reference to an identical earlier file.
+     *
+     * @param count      The number of files.
+     * @param savedBytes The number of content bytes that were not written again.
+     */
+    public void filesDeduplicated(int count, long savedBytes) {
+        duplicates.increment(count);
+        deduplicatedBytes.increment(savedBytes);
+    }
+
+    /**
+     * Counts a GitHub API call that was not answered from the HTTP cache.
+     */
+    public void apiCall() {
+        apiCalls.increment();
+    }
+
+    /**
+     * Registers a gauge, such as the remaining rate limit. A gauge that is registered again under the same name
+     * keeps reading the value it was first registered with.
+     *
+     * @param name  The name of the gauge.
+     * @param value Reads the current value, may return null while it is unknown.
+     */
+    public void gauge(String name, Supplier<? extends Number> value) {
+        gauges.computeIfAbsent(name, key -> Gauge.builder(key, value, PipelineMetrics::read)
+                .strongReference(true)
+                .register(registry));
+    }
+
+    /**
+     * Returns the stage timings, counters and gauges recorded on the meter registry.
+     *
+     * @return The current values.
+     */
+    public Snapshot snapshot() {
+        Map<String, StageStats> stageStats = new LinkedHashMap<>();
+        for (PipelineStage stage : PipelineStage.values()) {
+            stageStats.put(stage.meterName(), stats(registry.find(stage.meterName()).timers()));
+        }
+        Map<String, Number> gaugeValues = new LinkedHashMap<>();
+        gauges.forEach((name, gauge) -> gaugeValues.put(name, Double.isNaN(gauge.value()) ? null : gauge.value()));
+        return new Snapshot(stageStats, (long) files.count(), (long) bytes.count(), (long) apiCalls.count(),
+                (long) duplicates.count(), (long) deduplicatedBytes.count(), gaugeValues);
+    }
+
+    private static StageStats stats(Collection<Timer> timers) {
+        long count = 0;
+        double totalMillis = 0;
+        double maxMillis = 0;
+        for (Timer timer : timers) {
+            count += timer.count();
+            totalMillis += timer.totalTime(TimeUnit.MILLISECONDS);
+            maxMillis = Math.max(maxMillis, timer.max(TimeUnit.MILLISECONDS));
+        }
+        return new StageStats(count, totalMillis, maxMillis);
+    }
+
+    private static double read(Supplier<? extends Number> value) {
+        Number current = value.get();
+        return current != null ? current.doubleValue() : Double.NaN;
+    }
+
+    /**
+     * The work of a stage.
+     *
+     * @param <T> The result type.
+     * @param <E> The exception type.
+     */
+    @FunctionalInterface
+    public interface StageAction<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    /**
+     * The counts, sizes and timings of the pipeline.
+     *
+     * @param stages            The timings of every stage, keyed by meter name.
+     * @param files             The number of file sections written.
+     * @param bytes             The content bytes of the written files.
+     * @param apiCalls          The number of GitHub API calls that went over the network.
+     * @param duplicates        The number of files written as a reference to an identical earlier file.
+     * @param deduplicatedBytes The content bytes that deduplication kept out of documents.
+     * @param gauges            The current values of the registered gauges.
+     */
+    public record Snapshot(Map<String, StageStats> stages, long files, long bytes, long apiCalls, long duplicates,
+                           long deduplicatedBytes, Map<String, Number> gauges) { }
+
+    /**
+     * The timings of one stage.
+     *
+     * @param count       The number of completed runs.
+     * @param totalMillis The total time spent in the stage.
+     * @param maxMillis   The longest run within the registry's recent window.
+     */
+    public record StageStats(long count, double totalMillis, double maxMillis) { }
+}
@@ -0,0 +1,52 @@
+package dev.danvega.cg.metrics;
+
+/**
+ * The stages of the generation pipeline that are timed separately.
+ */
+public enum PipelineStage {
+
+    /**
+     * A whole generation request, from resolving the source to the last byte written.
+     */
+    GENERATE("cg.generate"),
+
+    /**
+     * Listing a GitHub tree or directory, or scanning a local directory.
+     */
+    LIST("cg.list"),
+
+    /**
+     * Matching a listing against the include and exclude patterns and the size limits.
+     */
+    FILTER("cg.filter"),
+
+    /**
+     * Fetching the content of a file or the repository archive from GitHub.
+     */
+    FETCH("cg.fetch"),
+
+    /**
+     * Writing the section of a single file to the document.
+     */
+    WRITE("cg.write"),
+
+    /**
+     * Rendering a document with a JTE template.
+     */
+    RENDER("cg.render");
+
+    private final String meterName;
+
+    PipelineStage(String meterName) {
+        this.meterName = meterName;
+    }
+
+    /**
+     * Returns the name of the Micrometer timer of the stage.
+     *
+     * @return The meter name.
+     */
+    public String meterName() {
+        return meterName;
+    }
+}
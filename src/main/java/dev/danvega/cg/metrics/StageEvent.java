@@ -0,0 +1,37 @@
+package dev.danvega.cg.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event covering one run of a pipeline stage. Record with
+ * {@code jcmd <pid> JFR.start settings=profile} and filter on {@value #NAME} to see where a slow request spent its time.
+ */
+@Name(StageEvent.NAME)
+@Label("Generation Stage")
+@Category("Repository Content Generator")
+@Description("A stage of generating a document, such as listing, fetching or writing a file")
+@StackTrace(false)
+class StageEvent extends Event {
+
+    static final String NAME = "dev.danvega.cg.Stage";
+
+    @Label("Stage")
+    String stage;
+
+    @Label("Detail")
+    @Description("The source, path or template the stage worked on")
+    String detail;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    @Label("Failed")
+    boolean failed;
+}
@@ -0,0 +1,393 @@
+package dev.danvega.cg.mirror;
+
+import dev.danvega.cg.filter.ContentLimits;
+import dev.danvega.cg.filter.PathFilter;
+import dev.danvega.cg.gh.GitHubConfiguration;
+import dev.danvega.cg.metrics.PipelineMetrics;
+import dev.danvega.cg.metrics.PipelineStage;
+import dev.danvega.cg.output.ContentSink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Reads repositories from local bare mirrors instead of the GitHub API.
+ * <p>
+ * Every repository is cloned once with {@code git clone --mirror} below {@code app.mirror.directory} and brought up
+ * to date with an incremental {@code git fetch} at most once per {@code app.mirror.fetch-interval}. Files are listed
+ * with {@code git ls-tree} and the matching blobs are streamed out of the object database and packfiles by a single
+ * {@code git cat-file --batch} process, so there is never a working tree on disk and memory use does not depend on
+ * the size of the repository or its history.
+ */
+@Service
+public class MirrorService {
+
+    private static final Logger log = LoggerFactory.getLogger(MirrorService.class);
+    private static final Pattern COMMIT_SHA = Pattern.compile("[0-9a-f]{40}|[0-9a-f]{64}");
+    private static final String GITLINK_MODE = "160000";
+    private static final String SYMLINK_MODE = "120000";
+
+    private final PathFilter pathFilter;
+    private final ContentLimits limits;
+    private final PipelineMetrics metrics;
+    private final String token;
+    private final Path directory;
+    private final String git;
+    private final Duration fetchInterval;
+    private final List<String> allowedHosts;
+    private final boolean allowFileUrls;
+    private final Map<Path, Object> locks = new ConcurrentHashMap<>();
+    private final Map<Path, Instant> lastFetched = new ConcurrentHashMap<>();
+
+    public MirrorService(PathFilter pathFilter,
+                         ContentLimits limits,
+                         PipelineMetrics metrics,
+                         GitHubConfiguration config,
+                         @Value("${app.mirror.directory:.cache/mirrors}") Path directory,
+                         @Value("${app.mirror.git:git}") String git,
+                         @Value("${app.mirror.fetch-interval:1m}") Duration fetchInterval,
+                         @Value("${app.mirror.allowed-hosts:github.com}") List<String> allowedHosts,
+                         @Value("${app.mirror.allow-file-urls:false}") boolean allowFileUrls) {
+        this.pathFilter = pathFilter;
+        this.limits = limits;
+        this.metrics = metrics;
+        this.token = config != null ? config.token() : null;
+        this.directory = directory;
+        this.git = git;
+        this.fetchInterval = fetchInterval;
+        this.allowedHosts = allowedHosts.stream().map(host -> host.toLowerCase(Locale.ROOT)).toList();
+        this.allowFileUrls = allowFileUrls;
+    }
+
+    /**
+     * Brings the mirror of a repository up to date and resolves a ref to the commit it points to.
+     *
+     * @param url The clone URL of the repository.
+     * @param ref The branch, tag or commit to resolve, for example {@code HEAD}.
+     * @return The commit SHA.
+     * @throws IOException If the mirror cannot be updated or the ref does not exist.
+     * @throws IllegalArgumentException If the URL is not allowed, see {@link #checkAllowed(String)}.
+     */
+    public String resolveRevision(String url, String ref) throws IOException {
+        Path mirror = update(url, null);
+        return new String(run(mirror, "rev-parse", "--verify", ref + "^{commit}"), StandardCharsets.UTF_8).trim();
+    }
+
+    /**
+     * Writes every matching file of a ref to the sink, reading the blobs from the local mirror. A ref that is a
+     * commit SHA already in the mirror is read without fetching.
+     *
+     * @param url  The clone URL of the repository.
+     * @param ref  The branch, tag or commit to read.
+     * @param sink The sink each matching file is written to.
+     * @throws IOException If the mirror cannot be updated or read.
+     * @throws IllegalArgumentException If the URL is not allowed, see {@link #checkAllowed(String)}.
+     */
+    public void processRepository(String url, String ref, ContentSink sink) throws IOException {
+        Path mirror = update(url, COMMIT_SHA.matcher(ref).matches() ? ref : null);
+        String commit = new String(run(mirror, "rev-parse", "--verify", ref + "^{commit}"), StandardCharsets.UTF_8).trim();
+
+        List<TreeEntry> listed = metrics.observe(PipelineStage.LIST, url, () -> listTree(mirror, commit));
+        List<TreeEntry> files = metrics.observe(PipelineStage.FILTER, url, () -> {
+            List<TreeEntry> matching = new ArrayList<>(listed);
+            if (sink.fileOrder() != null) {
+                matching.sort(Comparator.comparing(TreeEntry::path, sink.fileOrder()));
+            }
+            ContentLimits.Allowance allowance = limits.allowance();
+            return matching.stream()
+                    .takeWhile(entry -> !allowance.isExhausted())
+                    .filter(entry -> allowance.admit(entry.path(), entry.size()))
+                    .toList();
+        });
+        log.debug("Reading {} of {} files of {} at {}", files.size(), listed.size(), url, commit);
+        sink.filesDiscovered(files.size());
+        if (!files.isEmpty()) {
+            readBlobs(mirror, files, sink);
+        }
+        log.info("Mirror contents of {} at {} processed", url, commit);
+    }
+
+    /**
+     * Clones the mirror if it does not exist yet and fetches into it unless it was fetched recently or already
+     * contains the requested commit.
+     */
+    private Path update(String url, String commit) throws IOException {
+        checkAllowed(url);
+        Path mirror = directory.resolve(mirrorName(url));
+        synchronized (locks.computeIfAbsent(mirror, key -> new Object())) {
+            if (!Files.isDirectory(mirror)) {
+                log.info("Cloning mirror of {} into {}", url, mirror);
+                Files.createDirectories(directory);
+                Path temp = directory.resolve(mirror.getFileName() + ".tmp");
+                deleteRecursively(temp);
+                metrics.observe(PipelineStage.FETCH, url,
+                        () -> run(directory, "clone", "--mirror", "--quiet", "--", url, temp.toAbsolutePath().toString()));
+                Files.move(temp, mirror);
+                lastFetched.put(mirror, Instant.now());
+            } else if (isStale(mirror) && (commit == null || !hasCommit(mirror, commit))) {
+                log.debug("Fetching into mirror of {}", url);
+                metrics.observe(PipelineStage.FETCH, url, () -> run(mirror, "fetch", "--prune", "--quiet"));
+                lastFetched.put(mirror, Instant.now());
+            }
+        }
+        return mirror;
+    }
+
+    /**
+     * Checks that a URL may be cloned: an {@code https} URL without credentials whose host is one of
+     * {@code app.mirror.allowed-hosts}, or a {@code file} URL when {@code app.mirror.allow-file-urls} is set. The URL
+     * comes from the client, so anything else, such as another scheme, an internal host or an option, is rejected.
+     *
+     * @param url The clone URL of the repository.
+     * @throws IllegalArgumentException If the URL is not allowed.
+     */
+    void checkAllowed(String url) {
+        URI uri;
+        try {
+            uri = new URI(url);
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("Not a repository URL: " + url);
+        }
+        String scheme = uri.getScheme() != null ? uri.getScheme().toLowerCase(Locale.ROOT) : "";
+        boolean allowed = switch (scheme) {
+            case "https" -> uri.getHost() != null && uri.getRawUserInfo() == null
+                    && allowedHosts.contains(uri.getHost().toLowerCase(Locale.ROOT));
+            case "file" -> allowFileUrls;
+            default -> false;
+        };
+        if (!allowed) {
+            throw new IllegalArgumentException("Mirroring is not allowed for " + url);
+        }
+    }
+
+    private boolean hasCommit(Path mirror, String commit) {
+        try {
+            run(mirror, "cat-file", "-e", commit + "^{commit}");
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private boolean isStale(Path mirror) {
+        Instant fetched = lastFetched.get(mirror);
+        return fetched == null || !fetched.plus(fetchInterval).isAfter(Instant.now());
+    }
+
+    /**
+     * Lists every regular file of a commit that matches the include and exclude patterns. Submodules and
+     * symbolic links are skipped.
+     */
+    private List<TreeEntry> listTree(Path mirror, String commit) throws IOException {
+        Process process = start(mirror, "ls-tree", "-r", "-l", "-z", "--full-tree", commit);
+        ErrorOutput errors = drain(process.getErrorStream());
+        List<TreeEntry> entries = new ArrayList<>();
+        try (InputStream in = new BufferedInputStream(process.getInputStream(), 64 * 1024)) {
+            ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b != 0) {
+                    record.write(b);
+                    continue;
+                }
+                // <mode> SP <type> SP <object> SP+ <size> TAB <path>
+                String line = record.toString(StandardCharsets.UTF_8);
+                record.reset();
+                int tab = line.indexOf('\t');
+                String[] meta = line.substring(0, tab).split(" +");
+                String path = line.substring(tab + 1);
+                if (!"blob".equals(meta[1]) || GITLINK_MODE.equals(meta[0]) || SYMLINK_MODE.equals(meta[0])) {
+                    continue;
+                }
+                if (pathFilter.includes(path)) {
+                    entries.add(new TreeEntry(path, meta[2], Long.parseLong(meta[3])));
+                }
+            }
+        }
+        await(process, errors, "ls-tree");
+        return entries;
+    }
+
+    /**
+     * Streams the blobs through one {@code git cat-file --batch} process. The object IDs are written from a
+     * separate thread, so neither side blocks on a full pipe.
+     */
+    private void readBlobs(Path mirror, List<TreeEntry> files, ContentSink sink) throws IOException {
+        Process process = start(mirror, "cat-file", "--batch");
+        ErrorOutput errors = drain(process.getErrorStream());
+        Thread requests = Thread.ofVirtual().name("mirror-cat-file").start(() -> {
+            try (OutputStream out = process.getOutputStream()) {
+                for (TreeEntry file : files) {
+                    out.write((file.object() + "\n").getBytes(StandardCharsets.US_ASCII));
+                }
+            } catch (IOException e) {
+                // The reader sees the process end early and reports the failure
+                log.debug("Failed to request blobs from git cat-file", e);
+            }
+        });
+        try (InputStream in = new BufferedInputStream(process.getInputStream(), 64 * 1024)) {
+            for (TreeEntry file : files) {
+                // <object> SP <type> SP <size> LF <content> LF, or <object> SP missing LF
+                String[] header = readLine(in).split(" ");
+                if (header.length != 3) {
+                    throw new IOException("Object " + file.object() + " of " + file.path() + " is missing from the mirror");
+                }
+                int size = Math.toIntExact(Long.parseLong(header[2]));
+                byte[] content = in.readNBytes(size);
+                if (content.length != size || in.read() != '\n') {
+                    throw new EOFException("Unexpected end of git cat-file output at " + file.path());
+                }
+                if (limits.isBinary(content)) {
+                    log.debug("Skipping binary file: {}", file.path());
+                    continue;
+                }
+                sink.writeFile(file.path(), content);
+            }
+        } catch (IOException | RuntimeException e) {
+            process.destroy();
+            throw e;
+        } finally {
+            try {
+                requests.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        await(process, errors, "cat-file");
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(100);
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b == -1) {
+                throw new EOFException("Unexpected end of git cat-file output");
+            }
+            line.write(b);
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    private byte[] run(Path workingDirectory, String... args) throws IOException {
+        Process process = start(workingDirectory, args);
+        process.getOutputStream().close();
+        ErrorOutput errors = drain(process.getErrorStream());
+        byte[] output;
+        try (InputStream in = process.getInputStream()) {
+            output = in.readAllBytes();
+        }
+        await(process, errors, args[0]);
+        return output;
+    }
+
+    private Process start(Path workingDirectory, String... args) throws IOException {
+        List<String> command = new ArrayList<>(args.length + 1);
+        command.add(git);
+        command.addAll(List.of(args));
+        ProcessBuilder builder = new ProcessBuilder(command).directory(workingDirectory.toFile());
+        Map<String, String> environment = builder.environment();
+        environment.put("GIT_TERMINAL_PROMPT", "0");
+        if (token != null && !token.isBlank()) {
+            // Passed through the environment, so the token is neither visible in the process list nor stored in the mirror
+            String credentials = Base64.getEncoder().encodeToString(("x-access-token:" + token).getBytes(StandardCharsets.UTF_8));
+            environment.put("GIT_CONFIG_COUNT", "1");
+            environment.put("GIT_CONFIG_KEY_0", "http.https://github.com/.extraHeader");
+            environment.put("GIT_CONFIG_VALUE_0", "Authorization: Basic " + credentials);
+        }
+        return builder.start();
+    }
+
+    /**
+     * Collects the error output of a process on a separate thread, so a chatty process never blocks on it.
+     */
+    private static ErrorOutput drain(InputStream errorStream) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        Thread reader = Thread.ofVirtual().start(() -> {
+            try (errorStream) {
+                errorStream.transferTo(buffer);
+            } catch (IOException e) {
+                log.trace("Failed to read git error output", e);
+            }
+        });
+        return new ErrorOutput(buffer, reader);
+    }
+
+    private static void await(Process process, ErrorOutput errors, String command) throws IOException {
+        try {
+            int exitCode = process.waitFor();
+            if (exitCode != 0) {
+                errors.reader().join();
+                throw new IOException("git " + command + " failed with exit code " + exitCode + ": "
+                        + errors.buffer().toString(StandardCharsets.UTF_8).trim());
+            }
+        } catch (InterruptedException e) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for git " + command, e);
+        }
+    }
+
+    /**
+     * Names the mirror after the last segment of the URL plus a hash of the whole URL, so different hosts and
+     * owners never share a mirror.
+     */
+    static String mirrorName(String url) {
+        String trimmed = url.replaceAll("/+$", "").replaceAll("\\.git$", "");
+        String name = trimmed.substring(trimmed.lastIndexOf('/') + 1).replaceAll("[^A-Za-z0-9._-]", "_");
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(trimmed.getBytes(StandardCharsets.UTF_8));
+            return name + "-" + HexFormat.of().formatHex(hash, 0, 6) + ".git";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void deleteRecursively(Path path) {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(path)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(file -> {
+                try {
+                    Files.delete(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private record TreeEntry(String path, String object, long size) { }
+
+    private record ErrorOutput(ByteArrayOutputStream buffer, Thread reader) { }
+}
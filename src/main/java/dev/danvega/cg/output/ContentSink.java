@@ -0,0 +1,74 @@
+package dev.danvega.cg.output;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+
+/**
+ * Receives the files of a generated document one section at a time, in document order.
+ * Implementations write each section out as soon as it arrives, so the full document never
+ * has to be held in memory.
+ */
+public interface ContentSink {
+
+    /**
+     * Writes the section for a single file.
+     *
+     * @param path    The path of the file relative to the repository or directory root.
+     * @param content The raw content of the file.
+     * @throws IOException If the section cannot be written.
+     */
+    void writeFile(String path, byte[] content) throws IOException;
+
+    /**
+     * Reports that more files have been found that will be written to this sink. Sources call this as soon as
+     * they know about files, ahead of writing them, so progress can be reported against a known total.
+     *
+     * @param count The number of newly discovered files.
+     */
+    default void filesDiscovered(int count) {
+    }
+
+    /**
+     * Returns the order in which this sink would like to receive files. Sources that list their files before
+     * fetching them write them in this order; sources that stream files as they go ignore it.
+     *
+     * @return A comparator of relative paths, or null to keep the natural order of the source.
+     */
+    default Comparator<String> fileOrder() {
+        return null;
+    }
+
+    /**
+     * Writes the section for a single file whose content is already decoded.
+     *
+     * @param path    The path of the file relative to the repository or directory root.
+     * @param content The content of the file.
+     * @throws IOException If the section cannot be written.
+     */
+    default void writeFile(String path, String content) throws IOException {
+        writeFile(path, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Writes the section for a single file whose content is read from a channel. Sinks that can copy
+     * bytes directly between channels override this to avoid loading the content onto the heap.
+     *
+     * @param path    The path of the file relative to the repository or directory root.
+     * @param content The channel to read the content from, starting at position 0.
+     * @param size    The number of bytes to copy.
+     * @throws IOException If the content cannot be read or the section cannot be written.
+     */
+    default void writeFile(String path, FileChannel content, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(size));
+        while (buffer.hasRemaining()) {
+            if (content.read(buffer, buffer.position()) < 0) {
+                throw new EOFException("File " + path + " changed while it was being read");
+            }
+        }
+        writeFile(path, buffer.array());
+    }
+}
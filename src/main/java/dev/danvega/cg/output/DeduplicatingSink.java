@@ -0,0 +1,203 @@
+package dev.danvega.cg.output;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Writes the content of byte-identical files only once per document. Later copies, such as vendored licenses or
+ * copied configuration files, keep their {@code File:} section, so every path is still listed, but the section
+ * only holds a reference to the first file with that content.
+ * <p>
+ * Contents are looked up by their size and CRC-32C checksum, which the JVM computes with dedicated CPU
+ * instructions, and a match is confirmed by comparing the bytes, so a checksum collision never drops a file.
+ * The contents that later files are compared against are kept in memory up to a configured total.
+ * File channels are only read onto the heap when their content is remembered or has a candidate match; all
+ * other files are passed on as channels.
+ */
+public class DeduplicatingSink implements ContentSink {
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final ContentSink delegate;
+    private final long minSize;
+    private final long maxMemory;
+    private final Map<Key, List<Original>> originals = new HashMap<>();
+    private final CRC32C crc = new CRC32C();
+    private ByteBuffer readBuffer;
+    private long memory;
+    private int duplicates;
+    private long savedBytes;
+    private long savedTokens;
+
+    /**
+     * Creates a sink that passes sections on to a delegate, replacing the content of duplicates.
+     *
+     * @param delegate The sink the sections are written to.
+     * @param settings The minimum size of deduplicated files and the memory for remembered contents.
+     */
+    public DeduplicatingSink(ContentSink delegate, DeduplicationConfiguration settings) {
+        this.delegate = delegate;
+        this.minSize = Math.max(1, settings.minSize().toBytes());
+        this.maxMemory = settings.maxMemory().toBytes();
+    }
+
+    /**
+     * Returns the reference that replaces the content of a duplicate.
+     *
+     * @param original The path of the first file with the same content.
+     * @return The content of the duplicate's section.
+     */
+    public static String reference(String original) {
+        return "[Identical to " + original + "]";
+    }
+
+    @Override
+    public Comparator<String> fileOrder() {
+        return delegate.fileOrder();
+    }
+
+    @Override
+    public void filesDiscovered(int count) {
+        delegate.filesDiscovered(count);
+    }
+
+    @Override
+    public void writeFile(String path, byte[] content) throws IOException {
+        if (content.length < minSize) {
+            delegate.writeFile(path, content);
+            return;
+        }
+        crc.reset();
+        crc.update(content);
+        Key key = new Key(content.length, (int) crc.getValue());
+        Original original = find(key, content);
+        if (original != null) {
+            writeReference(path, original, content);
+            return;
+        }
+        remember(key, path, content);
+        delegate.writeFile(path, content);
+    }
+
+    @Override
+    public void writeFile(String path, FileChannel content, long size) throws IOException {
+        if (size < minSize) {
+            delegate.writeFile(path, content, size);
+            return;
+        }
+        if (memory + size <= maxMemory) {
+            // The content is remembered anyway, so read it once and handle it like any other array
+            writeFile(path, read(content, size));
+            return;
+        }
+        Key key = new Key(size, checksum(content, size));
+        if (originals.containsKey(key)) {
+            byte[] bytes = read(content, size);
+            Original original = find(key, bytes);
+            if (original != null) {
+                writeReference(path, original, bytes);
+            } else {
+                delegate.writeFile(path, bytes);
+            }
+            return;
+        }
+        delegate.writeFile(path, content, size);
+    }
+
+    private Original find(Key key, byte[] content) {
+        List<Original> candidates = originals.get(key);
+        if (candidates != null) {
+            for (Original candidate : candidates) {
+                if (Arrays.equals(candidate.content(), content)) {
+                    return candidate;
+                }
+            }
+        }
+        return null;
+    }
+
+    private void remember(Key key, String path, byte[] content) {
+        if (memory + content.length > maxMemory) {
+            return;
+        }
+        memory += content.length;
+        originals.computeIfAbsent(key, k -> new ArrayList<>(1)).add(new Original(path, content));
+    }
+
+    private void writeReference(String path, Original original, byte[] content) throws IOException {
+        byte[] reference = reference(original.path()).getBytes(StandardCharsets.UTF_8);
+        duplicates++;
+        savedBytes += content.length - reference.length;
+        savedTokens += Math.max(0, TokenEstimator.estimate(content) - TokenEstimator.estimate(reference));
+        delegate.writeFile(path, reference);
+    }
+
+    private int checksum(FileChannel content, long size) throws IOException {
+        crc.reset();
+        ByteBuffer buffer = readBuffer();
+        long position = 0;
+        while (position < size) {
+            buffer.clear();
+            if (size - position < buffer.capacity()) {
+                buffer.limit((int) (size - position));
+            }
+            int read = content.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("File changed while it was being read");
+            }
+            position += read;
+            buffer.flip();
+            crc.update(buffer);
+        }
+        return (int) crc.getValue();
+    }
+
+    private ByteBuffer readBuffer() {
+        if (readBuffer == null) {
+            readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        }
+        return readBuffer;
+    }
+
+    private static byte[] read(FileChannel content, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(size));
+        while (buffer.hasRemaining()) {
+            if (content.read(buffer, buffer.position()) < 0) {
+                throw new EOFException("File changed while it was being read");
+            }
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Returns the savings of the files written so far.
+     *
+     * @return The number of duplicates and the bytes and estimated tokens they did not repeat.
+     */
+    public Savings savings() {
+        return new Savings(duplicates, savedBytes, savedTokens);
+    }
+
+    /**
+     * What deduplication saved in one document.
+     *
+     * @param duplicates The number of files written as a reference.
+     * @param bytes      The content bytes that were not repeated, net of the references.
+     * @param tokens     The estimated tokens that were not repeated, net of the references.
+     */
+    public record Savings(int duplicates, long bytes, long tokens) { }
+
+    private record Key(long size, int checksum) { }
+
+    private record Original(String path, byte[] content) { }
+}
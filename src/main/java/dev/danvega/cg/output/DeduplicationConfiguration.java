@@ -0,0 +1,36 @@
+package dev.danvega.cg.output;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Settings for writing byte-identical files only once per document.
+ *
+ * @param enabled   Whether later copies of a file are written as a reference to the first one. Off by default,
+ *                  because it changes the content of the document.
+ * @param minSize   Files smaller than this are always written in full, because the reference would not be much
+ *                  shorter.
+ * @param maxMemory The total size of the file contents kept to confirm that a later file is really identical.
+ *                  Once it is used up, new contents are no longer remembered.
+ */
+@ConfigurationProperties("app.dedup")
+public record DeduplicationConfiguration(@DefaultValue("false") boolean enabled,
+                                         @DefaultValue("128B") DataSize minSize,
+                                         @DefaultValue("64MB") DataSize maxMemory) {
+
+    /**
+     * Settings that write every file in full.
+     */
+    public static final DeduplicationConfiguration DISABLED =
+            new DeduplicationConfiguration(false, DataSize.ofBytes(0), DataSize.ofBytes(0));
+
+    public DeduplicationConfiguration {
+        if (minSize == null) {
+            minSize = DataSize.ofBytes(128);
+        }
+        if (maxMemory == null) {
+            maxMemory = DataSize.ofMegabytes(64);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package dev.danvega.cg.output;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes file sections in the {@code File: <path>} document layout to one or more targets,
+ * for example the output file and the HTTP response at the same time. Every section is flushed
+ * as soon as it has been written.
+ * <p>
+ * Sections backed by a {@link FileChannel} are copied with {@link FileChannel#transferTo}, which lets
+ * the operating system move the bytes straight from file to file without them ever passing through
+ * the Java heap when the target is a file channel.
+ */
+public class DocumentWriter implements ContentSink, Closeable {
+
+    private static final byte[] HEADER = "File: ".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SEPARATOR = "\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private final List<Target> targets = new ArrayList<>();
+    private ProgressListener progressListener = ProgressListener.NONE;
+    private long bytesWritten;
+    private int filesWritten;
+
+    public DocumentWriter(OutputStream... targets) {
+        for (OutputStream target : targets) {
+            this.targets.add(new Target(Channels.newChannel(target), target));
+        }
+    }
+
+    /**
+     * Creates a writer for a channel, typically the output file, and any number of mirrored streams.
+     *
+     * @param channel The primary channel to write to.
+     * @param mirrors Additional streams that receive the same content.
+     */
+    public DocumentWriter(WritableByteChannel channel, OutputStream... mirrors) {
+        this.targets.add(new Target(channel, null));
+        for (OutputStream mirror : mirrors) {
+            this.targets.add(new Target(Channels.newChannel(mirror), mirror));
+        }
+    }
+
+    /**
+     * Sets the listener that is told about discovered and written files.
+     *
+     * @param progressListener The listener, or null to stop reporting progress.
+     */
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener != null ? progressListener : ProgressListener.NONE;
+    }
+
+    @Override
+    public void filesDiscovered(int count) {
+        progressListener.filesDiscovered(count);
+    }
+
+    @Override
+    public void writeFile(String path, byte[] content) throws IOException {
+        byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
+        for (Target target : targets) {
+            target.write(ByteBuffer.wrap(HEADER), ByteBuffer.wrap(pathBytes), ByteBuffer.wrap(SEPARATOR),
+                    ByteBuffer.wrap(content), ByteBuffer.wrap(SEPARATOR));
+            target.flush();
+        }
+        long sectionBytes = sectionSize(pathBytes, content.length);
+        bytesWritten += sectionBytes;
+        filesWritten++;
+        progressListener.fileWritten(path, sectionBytes);
+    }
+
+    @Override
+    public void writeFile(String path, FileChannel content, long size) throws IOException {
+        byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
+        for (Target target : targets) {
+            target.write(ByteBuffer.wrap(HEADER), ByteBuffer.wrap(pathBytes), ByteBuffer.wrap(SEPARATOR));
+            long position = 0;
+            while (position < size) {
+                long transferred = content.transferTo(position, size - position, target.channel());
+                if (transferred <= 0) {
+                    throw new IOException("File " + path + " changed while it was being copied");
+                }
+                position += transferred;
+            }
+            target.write(ByteBuffer.wrap(SEPARATOR));
+            target.flush();
+        }
+        long sectionBytes = sectionSize(pathBytes, size);
+        bytesWritten += sectionBytes;
+        filesWritten++;
+        progressListener.fileWritten(path, sectionBytes);
+    }
+
+    /**
+     * Returns the size of the section of a file, including its header and separators.
+     *
+     * @param path The path of the file.
+     * @param size The size of the file content.
+     * @return The number of bytes the section takes up in the document.
+     */
+    public static long sectionSize(String path, long size) {
+        return sectionSize(path.getBytes(StandardCharsets.UTF_8), size);
+    }
+
+    private static long sectionSize(byte[] pathBytes, long size) {
+        return HEADER.length + pathBytes.length + size + 2L * SEPARATOR.length;
+    }
+
+    /**
+     * Returns the number of bytes written to each target so far.
+     *
+     * @return The number of bytes written.
+     */
+    public long bytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Returns the number of file sections written so far.
+     *
+     * @return The number of files written.
+     */
+    public int filesWritten() {
+        return filesWritten;
+    }
+
+    /**
+     * Flushes all targets. The targets themselves are owned by the caller and are not closed.
+     *
+     * @throws IOException If a target cannot be flushed.
+     */
+    @Override
+    public void close() throws IOException {
+        for (Target target : targets) {
+            target.flush();
+        }
+    }
+
+    private record Target(WritableByteChannel channel, OutputStream stream) {
+
+        void write(ByteBuffer... buffers) throws IOException {
+            if (channel instanceof GatheringByteChannel gathering) {
+                long remaining = 0;
+                for (ByteBuffer buffer : buffers) {
+                    remaining += buffer.remaining();
+                }
+                while (remaining > 0) {
+                    remaining -= gathering.write(buffers);
+                }
+                return;
+            }
+            for (ByteBuffer buffer : buffers) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        }
+
+        void flush() throws IOException {
+            if (stream != null) {
+                stream.flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package dev.danvega.cg.output;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Helpers for the gzip encoding that generated documents are stored and, when the client accepts it, sent in.
+ */
+public final class Gzip {
+
+    /**
+     * The {@code Content-Encoding} and {@code Accept-Encoding} token of gzip.
+     */
+    public static final String ENCODING = "gzip";
+
+    /**
+     * The file extension of gzip compressed documents.
+     */
+    public static final String EXTENSION = ".gz";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private Gzip() {
+    }
+
+    /**
+     * Tells whether an {@code Accept-Encoding} header allows a gzip encoded response.
+     *
+     * @param acceptEncoding The header value, or null if the request did not send one.
+     * @return true if gzip or {@code *} is listed without a quality of zero.
+     */
+    public static boolean isAccepted(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim().toLowerCase(Locale.ROOT);
+            if (!name.equals(ENCODING) && !name.equals("x-gzip") && !name.equals("*")) {
+                continue;
+            }
+            boolean refused = false;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        refused = Double.parseDouble(parameter.substring(2)) <= 0;
+                    } catch (NumberFormatException e) {
+                        refused = true;
+                    }
+                }
+            }
+            if (!refused) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Creates a compressing stream.
+     *
+     * @param out       The stream that receives the compressed bytes.
+     * @param syncFlush Whether {@code flush()} also flushes the compressor, so a reader can decompress everything
+     *                  written so far. Needed when the compressed bytes are streamed to a client.
+     * @return The compressing stream. Call {@link GZIPOutputStream#finish()} to complete it without closing {@code out}.
+     * @throws IOException If the gzip header cannot be written.
+     */
+    public static GZIPOutputStream compress(OutputStream out, boolean syncFlush) throws IOException {
+        return new GZIPOutputStream(out, BUFFER_SIZE, syncFlush);
+    }
+
+    /**
+     * Creates a decompressing stream.
+     *
+     * @param in The stream of compressed bytes.
+     * @return The decompressing stream.
+     * @throws IOException If the gzip header cannot be read.
+     */
+    public static InputStream decompress(InputStream in) throws IOException {
+        return new GZIPInputStream(in, BUFFER_SIZE);
+    }
+}
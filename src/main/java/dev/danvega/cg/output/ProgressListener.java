@@ -0,0 +1,27 @@
+package dev.danvega.cg.output;
+
+/**
+ * Observes the progress of a {@link DocumentWriter}. Both callbacks run on the thread that writes the
+ * document, so a listener can stop generation early by throwing an unchecked exception.
+ */
+public interface ProgressListener {
+
+    ProgressListener NONE = new ProgressListener() { };
+
+    /**
+     * Called when the source reports newly discovered files.
+     *
+     * @param count The number of newly discovered files.
+     */
+    default void filesDiscovered(int count) {
+    }
+
+    /**
+     * Called after the section for a file has been written to every target.
+     *
+     * @param path  The path of the file.
+     * @param bytes The number of bytes the section added to the document.
+     */
+    default void fileWritten(String path, long bytes) {
+    }
+}
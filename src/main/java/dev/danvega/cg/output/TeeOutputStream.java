@@ -0,0 +1,43 @@
+package dev.danvega.cg.output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes the same bytes to several streams, so an expensive transformation such as compression runs once
+ * for all of them. The streams are owned by the caller: closing the tee only flushes them.
+ */
+public class TeeOutputStream extends OutputStream {
+
+    private final OutputStream[] targets;
+
+    public TeeOutputStream(OutputStream... targets) {
+        this.targets = targets.clone();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        for (OutputStream target : targets) {
+            target.write(b);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        for (OutputStream target : targets) {
+            target.write(b, off, len);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        for (OutputStream target : targets) {
+            target.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+}
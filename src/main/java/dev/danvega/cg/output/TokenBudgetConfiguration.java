@@ -0,0 +1,17 @@
+package dev.danvega.cg.output;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.util.List;
+
+/**
+ * Settings for token-budgeted documents.
+ *
+ * @param priorities Glob patterns in priority order. Files matching earlier patterns are written first, files that
+ *                   match none of them, such as tests, come last.
+ */
+@ConfigurationProperties(value = "app.budget")
+public record TokenBudgetConfiguration(@DefaultValue({"README*", "**/README*", "pom.xml", "build.gradle*",
+        "settings.gradle*", "package.json", "src/main/**", "**/src/main/**", "*.md", "**/*.md"}) List<String> priorities) {
+}
@@ -0,0 +1,12 @@
+package dev.danvega.cg.output;
+
+/**
+ * Thrown by {@link TokenBudgetSink} when the next file does not fit into the budget, to stop the source from
+ * fetching any more files. Callers treat it as the regular end of a budgeted document.
+ */
+public class TokenBudgetExceededException extends RuntimeException {
+
+    public TokenBudgetExceededException(String message) {
+        super(message);
+    }
+}
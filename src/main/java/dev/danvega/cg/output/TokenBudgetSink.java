@@ -0,0 +1,86 @@
+package dev.danvega.cg.output;
+
+import dev.danvega.cg.filter.FilePriority;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Limits a document to a token budget. The tokens of every section are estimated while it streams through, and
+ * the first file that does not fit ends the document by throwing {@link TokenBudgetExceededException}.
+ * <p>
+ * Sources that list their files before fetching them write them in the priority order returned by
+ * {@link #fileOrder()}, so the files that matter most are the ones that make it into the budget.
+ */
+public class TokenBudgetSink implements ContentSink {
+
+    private final ContentSink delegate;
+    private final long budget;
+    private final FilePriority priority;
+    private final TokenEstimator estimator = new TokenEstimator();
+    private final List<TokenSummary.FileTokens> files = new ArrayList<>();
+    private long tokens;
+    private long bytes;
+    private String stoppedAt;
+
+    /**
+     * Creates a sink that passes sections on to a delegate until the budget is used up.
+     *
+     * @param delegate The sink the admitted sections are written to.
+     * @param budget   The maximum number of tokens of the document.
+     * @param priority The order in which files should be written.
+     */
+    public TokenBudgetSink(ContentSink delegate, long budget, FilePriority priority) {
+        this.delegate = delegate;
+        this.budget = budget;
+        this.priority = priority;
+    }
+
+    @Override
+    public Comparator<String> fileOrder() {
+        return priority.order();
+    }
+
+    @Override
+    public void filesDiscovered(int count) {
+        delegate.filesDiscovered(count);
+    }
+
+    @Override
+    public void writeFile(String path, byte[] content) throws IOException {
+        estimator.reset();
+        estimator.update(content, 0, content.length);
+        admit(path, estimator.count(), content.length);
+        delegate.writeFile(path, content);
+    }
+
+    @Override
+    public void writeFile(String path, FileChannel content, long size) throws IOException {
+        admit(path, estimator.estimate(content, size), size);
+        delegate.writeFile(path, content, size);
+    }
+
+    private void admit(String path, long contentTokens, long size) {
+        long sectionTokens = TokenEstimator.estimateSection(path, contentTokens);
+        if (tokens + sectionTokens > budget) {
+            stoppedAt = path;
+            throw new TokenBudgetExceededException("Token budget of " + budget + " reached at " + path
+                    + " (" + sectionTokens + " tokens, " + (budget - tokens) + " left)");
+        }
+        tokens += sectionTokens;
+        bytes += size;
+        files.add(new TokenSummary.FileTokens(path, sectionTokens, size));
+    }
+
+    /**
+     * Returns the summary of the sections written so far.
+     *
+     * @return The per-file token and byte summary.
+     */
+    public TokenSummary summary() {
+        return new TokenSummary(budget, tokens, bytes, stoppedAt != null, stoppedAt, List.copyOf(files));
+    }
+}
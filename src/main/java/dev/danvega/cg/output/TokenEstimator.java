@@ -0,0 +1,179 @@
+package dev.danvega.cg.output;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Estimates the number of LLM tokens in UTF-8 text without decoding it or allocating per call.
+ * <p>
+ * The estimate follows how BPE tokenizers split source code and prose: a run of letters, digits and underscores
+ * costs one token per six bytes (short words are a single token, long identifiers are split into chunks), every
+ * punctuation character and every non-ASCII character costs one token, and whitespace is free because tokenizers
+ * merge it into the neighbouring tokens. For typical source code this stays within about 15% of the real count.
+ * <p>
+ * Instances are not thread-safe. They can be fed a file in pieces with {@link #update(ByteBuffer)}; the state
+ * of an unfinished word is carried over between calls.
+ */
+public final class TokenEstimator {
+
+    private static final byte WHITESPACE = 0;
+    private static final byte WORD = 1;
+    private static final byte SYMBOL = 2;
+    private static final byte CONTINUATION = 3;
+    private static final int BYTES_PER_WORD_TOKEN = 6;
+    // "File: ", the ":" after it and the two blank-line separators of every section
+    private static final int SECTION_OVERHEAD_TOKENS = 4;
+    private static final byte[] CLASSES = new byte[256];
+
+    static {
+        for (int b = 0; b < 256; b++) {
+            byte type;
+            if (b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f') {
+                type = WHITESPACE;
+            } else if ((b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') || b == '_') {
+                type = WORD;
+            } else if (b >= 0x80 && b < 0xC0) {
+                type = CONTINUATION;
+            } else {
+                // ASCII punctuation, control characters and the lead byte of every multi-byte character
+                type = SYMBOL;
+            }
+            CLASSES[b] = type;
+        }
+    }
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private ByteBuffer readBuffer;
+    private long tokens;
+    private int wordLength;
+
+    /**
+     * Estimates the tokens of a complete piece of text.
+     *
+     * @param content The UTF-8 encoded text.
+     * @return The estimated number of tokens.
+     */
+    public static long estimate(byte[] content) {
+        TokenEstimator estimator = new TokenEstimator();
+        estimator.update(content, 0, content.length);
+        return estimator.count();
+    }
+
+    /**
+     * Estimates the tokens of a complete document section, adding the header and separators to the tokens of
+     * the file content.
+     *
+     * @param path          The path of the file.
+     * @param contentTokens The estimated tokens of the file content.
+     * @return The estimated number of tokens of the section.
+     */
+    public static long estimateSection(String path, long contentTokens) {
+        return contentTokens + estimate(path.getBytes(StandardCharsets.UTF_8)) + SECTION_OVERHEAD_TOKENS;
+    }
+
+    /**
+     * Adds the tokens of the next piece of text.
+     *
+     * @param content The array holding the text.
+     * @param offset  The index of the first byte.
+     * @param length  The number of bytes.
+     */
+    public void update(byte[] content, int offset, int length) {
+        long count = tokens;
+        int word = wordLength;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            switch (CLASSES[content[i] & 0xFF]) {
+                case WORD -> word++;
+                case SYMBOL -> {
+                    count += (word + BYTES_PER_WORD_TOKEN - 1) / BYTES_PER_WORD_TOKEN + 1;
+                    word = 0;
+                }
+                case WHITESPACE -> {
+                    count += (word + BYTES_PER_WORD_TOKEN - 1) / BYTES_PER_WORD_TOKEN;
+                    word = 0;
+                }
+                default -> {
+                    // Continuation bytes belong to the character already counted
+                }
+            }
+        }
+        tokens = count;
+        wordLength = word;
+    }
+
+    /**
+     * Adds the tokens of the remaining bytes of a buffer and consumes them.
+     *
+     * @param buffer The buffer holding the text.
+     */
+    public void update(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            buffer.position(buffer.limit());
+            return;
+        }
+        // Direct buffers are copied through the heap buffer in chunks, so the counting loop stays in one place
+        ByteBuffer chunk = readBuffer();
+        while (buffer.hasRemaining()) {
+            int length = Math.min(buffer.remaining(), chunk.capacity());
+            buffer.get(chunk.array(), 0, length);
+            update(chunk.array(), 0, length);
+        }
+    }
+
+    /**
+     * Estimates the tokens of a file read from a channel, reusing this estimator's read buffer. The estimator is
+     * reset first, and the channel position is left unchanged.
+     *
+     * @param channel The channel to read from, starting at position 0.
+     * @param size    The number of bytes to read.
+     * @return The estimated number of tokens.
+     * @throws IOException If the channel cannot be read.
+     */
+    public long estimate(FileChannel channel, long size) throws IOException {
+        reset();
+        ByteBuffer buffer = readBuffer();
+        long position = 0;
+        while (position < size) {
+            buffer.clear();
+            if (size - position < buffer.capacity()) {
+                buffer.limit((int) (size - position));
+            }
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            position += read;
+            buffer.flip();
+            update(buffer);
+        }
+        return count();
+    }
+
+    /**
+     * Returns the tokens counted so far, including an unfinished trailing word.
+     *
+     * @return The estimated number of tokens.
+     */
+    public long count() {
+        return tokens + (wordLength + BYTES_PER_WORD_TOKEN - 1) / BYTES_PER_WORD_TOKEN;
+    }
+
+    private ByteBuffer readBuffer() {
+        if (readBuffer == null) {
+            readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        }
+        return readBuffer;
+    }
+
+    /**
+     * Starts a new count.
+     */
+    public void reset() {
+        tokens = 0;
+        wordLength = 0;
+    }
+}
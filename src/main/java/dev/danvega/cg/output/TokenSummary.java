@@ -0,0 +1,26 @@
+package dev.danvega.cg.output;
+
+import java.util.List;
+
+/**
+ * The outcome of a token-budgeted generation: what every included file cost, and where generation stopped.
+ *
+ * @param budget     The token budget of the document.
+ * @param tokens     The estimated tokens of all included sections.
+ * @param bytes      The size of the included file contents.
+ * @param truncated  true if generation stopped because the next file did not fit.
+ * @param stoppedAt  The first file that did not fit, or null if everything fit.
+ * @param files      The included files in document order.
+ */
+public record TokenSummary(long budget, long tokens, long bytes, boolean truncated, String stoppedAt,
+                           List<FileTokens> files) {
+
+    /**
+     * The estimated cost of one section.
+     *
+     * @param path   The path of the file.
+     * @param tokens The estimated tokens of the section, including its header.
+     * @param bytes  The size of the file content.
+     */
+    public record FileTokens(String path, long tokens, long bytes) { }
+}
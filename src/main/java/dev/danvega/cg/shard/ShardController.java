@@ -0,0 +1,51 @@
+package dev.danvega.cg.shard;
+
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Pages through large documents: {@code /shards/{name}} returns the manifest, {@code /shards/{name}/{index}} one
+ * shard and {@code /shards/{name}/file?path=...} the section of a single file. Shards are served as files, so
+ * clients can also fetch parts of a shard with a {@code Range} header.
+ */
+@RestController
+@RequestMapping("/shards")
+public class ShardController {
+
+    private static final MediaType TEXT = new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8);
+
+    private final ShardStore shardStore;
+
+    public ShardController(ShardStore shardStore) {
+        this.shardStore = shardStore;
+    }
+
+    @GetMapping("/{name}")
+    public ResponseEntity<ShardManifest> manifest(@PathVariable String name) {
+        return ResponseEntity.of(shardStore.manifest(name));
+    }
+
+    @GetMapping("/{name}/{index}")
+    public ResponseEntity<Resource> shard(@PathVariable String name, @PathVariable int index) {
+        return shardStore.shard(name, index)
+                .map(file -> ResponseEntity.ok().contentType(TEXT).<Resource>body(new FileSystemResource(file)))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @GetMapping("/{name}/file")
+    public ResponseEntity<byte[]> file(@PathVariable String name, @RequestParam String path) throws IOException {
+        return shardStore.section(name, path)
+                .map(section -> ResponseEntity.ok().contentType(TEXT).body(section))
+                .orElse(ResponseEntity.notFound().build());
+    }
+}
@@ -0,0 +1,53 @@
+package dev.danvega.cg.shard;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Describes how a document was split into shards, and where every file section ended up.
+ *
+ * @param name      The name of the document.
+ * @param key       Identifies the source revision and filters the shards were generated for, or null when the
+ *                  document was not cacheable, for example because it was budgeted.
+ * @param maxBytes  The byte limit of a shard, 0 for none.
+ * @param maxTokens The token limit of a shard, 0 for none.
+ * @param bytes     The total size of all shards.
+ * @param tokens    The estimated tokens of all shards.
+ * @param shards    The shards in document order.
+ * @param files     The file sections in document order.
+ */
+public record ShardManifest(String name, String key, long maxBytes, long maxTokens, long bytes, long tokens,
+                            List<Shard> shards, List<Section> files) {
+
+    /**
+     * Finds the section of a file.
+     *
+     * @param path The path of the file.
+     * @return The section, or empty if the file is not part of the document.
+     */
+    public Optional<Section> section(String path) {
+        return files.stream().filter(section -> section.path().equals(path)).findFirst();
+    }
+
+    /**
+     * One shard. A shard only exceeds the limits when it holds a single file section that is larger on its own.
+     *
+     * @param index  The index of the shard, starting at 0.
+     * @param file   The name of the shard file.
+     * @param files  The number of file sections in the shard.
+     * @param bytes  The size of the shard.
+     * @param tokens The estimated tokens of the shard.
+     */
+    public record Shard(int index, String file, int files, long bytes, long tokens) { }
+
+    /**
+     * The location of one file section, from its {@code File:} header to the blank line after its content.
+     *
+     * @param path   The path of the file.
+     * @param shard  The index of the shard that holds the section.
+     * @param offset The byte offset of the section in the shard.
+     * @param length The length of the section in bytes.
+     * @param tokens The estimated tokens of the section.
+     */
+    public record Section(String path, int shard, long offset, long length, long tokens) { }
+}
@@ -0,0 +1,227 @@
+package dev.danvega.cg.shard;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.danvega.cg.output.ContentSink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the shards of generated documents in {@code <output directory>/<name>.shards/}: one {@code shard-NNNNN.md}
+ * per shard, each a valid document of its own, and a {@code manifest.json} that lists every file section with its
+ * shard, offset and length. Shards are sized by {@code app.shards.max-size} and {@code app.shards.max-tokens}, so
+ * clients can hand a large document to a model one context window at a time, or look up a single file.
+ */
+@Component
+public class ShardStore {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardStore.class);
+    private static final String SUFFIX = ".shards";
+    private static final String MANIFEST = "manifest.json";
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9_][A-Za-z0-9._-]*");
+
+    private final ObjectMapper objectMapper;
+    private final Path directory;
+    private final boolean enabled;
+    private final long maxBytes;
+    private final long maxTokens;
+    private final int writeConcurrency;
+    private final Map<String, Object> locks = new ConcurrentHashMap<>();
+
+    public ShardStore(ObjectMapper objectMapper,
+                      @Value("${app.output.directory}") Path directory,
+                      @Value("${app.shards.enabled:true}") boolean enabled,
+                      @Value("${app.shards.max-size:512KB}") DataSize maxSize,
+                      @Value("${app.shards.max-tokens:100000}") long maxTokens,
+                      @Value("${app.shards.write-concurrency:4}") int writeConcurrency) {
+        this.objectMapper = objectMapper;
+        this.directory = directory;
+        this.enabled = enabled;
+        this.maxBytes = maxSize.toBytes();
+        this.maxTokens = maxTokens;
+        this.writeConcurrency = writeConcurrency;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts writing the shards of a document. The shards only replace the previous ones of the same name once the
+     * writer is committed.
+     *
+     * @param name     The name of the document.
+     * @param cacheKey The result cache key of the document, or null if it is not cached.
+     * @param delegate The sink every section is passed on to.
+     * @return A sink that writes the sections to the delegate and into shards.
+     * @throws IOException If the shard directory cannot be created.
+     */
+    public ShardWriter open(String name, String cacheKey, ContentSink delegate) throws IOException {
+        Files.createDirectories(directory);
+        Path temp = Files.createDirectory(directory.resolve(name + SUFFIX + "." + UUID.randomUUID() + ".tmp"));
+        return new ShardWriter(delegate, this, name, digest(cacheKey), temp, maxBytes, maxTokens, writeConcurrency);
+    }
+
+    /**
+     * Checks whether the stored shards of a document were generated for a cache key, so a cached copy of the
+     * document can be served without generating its shards again. Always true when sharding is disabled.
+     *
+     * @param name     The name of the document.
+     * @param cacheKey The result cache key of the document.
+     * @return true if the shards do not need to be generated.
+     */
+    public boolean isCurrent(String name, String cacheKey) {
+        if (!enabled) {
+            return true;
+        }
+        String key = digest(cacheKey);
+        return manifest(name).map(manifest -> key.equals(manifest.key())).orElse(false);
+    }
+
+    /**
+     * Reads the manifest of a document.
+     *
+     * @param name The name of the document.
+     * @return The manifest, or empty if the document has no shards.
+     */
+    public Optional<ShardManifest> manifest(String name) {
+        Optional<Path> shards = shardDirectory(name);
+        if (shards.isEmpty()) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(objectMapper.readValue(shards.get().resolve(MANIFEST).toFile(), ShardManifest.class));
+        } catch (IOException e) {
+            if (!(e instanceof NoSuchFileException) && Files.exists(shards.get().resolve(MANIFEST))) {
+                log.warn("Failed to read the shard manifest of {}: {}", name, e.getMessage());
+            }
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Returns the file of one shard.
+     *
+     * @param name  The name of the document.
+     * @param index The index of the shard.
+     * @return The shard file, or empty if it does not exist.
+     */
+    public Optional<Path> shard(String name, int index) {
+        return manifest(name)
+                .filter(manifest -> index >= 0 && index < manifest.shards().size())
+                .flatMap(manifest -> shardDirectory(name).map(dir -> dir.resolve(manifest.shards().get(index).file())))
+                .filter(Files::isRegularFile);
+    }
+
+    /**
+     * Reads the section of a single file by its offset in its shard, without reading the rest of the shard.
+     *
+     * @param name The name of the document.
+     * @param path The path of the file.
+     * @return The section, starting with its {@code File:} header, or empty if the file is not in the document.
+     * @throws IOException If the shard cannot be read.
+     */
+    public Optional<byte[]> section(String name, String path) throws IOException {
+        Optional<ShardManifest> manifest = manifest(name);
+        Optional<ShardManifest.Section> section = manifest.flatMap(m -> m.section(path));
+        Optional<Path> shard = section.flatMap(s -> shard(name, s.shard()));
+        if (shard.isEmpty()) {
+            return Optional.empty();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(section.get().length()));
+        try (FileChannel channel = FileChannel.open(shard.get(), StandardOpenOption.READ)) {
+            long position = section.get().offset();
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position + buffer.position());
+                if (read < 0) {
+                    throw new IOException("Shard " + shard.get() + " is shorter than its manifest says");
+                }
+            }
+        }
+        return Optional.of(buffer.array());
+    }
+
+    /**
+     * Writes the manifest into a directory of freshly written shards and moves it into place, replacing the
+     * previous shards of the document.
+     */
+    void publish(ShardManifest manifest, Path temp) throws IOException {
+        objectMapper.writeValue(temp.resolve(MANIFEST).toFile(), manifest);
+        Path target = directory.resolve(manifest.name() + SUFFIX);
+        synchronized (locks.computeIfAbsent(manifest.name(), name -> new Object())) {
+            Path previous = null;
+            if (Files.exists(target)) {
+                previous = directory.resolve(manifest.name() + SUFFIX + "." + UUID.randomUUID() + ".old");
+                Files.move(target, previous, StandardCopyOption.ATOMIC_MOVE);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            if (previous != null) {
+                discard(previous);
+            }
+        }
+        log.info("Wrote {} shards of {} ({} bytes, {} tokens)", manifest.shards().size(), manifest.name(),
+                manifest.bytes(), manifest.tokens());
+    }
+
+    /**
+     * Deletes a shard directory that was abandoned or replaced.
+     */
+    void discard(Path shards) {
+        if (!Files.exists(shards)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(shards)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(file -> {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (IOException | UncheckedIOException e) {
+            log.warn("Failed to delete {}: {}", shards, e.getMessage());
+        }
+    }
+
+    private Optional<Path> shardDirectory(String name) {
+        if (name == null || !NAME.matcher(name).matches()) {
+            return Optional.empty();
+        }
+        return Optional.of(directory.resolve(name + SUFFIX));
+    }
+
+    private static String digest(String cacheKey) {
+        if (cacheKey == null) {
+            return null;
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(cacheKey.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package dev.danvega.cg.shard;
+
+import dev.danvega.cg.output.ContentSink;
+import dev.danvega.cg.output.DocumentWriter;
+import dev.danvega.cg.output.TokenEstimator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Splits a document into shards at file boundaries while it streams through to a delegate sink.
+ * <p>
+ * A new shard starts whenever the next file section would take the current one over the byte or token limit.
+ * The shard being filled is held in memory; once it is full it is written to disk on a virtual thread while the
+ * next one fills, with at most {@code writeConcurrency} shards written at the same time, so memory use is bounded
+ * by the shard size no matter how large the document is. Shards are written into a private directory that
+ * {@link #commit()} moves into place together with the manifest.
+ */
+public class ShardWriter implements ContentSink {
+
+    private final ContentSink delegate;
+    private final ShardStore store;
+    private final String name;
+    private final String key;
+    private final Path directory;
+    private final long maxBytes;
+    private final long maxTokens;
+    private final Semaphore writes;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final List<Future<?>> pending = new ArrayList<>();
+    private final TokenEstimator estimator = new TokenEstimator();
+    private final List<ShardManifest.Shard> shards = new ArrayList<>();
+    private final List<ShardManifest.Section> files = new ArrayList<>();
+    private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private DocumentWriter writer = new DocumentWriter(buffer);
+    private int shardFiles;
+    private long shardTokens;
+    private long totalBytes;
+    private long totalTokens;
+
+    ShardWriter(ContentSink delegate, ShardStore store, String name, String key, Path directory, long maxBytes,
+                long maxTokens, int writeConcurrency) {
+        this.delegate = delegate;
+        this.store = store;
+        this.name = name;
+        this.key = key;
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.maxTokens = maxTokens;
+        this.writes = new Semaphore(Math.max(1, writeConcurrency));
+    }
+
+    @Override
+    public Comparator<String> fileOrder() {
+        return delegate.fileOrder();
+    }
+
+    @Override
+    public void filesDiscovered(int count) {
+        delegate.filesDiscovered(count);
+    }
+
+    @Override
+    public void writeFile(String path, byte[] content) throws IOException {
+        delegate.writeFile(path, content);
+        estimator.reset();
+        estimator.update(content, 0, content.length);
+        long tokens = TokenEstimator.estimateSection(path, estimator.count());
+        startShardIfFull(path, content.length, tokens);
+        long offset = buffer.size();
+        writer.writeFile(path, content);
+        added(path, offset, tokens);
+    }
+
+    @Override
+    public void writeFile(String path, FileChannel content, long size) throws IOException {
+        delegate.writeFile(path, content, size);
+        long tokens = TokenEstimator.estimateSection(path, estimator.estimate(content, size));
+        startShardIfFull(path, size, tokens);
+        long offset = buffer.size();
+        writer.writeFile(path, content, size);
+        added(path, offset, tokens);
+    }
+
+    private void startShardIfFull(String path, long size, long tokens) throws IOException {
+        if (shardFiles == 0) {
+            return;
+        }
+        long sectionBytes = DocumentWriter.sectionSize(path, size);
+        if ((maxBytes > 0 && buffer.size() + sectionBytes > maxBytes) || (maxTokens > 0 && shardTokens + tokens > maxTokens)) {
+            seal();
+        }
+    }
+
+    private void added(String path, long offset, long tokens) {
+        files.add(new ShardManifest.Section(path, shards.size(), offset, buffer.size() - offset, tokens));
+        shardFiles++;
+        shardTokens += tokens;
+    }
+
+    /**
+     * Hands the current shard to a writer thread and starts the next one. Blocks while the maximum number of
+     * shards is already being written.
+     */
+    private void seal() throws IOException {
+        int index = shards.size();
+        String file = String.format("shard-%05d.md", index);
+        ByteArrayOutputStream content = buffer;
+        shards.add(new ShardManifest.Shard(index, file, shardFiles, content.size(), shardTokens));
+        totalBytes += content.size();
+        totalTokens += shardTokens;
+        try {
+            writes.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing shards of " + name, e);
+        }
+        pending.add(executor.submit(() -> {
+            try (OutputStream out = Files.newOutputStream(directory.resolve(file))) {
+                content.writeTo(out);
+            } finally {
+                writes.release();
+            }
+            return null;
+        }));
+        buffer = new ByteArrayOutputStream();
+        writer = new DocumentWriter(buffer);
+        shardFiles = 0;
+        shardTokens = 0;
+    }
+
+    /**
+     * Writes the last shard and the manifest, waits for all shards to be on disk and replaces the previous shards
+     * of the document with these.
+     *
+     * @return The manifest of the shards.
+     * @throws IOException If a shard or the manifest cannot be written.
+     */
+    public ShardManifest commit() throws IOException {
+        if (shardFiles > 0 || shards.isEmpty()) {
+            seal();
+        }
+        try {
+            for (Future<?> write : pending) {
+                write.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing shards of " + name, e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to write shards of " + name, e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+        ShardManifest manifest = new ShardManifest(name, key, maxBytes, maxTokens, totalBytes, totalTokens,
+                List.copyOf(shards), List.copyOf(files));
+        store.publish(manifest, directory);
+        return manifest;
+    }
+
+    /**
+     * Stops writing shards and deletes the ones written so far, keeping the previous shards of the document.
+     */
+    public void abort() {
+        executor.shutdownNow();
+        executor.close();
+        store.discard(directory);
+    }
+}
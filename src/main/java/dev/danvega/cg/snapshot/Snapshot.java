@@ -0,0 +1,219 @@
+package dev.danvega.cg.snapshot;
+
+import dev.danvega.cg.output.ContentSink;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+/**
+ * The file contents of a generated document, stored once per source revision and filter settings so that views
+ * of it can be served without crawling the source again.
+ * <p>
+ * The contents of all files are concatenated in a content file that is mapped into a single {@link MemorySegment}
+ * when the snapshot is opened, so a snapshot is not limited to 2 GB and the mapping is released by the garbage
+ * collector once the last view has been served from it.
+ * A compact index file holds the path, offset and length of every file in document order, the file IDs sorted by
+ * path, which answers a path prefix with a binary search, and the file IDs of every extension, which answers
+ * extension patterns such as {@code *.java} without looking at the other paths. Every candidate is then
+ * checked against the full view, so the indexes only ever narrow the search down.
+ */
+public final class Snapshot {
+
+    private static final int MAGIC = 0x43475331;
+
+    private final String[] paths;
+    private final long[] offsets;
+    private final int[] lengths;
+    private final int[] byPath;
+    private final Map<String, int[]> extensions;
+    private final MemorySegment content;
+
+    private Snapshot(String[] paths, long[] offsets, int[] lengths, int[] byPath, Map<String, int[]> extensions,
+                     MemorySegment content) {
+        this.paths = paths;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.byPath = byPath;
+        this.extensions = extensions;
+        this.content = content;
+    }
+
+    /**
+     * Returns the number of files in the snapshot.
+     *
+     * @return The number of files.
+     */
+    public int size() {
+        return paths.length;
+    }
+
+    /**
+     * Selects the files of a view.
+     *
+     * @param view The view.
+     * @return The IDs of the matching files in document order.
+     */
+    int[] select(ViewFilter view) {
+        Predicate<String> matcher = view.matcher();
+        return candidates(view).filter(id -> matcher.test(paths[id])).sorted().toArray();
+    }
+
+    private IntStream candidates(ViewFilter view) {
+        if (!view.prefix().isEmpty()) {
+            String prefix = view.prefix();
+            int low = 0;
+            int high = byPath.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (paths[byPath[mid]].compareTo(prefix) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            int end = low;
+            while (end < byPath.length && paths[byPath[end]].startsWith(prefix)) {
+                end++;
+            }
+            return Arrays.stream(byPath, low, end);
+        }
+        List<String> viewExtensions = view.extensions();
+        if (viewExtensions != null) {
+            return viewExtensions.stream().distinct()
+                    .flatMapToInt(extension -> Arrays.stream(extensions.getOrDefault(extension, new int[0])));
+        }
+        return IntStream.range(0, paths.length);
+    }
+
+    /**
+     * Writes the files of a view to a sink, sliced straight out of the mapped content file. The files keep their
+     * document order unless the sink asks for a different one.
+     *
+     * @param view The view.
+     * @param sink The sink to write the files to.
+     * @throws IOException If the sink fails.
+     */
+    public void write(ViewFilter view, ContentSink sink) throws IOException {
+        int[] ids = select(view);
+        Comparator<String> order = sink.fileOrder();
+        if (order != null) {
+            ids = Arrays.stream(ids).boxed().sorted(Comparator.comparing(id -> paths[id], order))
+                    .mapToInt(Integer::intValue).toArray();
+        }
+        sink.filesDiscovered(ids.length);
+        for (int id : ids) {
+            byte[] bytes = new byte[lengths[id]];
+            MemorySegment.copy(content, ValueLayout.JAVA_BYTE, offsets[id], bytes, 0, lengths[id]);
+            sink.writeFile(paths[id], bytes);
+        }
+    }
+
+    /**
+     * Writes the index of a snapshot.
+     *
+     * @param index   The index file to write.
+     * @param paths   The paths of the files in document order.
+     * @param offsets The offsets of the file contents in the content file.
+     * @param lengths The lengths of the file contents.
+     * @throws IOException If the index cannot be written.
+     */
+    static void writeIndex(Path index, List<String> paths, long[] offsets, int[] lengths) throws IOException {
+        int[] byPath = IntStream.range(0, paths.size()).boxed()
+                .sorted(Comparator.comparing(paths::get)).mapToInt(Integer::intValue).toArray();
+        Map<String, List<Integer>> extensions = new LinkedHashMap<>();
+        for (int id = 0; id < paths.size(); id++) {
+            String extension = extension(paths.get(id));
+            if (extension != null) {
+                extensions.computeIfAbsent(extension, e -> new ArrayList<>()).add(id);
+            }
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(index)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(paths.size());
+            for (int id = 0; id < paths.size(); id++) {
+                out.writeUTF(paths.get(id));
+                out.writeLong(offsets[id]);
+                out.writeInt(lengths[id]);
+            }
+            for (int id : byPath) {
+                out.writeInt(id);
+            }
+            out.writeInt(extensions.size());
+            for (Map.Entry<String, List<Integer>> extension : extensions.entrySet()) {
+                out.writeUTF(extension.getKey());
+                out.writeInt(extension.getValue().size());
+                for (int id : extension.getValue()) {
+                    out.writeInt(id);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the index of a snapshot and maps its content file.
+     *
+     * @param index   The index file.
+     * @param content The content file.
+     * @return The snapshot.
+     * @throws IOException If a file cannot be read or the index is not a snapshot index.
+     */
+    static Snapshot open(Path index, Path content) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(index)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a snapshot index: " + index);
+            }
+            int count = in.readInt();
+            String[] paths = new String[count];
+            long[] offsets = new long[count];
+            int[] lengths = new int[count];
+            for (int id = 0; id < count; id++) {
+                paths[id] = in.readUTF();
+                offsets[id] = in.readLong();
+                lengths[id] = in.readInt();
+            }
+            int[] byPath = new int[count];
+            for (int i = 0; i < count; i++) {
+                byPath[i] = in.readInt();
+            }
+            int extensionCount = in.readInt();
+            Map<String, int[]> extensions = new HashMap<>();
+            for (int i = 0; i < extensionCount; i++) {
+                String extension = in.readUTF();
+                int[] ids = new int[in.readInt()];
+                for (int j = 0; j < ids.length; j++) {
+                    ids[j] = in.readInt();
+                }
+                extensions.put(extension, ids);
+            }
+            try (FileChannel channel = FileChannel.open(content, StandardOpenOption.READ)) {
+                // The mapping stays valid after the channel is closed and is unmapped once the snapshot is unreachable
+                MemorySegment mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), Arena.ofAuto());
+                return new Snapshot(paths, offsets, lengths, byPath, extensions, mapped);
+            }
+        }
+    }
+
+    static String extension(String path) {
+        int dot = path.lastIndexOf('.');
+        return dot > path.lastIndexOf('/') + 1 && dot < path.length() - 1 ? path.substring(dot + 1) : null;
+    }
+}
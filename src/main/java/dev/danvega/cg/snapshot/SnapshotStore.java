@@ -0,0 +1,205 @@
+package dev.danvega.cg.snapshot;
+
+import dev.danvega.cg.output.ContentSink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Stores one {@link Snapshot} per generated document below {@code app.snapshots.directory}, keyed like the result
+ * cache by source, revision and filter settings. Every snapshot is a {@code .content} file and a {@code .index}
+ * file; the index is moved into place last, so a snapshot with an index is always complete. The least recently
+ * used snapshots are deleted once all of them together exceed {@code app.snapshots.max-size}, and the most
+ * recently used ones are kept open.
+ */
+@Component
+public class SnapshotStore {
+
+    private static final Logger log = LoggerFactory.getLogger(SnapshotStore.class);
+    private static final String CONTENT_SUFFIX = ".content";
+    private static final String INDEX_SUFFIX = ".index";
+    private static final int OPEN_SNAPSHOTS = 8;
+
+    private final boolean enabled;
+    private final Path directory;
+    private final long maxBytes;
+    private final Map<String, Snapshot> open = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Snapshot> eldest) {
+            return size() > OPEN_SNAPSHOTS;
+        }
+    };
+
+    public SnapshotStore(@Value("${app.snapshots.enabled:true}") boolean enabled,
+                         @Value("${app.snapshots.directory:.cache/snapshots}") Path directory,
+                         @Value("${app.snapshots.max-size:2GB}") DataSize maxSize) {
+        this.enabled = enabled;
+        this.directory = directory;
+        this.maxBytes = maxSize.toBytes();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Checks whether a complete snapshot exists for a document.
+     *
+     * @param cacheKey The result cache key of the document.
+     * @return true if the snapshot exists.
+     */
+    public boolean contains(String cacheKey) {
+        return Files.exists(directory.resolve(digest(cacheKey) + INDEX_SUFFIX));
+    }
+
+    /**
+     * Opens the snapshot of a document.
+     *
+     * @param cacheKey The result cache key of the document.
+     * @return The snapshot, or empty if there is none.
+     */
+    public Optional<Snapshot> find(String cacheKey) {
+        String name = digest(cacheKey);
+        Path index = directory.resolve(name + INDEX_SUFFIX);
+        // Opened under the lock that publish holds while it renames both files, so an index is never paired with
+        // the content file of another generation
+        synchronized (open) {
+            Snapshot snapshot = open.get(name);
+            if (snapshot != null) {
+                return Optional.of(snapshot);
+            }
+            try {
+                snapshot = Snapshot.open(index, directory.resolve(name + CONTENT_SUFFIX));
+                Files.setLastModifiedTime(index, FileTime.from(Instant.now()));
+                open.put(name, snapshot);
+                return Optional.of(snapshot);
+            } catch (NoSuchFileException e) {
+                return Optional.empty();
+            } catch (IOException e) {
+                log.warn("Failed to open snapshot {}: {}", index, e.getMessage());
+                return Optional.empty();
+            }
+        }
+    }
+
+    /**
+     * Starts recording the snapshot of a document.
+     *
+     * @param cacheKey The result cache key of the document.
+     * @param delegate The sink every file is passed on to.
+     * @return A sink that writes the files to the delegate and into the snapshot.
+     * @throws IOException If the snapshot files cannot be created.
+     */
+    public SnapshotWriter open(String cacheKey, ContentSink delegate) throws IOException {
+        Files.createDirectories(directory);
+        String temp = digest(cacheKey) + "." + UUID.randomUUID();
+        return new SnapshotWriter(delegate, this, cacheKey, directory.resolve(temp + CONTENT_SUFFIX + ".tmp"),
+                directory.resolve(temp + INDEX_SUFFIX + ".tmp"));
+    }
+
+    /**
+     * Moves a recorded snapshot into place and evicts the least recently used snapshots beyond the size limit.
+     */
+    void publish(String cacheKey, Path content, Path index) throws IOException {
+        String name = digest(cacheKey);
+        synchronized (open) {
+            open.remove(name);
+            Files.move(content, directory.resolve(name + CONTENT_SUFFIX), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            Files.move(index, directory.resolve(name + INDEX_SUFFIX), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            evict();
+        }
+    }
+
+    private void evict() throws IOException {
+        List<Path> indexes;
+        try (Stream<Path> files = Files.list(directory)) {
+            indexes = files.filter(file -> file.getFileName().toString().endsWith(INDEX_SUFFIX)).toList();
+        }
+        long total = 0;
+        Map<Path, Long> sizes = new LinkedHashMap<>();
+        for (Path index : indexes) {
+            long size = sizeOf(index) + sizeOf(contentOf(index));
+            sizes.put(index, size);
+            total += size;
+        }
+        List<Path> oldestFirst = indexes.stream()
+                .sorted(Comparator.comparing(SnapshotStore::lastModified))
+                .toList();
+        for (Path index : oldestFirst) {
+            if (total <= maxBytes) {
+                break;
+            }
+            String name = index.getFileName().toString();
+            open.remove(name.substring(0, name.length() - INDEX_SUFFIX.length()));
+            discard(index, contentOf(index));
+            total -= sizes.get(index);
+            log.debug("Evicted snapshot {}", index);
+        }
+    }
+
+    /**
+     * Deletes the files of an abandoned or evicted snapshot.
+     */
+    void discard(Path... files) {
+        for (Path file : files) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Failed to delete {}: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    private static Path contentOf(Path index) {
+        String name = index.getFileName().toString();
+        return index.resolveSibling(name.substring(0, name.length() - INDEX_SUFFIX.length()) + CONTENT_SUFFIX);
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static String digest(String cacheKey) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(cacheKey.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
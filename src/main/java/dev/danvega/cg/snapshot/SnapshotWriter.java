@@ -0,0 +1,127 @@
+package dev.danvega.cg.snapshot;
+
+import dev.danvega.cg.output.ContentSink;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Records the files of a document into a snapshot while they stream through to a delegate sink. Contents read
+ * from file channels are copied with {@link FileChannel#transferTo}, so they go from file to file without passing
+ * through the heap. The snapshot only becomes visible once {@link #commit()} has written its index.
+ */
+public class SnapshotWriter implements ContentSink {
+
+    private final ContentSink delegate;
+    private final SnapshotStore store;
+    private final String key;
+    private final Path contentFile;
+    private final Path indexFile;
+    private final FileChannel content;
+    private final List<String> paths = new ArrayList<>();
+    private final List<long[]> ranges = new ArrayList<>();
+    private boolean incomplete;
+
+    SnapshotWriter(ContentSink delegate, SnapshotStore store, String key, Path contentFile, Path indexFile)
+            throws IOException {
+        this.delegate = delegate;
+        this.store = store;
+        this.key = key;
+        this.contentFile = contentFile;
+        this.indexFile = indexFile;
+        this.content = FileChannel.open(contentFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    @Override
+    public Comparator<String> fileOrder() {
+        return delegate.fileOrder();
+    }
+
+    @Override
+    public void filesDiscovered(int count) {
+        delegate.filesDiscovered(count);
+    }
+
+    @Override
+    public void writeFile(String path, byte[] bytes) throws IOException {
+        delegate.writeFile(path, bytes);
+        if (fits(bytes.length)) {
+            long offset = content.position();
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                content.write(buffer);
+            }
+            added(path, offset, bytes.length);
+        }
+    }
+
+    @Override
+    public void writeFile(String path, FileChannel source, long size) throws IOException {
+        delegate.writeFile(path, source, size);
+        if (fits(size)) {
+            long offset = content.position();
+            long position = 0;
+            while (position < size) {
+                long transferred = source.transferTo(position, size - position, content);
+                if (transferred <= 0) {
+                    throw new IOException("File " + path + " changed while it was being copied");
+                }
+                position += transferred;
+            }
+            content.position(offset + size);
+            added(path, offset, size);
+        }
+    }
+
+    private boolean fits(long size) {
+        // Views are served as byte arrays, so a larger file leaves the snapshot incomplete
+        if (size > Integer.MAX_VALUE - 8) {
+            incomplete = true;
+        }
+        return !incomplete;
+    }
+
+    private void added(String path, long offset, long size) {
+        paths.add(path);
+        ranges.add(new long[]{offset, size});
+    }
+
+    /**
+     * Writes the index and publishes the snapshot. A snapshot that is missing a file is discarded instead.
+     *
+     * @throws IOException If the index cannot be written.
+     */
+    public void commit() throws IOException {
+        content.close();
+        if (incomplete) {
+            store.discard(contentFile, indexFile);
+            return;
+        }
+        long[] offsets = new long[paths.size()];
+        int[] lengths = new int[paths.size()];
+        for (int i = 0; i < paths.size(); i++) {
+            offsets[i] = ranges.get(i)[0];
+            lengths[i] = (int) ranges.get(i)[1];
+        }
+        Snapshot.writeIndex(indexFile, paths, offsets, lengths);
+        store.publish(key, contentFile, indexFile);
+    }
+
+    /**
+     * Discards the snapshot.
+     */
+    public void abort() {
+        try {
+            content.close();
+        } catch (IOException ignored) {
+            // The files are deleted anyway
+        }
+        store.discard(contentFile, indexFile);
+    }
+}
@@ -0,0 +1,141 @@
+package dev.danvega.cg.snapshot;
+
+import dev.danvega.cg.filter.PathFilter;
+import dev.danvega.cg.output.ContentSink;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A caller's view of a repository: their own include and exclude patterns and a path prefix, applied on top of the
+ * configured filters. Views are answered from a {@link Snapshot} of the full document whenever one exists.
+ *
+ * @param includePatterns The patterns a file must match, or an empty list for every file.
+ * @param excludePatterns The patterns that exclude a file even if it is included.
+ * @param prefix          The path prefix a file must start with, or an empty string for every file.
+ */
+public record ViewFilter(List<String> includePatterns, List<String> excludePatterns, String prefix) {
+
+    // Patterns like "**/*.java" or "*.java" only match by extension, so the extension index can answer them
+    private static final Pattern EXTENSION_PATTERN = Pattern.compile("(?:\\*\\*/)?\\*\\.([A-Za-z0-9_]+)");
+
+    public ViewFilter {
+        includePatterns = includePatterns != null ? List.copyOf(includePatterns) : List.of();
+        excludePatterns = excludePatterns != null ? List.copyOf(excludePatterns) : List.of();
+        prefix = prefix != null ? prefix.strip() : "";
+        if (prefix.startsWith("/")) {
+            prefix = prefix.substring(1);
+        }
+    }
+
+    /**
+     * Creates a view from request parameters.
+     *
+     * @param includePatterns The include patterns, may be null.
+     * @param excludePatterns The exclude patterns, may be null.
+     * @param prefix          The path prefix, may be null.
+     * @return The view, or null if no parameter narrows the document down.
+     */
+    public static ViewFilter of(List<String> includePatterns, List<String> excludePatterns, String prefix) {
+        ViewFilter view = new ViewFilter(nonBlank(includePatterns), nonBlank(excludePatterns), prefix);
+        boolean empty = view.includePatterns.isEmpty() && view.excludePatterns.isEmpty() && view.prefix.isEmpty();
+        return empty ? null : view;
+    }
+
+    /**
+     * Compiles the patterns and the prefix of this view.
+     *
+     * @return A predicate that accepts the relative paths of the files in the view.
+     */
+    public Predicate<String> matcher() {
+        PathFilter filter = PathFilter.of(includePatterns, excludePatterns);
+        return path -> path.startsWith(prefix) && filter.includes(path);
+    }
+
+    /**
+     * Wraps a sink so that it only receives the files of this view, for sources that have no snapshot to slice.
+     * The number of discovered files is not passed on, because it counts files outside the view as well.
+     *
+     * @param sink The sink to write the files of the view to.
+     * @return A sink that drops every other file.
+     */
+    public ContentSink filter(ContentSink sink) {
+        Predicate<String> matcher = matcher();
+        return new ContentSink() {
+            @Override
+            public Comparator<String> fileOrder() {
+                return sink.fileOrder();
+            }
+
+            @Override
+            public void writeFile(String path, byte[] content) throws IOException {
+                if (matcher.test(path)) {
+                    sink.writeFile(path, content);
+                }
+            }
+
+            @Override
+            public void writeFile(String path, String content) throws IOException {
+                if (matcher.test(path)) {
+                    sink.writeFile(path, content);
+                }
+            }
+
+            @Override
+            public void writeFile(String path, FileChannel content, long size) throws IOException {
+                if (matcher.test(path)) {
+                    sink.writeFile(path, content, size);
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the file extensions this view is limited to, when every include pattern only matches by extension.
+     *
+     * @return The extensions without the dot, or null when the includes are not extension patterns.
+     */
+    public List<String> extensions() {
+        if (includePatterns.isEmpty()) {
+            return null;
+        }
+        List<String> extensions = new ArrayList<>();
+        for (String pattern : includePatterns) {
+            Matcher matcher = EXTENSION_PATTERN.matcher(pattern);
+            if (!matcher.matches()) {
+                return null;
+            }
+            extensions.add(matcher.group(1));
+        }
+        return extensions;
+    }
+
+    /**
+     * Returns a short identifier of this view, used in output file names and cache keys.
+     *
+     * @return Twelve hex characters derived from the patterns and the prefix.
+     */
+    public String id() {
+        String key = String.join(",", includePatterns) + "|" + String.join(",", excludePatterns) + "|" + prefix;
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 6);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static List<String> nonBlank(List<String> patterns) {
+        return patterns == null ? List.of() : patterns.stream().map(String::strip).filter(p -> !p.isEmpty()).toList();
+    }
+}
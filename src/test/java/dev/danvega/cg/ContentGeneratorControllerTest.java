@@ -1,20 +1,30 @@
 package dev.danvega.cg;
 
+import dev.danvega.cg.gh.FetchMode;
 import dev.danvega.cg.gh.GitHubService;
 import dev.danvega.cg.local.LocalFileService;
+import dev.danvega.cg.snapshot.ViewFilter;
 import gg.jte.TemplateEngine;
-import gg.jte.output.StringOutput;
+import gg.jte.TemplateOutput;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -53,55 +63,126 @@ class ContentGeneratorControllerTest {
     }
 
     @Test
-    void generate_WithValidGitHubUrl_ShouldReturnContent() throws Exception {
+    void generate_WithValidGitHubUrl_ShouldRenderContentWhileGenerating() throws Exception {
         // Arrange
         String githubUrl = "https://github.com/user/repo";
-        String generatedContent = "Generated content";
-        String renderedTemplate = "Rendered template";
-
-        when(contentGeneratorService.generateContent(eq(githubUrl), eq(null)))
-                .thenReturn(generatedContent);
-        doAnswer(invocation -> {
-            StringOutput output = invocation.getArgument(2);
-            output.writeContent(renderedTemplate);
-            return null;
-        }).when(templateEngine).render(eq("result.jte"), any(), any(StringOutput.class));
+        generates(GenerationRequest.of(githubUrl, null, null), "Generated content");
+        rendersContent();
 
         // Act & Assert
         mockMvc.perform(post("/generate")
                         .param("githubUrl", githubUrl)
                         .contentType(MediaType.APPLICATION_FORM_URLENCODED))
                 .andExpect(status().isOk())
-                .andExpect(content().string(renderedTemplate));
+                .andExpect(content().contentType("text/html;charset=UTF-8"))
+                .andExpect(content().string("<textarea>Generated content</textarea>"));
 
-        verify(contentGeneratorService).generateContent(githubUrl, null);
-        verify(templateEngine).render(eq("result.jte"), any(), any(StringOutput.class));
+        verify(contentGeneratorService).generateContent(eq(GenerationRequest.of(githubUrl, null, null)),
+                any(OutputStream.class), eq(false));
     }
 
     @Test
-    void generate_WithValidLocalPath_ShouldReturnContent() throws Exception {
+    void generate_WithValidLocalPath_ShouldRenderContentWhileGenerating() throws Exception {
         // Arrange
         String localPath = "/path/to/local/file";
-        String generatedContent = "Generated content";
-        String renderedTemplate = "Rendered template";
-
-        when(contentGeneratorService.generateContent(eq(null), eq(localPath)))
-                .thenReturn(generatedContent);
-        doAnswer(invocation -> {
-            StringOutput output = invocation.getArgument(2);
-            output.writeContent(renderedTemplate);
-            return null;
-        }).when(templateEngine).render(eq("result.jte"), any(), any(StringOutput.class));
+        generates(GenerationRequest.of(null, localPath, null), "Generated content \u00e9");
+        rendersContent();
 
         // Act & Assert
         mockMvc.perform(post("/generate")
                         .param("localPath", localPath)
                         .contentType(MediaType.APPLICATION_FORM_URLENCODED))
                 .andExpect(status().isOk())
-                .andExpect(content().string(renderedTemplate));
+                .andExpect(content().string("<textarea>Generated content \u00e9</textarea>"));
+
+        verify(templateEngine).render(eq("result.jte"), anyMap(), any(TemplateOutput.class));
+    }
+
+    @Test
+    void generate_WithFetchMode_ShouldPassModeToService() throws Exception {
+        // Arrange
+        String githubUrl = "https://github.com/user/repo";
+        rendersContent();
+
+        // Act & Assert
+        mockMvc.perform(post("/generate")
+                        .param("githubUrl", githubUrl)
+                        .param("fetchMode", "CONTENTS")
+                        .contentType(MediaType.APPLICATION_FORM_URLENCODED))
+                .andExpect(status().isOk());
+
+        verify(contentGeneratorService).generateContent(eq(GenerationRequest.of(githubUrl, null, FetchMode.CONTENTS)),
+                any(OutputStream.class), eq(false));
+    }
+
+    @Test
+    void generate_WithViewParameters_ShouldRequestView() throws Exception {
+        // Arrange
+        String githubUrl = "https://github.com/user/repo";
+        rendersContent();
+
+        // Act & Assert
+        mockMvc.perform(post("/generate")
+                        .param("githubUrl", githubUrl)
+                        .param("include", "**/*.java", "**/*.md")
+                        .param("exclude", " ")
+                        .param("prefix", "src/main")
+                        .contentType(MediaType.APPLICATION_FORM_URLENCODED))
+                .andExpect(status().isOk());
+
+        verify(contentGeneratorService).generateContent(eq(GenerationRequest.of(githubUrl, null, null)
+                        .withView(new ViewFilter(List.of("**/*.java", "**/*.md"), List.of(), "src/main"))),
+                any(OutputStream.class), eq(false));
+    }
+
+    @Test
+    void generateStream_WithValidGitHubUrl_ShouldStreamContent() throws Exception {
+        // Arrange
+        String githubUrl = "https://github.com/user/repo";
+        doAnswer(invocation -> {
+            OutputStream out = invocation.getArgument(1);
+            out.write("File: README.md\n\n# Repo\n\n".getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(contentGeneratorService).generateContent(eq(GenerationRequest.of(githubUrl, null, null)),
+                any(OutputStream.class), eq(false));
+
+        // Act
+        MvcResult result = mockMvc.perform(post("/generate/stream")
+                        .param("githubUrl", githubUrl)
+                        .contentType(MediaType.APPLICATION_FORM_URLENCODED))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // Assert
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().string("File: README.md\n\n# Repo\n\n"));
+        verifyNoInteractions(templateEngine);
+    }
+
+    @Test
+    void generateStream_WhenClientAcceptsGzip_ShouldRequestCompressedContent() throws Exception {
+        String githubUrl = "https://github.com/user/repo";
+        byte[] compressed = {0x1f, (byte) 0x8b, 8, 0};
+        doAnswer(invocation -> {
+            OutputStream out = invocation.getArgument(1);
+            out.write(compressed);
+            return null;
+        }).when(contentGeneratorService).generateContent(eq(GenerationRequest.of(githubUrl, null, null)),
+                any(OutputStream.class), eq(true));
+
+        MvcResult result = mockMvc.perform(post("/generate/stream")
+                        .param("githubUrl", githubUrl)
+                        .header(HttpHeaders.ACCEPT_ENCODING, "br;q=1.0, gzip;q=0.8")
+                        .contentType(MediaType.APPLICATION_FORM_URLENCODED))
+                .andExpect(request().asyncStarted())
+                .andReturn();
 
-        verify(contentGeneratorService).generateContent(null, localPath);
-        verify(templateEngine).render(eq("result.jte"), any(), any(StringOutput.class));
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING))
+                .andExpect(content().bytes(compressed));
     }
 
     @Test
@@ -114,6 +195,19 @@ class ContentGeneratorControllerTest {
         verifyNoInteractions(contentGeneratorService, templateEngine);
     }
 
+    @Test
+    void generateStream_WithTokenBudget_ShouldReturnBadRequest() throws Exception {
+        mockMvc.perform(post("/generate/stream")
+                        .param("githubUrl", "https://github.com/user/repo")
+                        .param("tokenBudget", "1000")
+                        .contentType(MediaType.APPLICATION_FORM_URLENCODED))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("Error: tokenBudget is not supported by /generate/stream, use /generate or /jobs "
+                        + "to get the per-file summary."));
+
+        verifyNoInteractions(contentGeneratorService);
+    }
+
     @Test
     void generate_WithBlankInputs_ShouldReturnBadRequest() throws Exception {
         mockMvc.perform(post("/generate")
@@ -131,8 +225,10 @@ class ContentGeneratorControllerTest {
         // Arrange
         String githubUrl = "https://github.com/user/repo";
         String errorMessage = "Service error";
-        when(contentGeneratorService.generateContent(eq(githubUrl), eq(null)))
+        when(contentGeneratorService.generateContent(eq(GenerationRequest.of(githubUrl, null, null)),
+                any(OutputStream.class), eq(false)))
                 .thenThrow(new RuntimeException(errorMessage));
+        rendersContent();
 
         // Act & Assert
         mockMvc.perform(post("/generate")
@@ -140,8 +236,28 @@ class ContentGeneratorControllerTest {
                         .contentType(MediaType.APPLICATION_FORM_URLENCODED))
                 .andExpect(status().isInternalServerError())
                 .andExpect(content().string("Error generating content: " + errorMessage));
+    }
 
-        verify(contentGeneratorService).generateContent(githubUrl, null);
-        verifyNoInteractions(templateEngine);
+    private void generates(GenerationRequest request, String content) throws Exception {
+        doAnswer(invocation -> {
+            OutputStream out = invocation.getArgument(1);
+            // One byte at a time, so characters are split across writes
+            for (byte b : content.getBytes(StandardCharsets.UTF_8)) {
+                out.write(b);
+            }
+            return null;
+        }).when(contentGeneratorService).generateContent(eq(request), any(OutputStream.class), eq(false));
+    }
+
+    private void rendersContent() {
+        doAnswer(invocation -> {
+            Map<String, Object> model = invocation.getArgument(1);
+            TemplateOutput output = invocation.getArgument(2);
+            output.writeContent("<textarea>");
+            ((GeneratedContent) model.get("content")).writeTo(output);
+            output.writeContent("</textarea>");
+            return null;
+        }).when(templateEngine).render(eq("result.jte"), anyMap(), any(TemplateOutput.class));
     }
+
 }
\ No newline at end of file
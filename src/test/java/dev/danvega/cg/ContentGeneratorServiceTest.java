@@ -0,0 +1,299 @@
+package dev.danvega.cg;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.danvega.cg.cache.ResultCache;
+import dev.danvega.cg.filter.ContentLimits;
+import dev.danvega.cg.filter.FilePriority;
+import dev.danvega.cg.filter.PathFilter;
+import dev.danvega.cg.gh.GitHubConfiguration;
+import dev.danvega.cg.gh.GitHubService;
+import dev.danvega.cg.local.LocalFileService;
+import dev.danvega.cg.metrics.PipelineMetrics;
+import dev.danvega.cg.mirror.MirrorService;
+import dev.danvega.cg.output.ContentSink;
+import dev.danvega.cg.output.DeduplicationConfiguration;
+import dev.danvega.cg.output.Gzip;
+import dev.danvega.cg.output.TokenSummary;
+import dev.danvega.cg.shard.ShardManifest;
+import dev.danvega.cg.shard.ShardStore;
+import dev.danvega.cg.snapshot.SnapshotStore;
+import dev.danvega.cg.snapshot.ViewFilter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ContentGeneratorServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private GitHubService gitHubService;
+    private MirrorService mirrorService;
+    private LocalFileService localFileService;
+    private ShardStore shardStore;
+    private SnapshotStore snapshotStore;
+    private ContentGeneratorService service;
+    private Path outputDir;
+
+    @BeforeEach
+    void setUp() {
+        gitHubService = mock(GitHubService.class);
+        mirrorService = mock(MirrorService.class);
+        localFileService = new LocalFileService(PathFilter.of(List.of(), List.of()), ContentLimits.NONE, new PipelineMetrics(new SimpleMeterRegistry()), true, 4,
+                DataSize.ofMegabytes(8), false, 0);
+        outputDir = tempDir.resolve("output");
+        shardStore = new ShardStore(new ObjectMapper(), outputDir, true, DataSize.ofKilobytes(1), 0, 2);
+        snapshotStore = new SnapshotStore(true, tempDir.resolve("snapshots"), DataSize.ofMegabytes(8));
+        service = service(false, FilePriority.of(List.of()));
+    }
+
+    @Test
+    void generateContent_ConcurrentRequestsForDifferentSources_ShouldNotInterfere() throws Exception {
+        // Two of the directories share a name, so their requests race for the same output file
+        List<Path> sources = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            sources.add(createProject(tempDir.resolve("sources").resolve("project-" + i), i));
+        }
+        sources.add(createProject(tempDir.resolve("other").resolve("project-0"), 100));
+
+        Map<Path, String> expected = new HashMap<>();
+        for (Path source : sources) {
+            expected.put(source, generate(null, source.toString()));
+        }
+
+        int requests = 64;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(16)) {
+            for (int i = 0; i < requests; i++) {
+                Path source = sources.get(i % sources.size());
+                Callable<Boolean> request = () -> {
+                    start.await();
+                    return expected.get(source).equals(generate(null, source.toString()));
+                };
+                results.add(executor.submit(request));
+            }
+            start.countDown();
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get(30, TimeUnit.SECONDS));
+            }
+        }
+
+        String shared = decompress(Files.readAllBytes(outputDir.resolve("project-0.md.gz")));
+        assertTrue(shared.equals(expected.get(sources.get(0))) || shared.equals(expected.get(sources.get(6))));
+        try (Stream<Path> files = Files.list(outputDir)) {
+            assertTrue(files.noneMatch(file -> file.toString().endsWith(".tmp")));
+        }
+    }
+
+    @Test
+    void generateContent_ConcurrentRequestsForSameSource_ShouldBeCoalesced() throws Exception {
+        int requests = 8;
+        AtomicInteger downloads = new AtomicInteger();
+        doAnswer(invocation -> {
+            downloads.incrementAndGet();
+            // Hold the leader until every other request has joined its flight
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (service.coalescedRequests() < requests - 1 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            ContentSink sink = invocation.getArgument(4);
+            sink.writeFile("README.md", "# Shared");
+            return null;
+        }).when(gitHubService).downloadRepositoryContents(eq("user"), eq("repo"), eq("HEAD"), any(), any(ContentSink.class));
+
+        List<Future<String>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(requests)) {
+            for (int i = 0; i < requests; i++) {
+                results.add(executor.submit(() -> generate("https://github.com/user/repo", null)));
+            }
+            for (Future<String> result : results) {
+                assertEquals("File: README.md\n\n# Shared\n\n", result.get(30, TimeUnit.SECONDS));
+            }
+        }
+
+        assertEquals(1, downloads.get());
+        assertEquals(requests - 1, service.coalescedRequests());
+    }
+
+    @Test
+    void generateContent_WithTokenBudget_ShouldWritePriorityFilesFirstAndStopWithoutReplacingFullDocument() throws Exception {
+        service = service(false, FilePriority.of(List.of("README*", "src/main/**")));
+        Path project = tempDir.resolve("budgeted");
+        Files.createDirectories(project.resolve("src/main"));
+        Files.createDirectories(project.resolve("src/test"));
+        Files.writeString(project.resolve("src/test/AppTest.java"), "class AppTest { }");
+        Files.writeString(project.resolve("src/main/App.java"), "class App { }");
+        Files.writeString(project.resolve("README.md"), "# Budgeted");
+        Files.writeString(project.resolve("zz-notes.txt"), "word ".repeat(500));
+        String full = generate(null, project.toString());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TokenSummary summary = service.generateContent(
+                GenerationRequest.of(null, project.toString(), null).withTokenBudget(100), out, false);
+
+        assertEquals("File: README.md\n\n# Budgeted\n\nFile: src/main/App.java\n\nclass App { }\n\n"
+                + "File: src/test/AppTest.java\n\nclass AppTest { }\n\n", out.toString(StandardCharsets.UTF_8));
+        assertEquals(List.of("README.md", "src/main/App.java", "src/test/AppTest.java"),
+                summary.files().stream().map(TokenSummary.FileTokens::path).toList());
+        assertTrue(summary.truncated());
+        assertEquals("zz-notes.txt", summary.stoppedAt());
+        assertEquals(out.toString(StandardCharsets.UTF_8),
+                decompress(Files.readAllBytes(outputDir.resolve("budgeted-budget-100.md.gz"))));
+        assertEquals(full, decompress(Files.readAllBytes(outputDir.resolve("budgeted.md.gz"))));
+        assertTrue(Files.isDirectory(outputDir.resolve("budgeted.shards")));
+        assertTrue(Files.isDirectory(outputDir.resolve("budgeted-budget-100.shards")));
+    }
+
+    @Test
+    void generateContent_WithGzip_ShouldStoreCompressedAndServeCachedDocumentAsIs() throws Exception {
+        service = service(true, FilePriority.of(List.of()));
+        Path project = createProject(tempDir.resolve("compressed"), 1);
+
+        ByteArrayOutputStream live = new ByteArrayOutputStream();
+        service.generateContent(GenerationRequest.of(null, project.toString(), null), live, true);
+        byte[] stored = Files.readAllBytes(outputDir.resolve("compressed.md.gz"));
+        String plain = generate(null, project.toString());
+        ByteArrayOutputStream cached = new ByteArrayOutputStream();
+        service.generateContent(GenerationRequest.of(null, project.toString(), null), cached, true);
+
+        assertEquals(plain, decompress(live.toByteArray()));
+        assertEquals(plain, decompress(stored));
+        assertTrue(stored.length < plain.length() / 2);
+        assertArrayEquals(stored, cached.toByteArray());
+        assertEquals(2, service.cacheStats().memoryHits() + service.cacheStats().diskHits());
+        // Shards of the cached revision are in place, so the hits did not have to regenerate them
+        ShardManifest manifest = shardStore.manifest("compressed").orElseThrow();
+        assertTrue(manifest.shards().size() > 1);
+        StringBuilder shards = new StringBuilder();
+        for (ShardManifest.Shard shard : manifest.shards()) {
+            shards.append(Files.readString(shardStore.shard("compressed", shard.index()).orElseThrow()));
+        }
+        assertEquals(plain, shards.toString());
+    }
+
+    @Test
+    void generateContent_WithView_ShouldSliceSnapshotWithoutCrawlingAgain() throws Exception {
+        service = service(true, FilePriority.of(List.of()));
+        AtomicInteger downloads = new AtomicInteger();
+        when(gitHubService.resolveRevision("user", "repo", "HEAD")).thenReturn("abc123");
+        doAnswer(invocation -> {
+            downloads.incrementAndGet();
+            ContentSink sink = invocation.getArgument(4);
+            sink.writeFile("README.md", "# Viewed");
+            sink.writeFile("src/main/App.java", "class App { }");
+            sink.writeFile("src/main/Util.java", "class Util { }");
+            sink.writeFile("src/test/AppTest.java", "class AppTest { }");
+            return null;
+        }).when(gitHubService).downloadRepositoryContents(eq("user"), eq("repo"), eq("abc123"), any(), any(ContentSink.class));
+
+        ByteArrayOutputStream markdown = new ByteArrayOutputStream();
+        service.generateContent(GenerationRequest.of("https://github.com/user/repo", null, null)
+                .withView(ViewFilter.of(List.of("*.md"), null, null)), markdown, false);
+        ByteArrayOutputStream sources = new ByteArrayOutputStream();
+        service.generateContent(GenerationRequest.of("https://github.com/user/repo", null, null)
+                .withView(ViewFilter.of(null, List.of("**/Util.java"), "/src/")), sources, false);
+
+        assertEquals("File: README.md\n\n# Viewed\n\n", markdown.toString(StandardCharsets.UTF_8));
+        assertEquals("File: src/main/App.java\n\nclass App { }\n\nFile: src/test/AppTest.java\n\nclass AppTest { }\n\n",
+                sources.toString(StandardCharsets.UTF_8));
+        assertEquals(1, downloads.get());
+        assertFalse(Files.exists(outputDir.resolve("repo.md.gz")));
+    }
+
+    @Test
+    void generateContent_WithViewOfChangedLocalDirectory_ShouldServeFreshContent() throws Exception {
+        service = service(true, FilePriority.of(List.of()));
+        Path project = createProject(tempDir.resolve("viewed"), 1);
+
+        ByteArrayOutputStream before = new ByteArrayOutputStream();
+        service.generateContent(GenerationRequest.of(null, project.toString(), null)
+                .withView(ViewFilter.of(null, null, "src/")), before, false);
+        // Local directories are revalidated on every request, so the next view reflects the deletion
+        Files.delete(project.resolve("src/File3.java"));
+        ByteArrayOutputStream after = new ByteArrayOutputStream();
+        service.generateContent(GenerationRequest.of(null, project.toString(), null)
+                .withView(ViewFilter.of(null, null, "src/")), after, false);
+
+        assertTrue(before.toString(StandardCharsets.UTF_8).contains("File: src/File3.java"));
+        String view = after.toString(StandardCharsets.UTF_8);
+        assertFalse(view.contains("File: src/File3.java"));
+        assertTrue(view.contains("File: src/File4.java"));
+        assertFalse(view.contains("File: README.md"));
+    }
+
+    @Test
+    void generateContent_WithViewAndCacheDisabled_ShouldFilterCrawl() throws Exception {
+        Path project = createProject(tempDir.resolve("uncached"), 1);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.generateContent(GenerationRequest.of(null, project.toString(), null)
+                .withView(ViewFilter.of(List.of("README.md"), null, null)), out, false);
+
+        assertEquals("File: README.md\n\n# Project 1\n\n", out.toString(StandardCharsets.UTF_8));
+        assertFalse(Files.exists(tempDir.resolve("snapshots")));
+    }
+
+    private String generate(String githubUrl, String localPath) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.generateContent(GenerationRequest.of(githubUrl, localPath, null), out, false);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private ContentGeneratorService service(boolean cacheEnabled, FilePriority priority) {
+        ContentGeneratorService created = new ContentGeneratorService(gitHubService, localFileService, mirrorService,
+                new ResultCache(cacheEnabled, tempDir.resolve("cache"), DataSize.ofMegabytes(1), DataSize.ofMegabytes(1),
+                        Duration.ofMinutes(1)),
+                shardStore, snapshotStore,
+                new GitHubConfiguration("token", List.of(), List.of(), null, 8, null, null, null, null, null),
+                priority, ContentLimits.NONE, DeduplicationConfiguration.DISABLED,
+                new PipelineMetrics(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(created, "outputDirectory", outputDir.toString());
+        return created;
+    }
+
+    private static String decompress(byte[] compressed) throws IOException {
+        try (InputStream in = Gzip.decompress(new ByteArrayInputStream(compressed))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static Path createProject(Path root, int seed) throws Exception {
+        Files.createDirectories(root.resolve("src"));
+        for (int i = 0; i < 40; i++) {
+            Files.writeString(root.resolve("src").resolve("File" + i + ".java"),
+                    "class File" + i + " { int seed = " + seed + "; }\n".repeat(1 + i % 7));
+        }
+        Files.writeString(root.resolve("README.md"), "# Project " + seed);
+        return root;
+    }
+}
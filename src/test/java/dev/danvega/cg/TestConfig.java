@@ -2,7 +2,9 @@ package dev.danvega.cg;
 
 import dev.danvega.cg.gh.GitHubService;
 import dev.danvega.cg.local.LocalFileService;
+import dev.danvega.cg.metrics.PipelineMetrics;
 import gg.jte.TemplateEngine;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Primary;
@@ -35,4 +37,9 @@ public class TestConfig {
     public ContentGeneratorService contentGeneratorService() {
         return mock(ContentGeneratorService.class);
     }
+
+    @Bean
+    public PipelineMetrics pipelineMetrics() {
+        return new PipelineMetrics(new SimpleMeterRegistry());
+    }
 }
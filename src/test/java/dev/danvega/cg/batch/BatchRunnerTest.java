@@ -0,0 +1,95 @@
+package dev.danvega.cg.batch;
+
+import dev.danvega.cg.ContentGeneratorService;
+import dev.danvega.cg.GenerationRequest;
+import dev.danvega.cg.gh.FetchMode;
+import dev.danvega.cg.output.ProgressListener;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class BatchRunnerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void readManifest_ShouldParseGitHubUrlsLocalPathsAndFetchModes() throws Exception {
+        Path manifest = Files.writeString(tempDir.resolve("repos.txt"), """
+                # Nightly repositories
+                https://github.com/danvega/repo-content-generator trees
+
+                github.com/spring-projects/spring-petclinic
+                /srv/checkouts/app
+                """);
+
+        assertEquals(List.of(
+                new BatchItem("https://github.com/danvega/repo-content-generator", null, FetchMode.TREES),
+                new BatchItem("github.com/spring-projects/spring-petclinic", null, null),
+                new BatchItem(null, "/srv/checkouts/app", null)), BatchItem.readManifest(manifest));
+
+        Files.writeString(manifest, "https://github.com/danvega/repo-content-generator sideways\n");
+        assertThrows(IllegalArgumentException.class, () -> BatchItem.readManifest(manifest));
+    }
+
+    @Test
+    void run_ShouldGenerateItemsWithinConcurrencyLimitAndReportFailures() throws Exception {
+        ContentGeneratorService contentGeneratorService = mock(ContentGeneratorService.class);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        doAnswer(invocation -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+                OutputStream out = invocation.getArgument(1);
+                out.write(new byte[10]);
+                ProgressListener listener = invocation.<GenerationRequest>getArgument(0).listener();
+                listener.fileWritten("a.md", 15);
+                listener.fileWritten("b.md", 15);
+                return null;
+            } finally {
+                running.decrementAndGet();
+            }
+        }).when(contentGeneratorService).generateContent(argThat(request -> request.localPath() == null),
+                any(OutputStream.class), eq(true));
+        doThrow(new IOException("Directory not found")).when(contentGeneratorService).generateContent(
+                argThat(request -> "/missing".equals(request.localPath())), any(OutputStream.class), eq(true));
+        List<BatchItem> items = List.of(
+                new BatchItem("https://github.com/o/a", null, null),
+                new BatchItem("https://github.com/o/b", null, null),
+                new BatchItem(null, "/missing", null),
+                new BatchItem("https://github.com/o/c", null, FetchMode.TREES),
+                new BatchItem("https://github.com/o/d", null, null));
+
+        List<BatchResult> results = new BatchRunner(contentGeneratorService, 2).run(items);
+
+        assertEquals(items, results.stream().map(BatchResult::item).toList());
+        assertEquals(List.of(true, true, false, true, true), results.stream().map(BatchResult::succeeded).toList());
+        assertEquals("Directory not found", results.get(2).error());
+        assertEquals(2, results.get(0).files());
+        assertEquals(10, results.get(0).bytes());
+        assertTrue(maxRunning.get() <= 2);
+        verify(contentGeneratorService).generateContent(argThat(request -> "https://github.com/o/c".equals(request.githubUrl())
+                && request.fetchMode() == FetchMode.TREES && request.tokenBudget() == 0), any(OutputStream.class), eq(true));
+
+        ByteArrayOutputStream summary = new ByteArrayOutputStream();
+        BatchRunner.printSummary(results, new PrintStream(summary, true, StandardCharsets.UTF_8));
+        String printed = summary.toString(StandardCharsets.UTF_8);
+        assertTrue(printed.contains("FAILED  /missing"));
+        assertTrue(printed.endsWith("4 of 5 documents generated, 1 failed" + System.lineSeparator()));
+    }
+}
@@ -0,0 +1,121 @@
+package dev.danvega.cg.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResultCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final MutableClock clock = new MutableClock();
+
+    @Test
+    void writeTo_ShouldServeStoredDocumentAcrossRestart() throws IOException {
+        Path cacheDir = tempDir.resolve("cache");
+        Path document = Files.writeString(tempDir.resolve("doc.md"), "# Generated");
+        String key = ResultCache.key("github:owner/repo", "abc123", "*.java|");
+
+        ResultCache cache = newCache(cacheDir, DataSize.ofMegabytes(1));
+        assertFalse(cache.writeTo(key, new ByteArrayOutputStream()));
+        cache.put(key, document);
+
+        ResultCache restarted = newCache(cacheDir, DataSize.ofMegabytes(1));
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        assertTrue(restarted.writeTo(key, first, second));
+        assertEquals("# Generated", first.toString(StandardCharsets.UTF_8));
+        assertEquals("# Generated", second.toString(StandardCharsets.UTF_8));
+        assertTrue(restarted.writeTo(key, new ByteArrayOutputStream()));
+
+        ResultCache.Stats stats = restarted.stats();
+        assertEquals(1, stats.diskHits());
+        assertEquals(1, stats.memoryHits());
+        assertFalse(restarted.writeTo(ResultCache.key("github:owner/repo", "def456", "*.java|"), new ByteArrayOutputStream()));
+    }
+
+    @Test
+    void restart_ShouldKeepEntriesStoredWithLegacySuffix() throws IOException {
+        Path cacheDir = tempDir.resolve("cache");
+        String key = ResultCache.key("github:owner/repo", "abc123", "*.java|");
+        newCache(cacheDir, DataSize.ofMegabytes(1)).put(key, Files.writeString(tempDir.resolve("doc.md"), "# Generated"));
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            Path entry = files.filter(file -> file.toString().endsWith(".md.gz")).findFirst().orElseThrow();
+            String name = entry.getFileName().toString();
+            Files.move(entry, entry.resolveSibling(name.substring(0, name.length() - ".gz".length())));
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(newCache(cacheDir, DataSize.ofMegabytes(1)).writeTo(key, out));
+        assertEquals("# Generated", out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void put_ShouldEvictLeastRecentlyUsedDocumentsBeyondDiskSize() throws IOException {
+        ResultCache cache = newCache(tempDir.resolve("cache"), DataSize.ofBytes(10));
+        cache.put("a", Files.writeString(tempDir.resolve("a.md"), "123456"));
+        cache.put("b", Files.writeString(tempDir.resolve("b.md"), "123456"));
+
+        assertFalse(cache.writeTo("a", new ByteArrayOutputStream()));
+        assertTrue(cache.writeTo("b", new ByteArrayOutputStream()));
+        assertEquals(1, cache.stats().evictions());
+        assertEquals(1, cache.stats().diskEntries());
+    }
+
+    @Test
+    void revision_ShouldResolveAgainOnlyAfterTtl() {
+        ResultCache cache = newCache(tempDir.resolve("cache"), DataSize.ofMegabytes(1));
+        AtomicInteger calls = new AtomicInteger();
+
+        assertEquals("1", cache.revision("local:/src", () -> String.valueOf(calls.incrementAndGet())));
+        clock.advance(Duration.ofSeconds(30));
+        assertEquals("1", cache.revision("local:/src", () -> String.valueOf(calls.incrementAndGet())));
+        clock.advance(Duration.ofSeconds(31));
+        assertEquals("2", cache.revision("local:/src", () -> String.valueOf(calls.incrementAndGet())));
+        assertEquals(1, cache.stats().revalidations());
+    }
+
+    private ResultCache newCache(Path directory, DataSize diskSize) {
+        return new ResultCache(true, directory, DataSize.ofMegabytes(1), diskSize, Duration.ofMinutes(1), clock);
+    }
+
+    private static class MutableClock extends Clock {
+
+        private Instant now = Instant.parse("2025-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package dev.danvega.cg.filter;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryContentTest {
+
+    @Test
+    void isBinary_ShouldDetectNulBytesAndInvalidUtf8() {
+        assertFalse(BinaryContent.isBinary("class A { String s = \"héllo ✓\"; }".getBytes(StandardCharsets.UTF_8)));
+        assertTrue(BinaryContent.isBinary(new byte[]{'P', 'K', 3, 4, 0, 0}));
+        assertTrue(BinaryContent.isBinary(new byte[]{'a', (byte) 0xC3, 'b'}));
+        assertTrue(BinaryContent.isBinary(new byte[]{'a', (byte) 0xE2, (byte) 0x9C}));
+    }
+
+    @Test
+    void isBinary_ShouldOnlyInspectThePrefix() {
+        byte[] content = new byte[BinaryContent.SNIFF_LENGTH + 10];
+        Arrays.fill(content, (byte) 'a');
+        // A multi-byte character cut off by the end of the prefix is not an error
+        content[BinaryContent.SNIFF_LENGTH - 1] = (byte) 0xE2;
+        content[BinaryContent.SNIFF_LENGTH] = (byte) 0x9C;
+        content[BinaryContent.SNIFF_LENGTH + 1] = (byte) 0x93;
+        content[BinaryContent.SNIFF_LENGTH + 5] = 0;
+        assertFalse(BinaryContent.isBinary(content));
+    }
+}
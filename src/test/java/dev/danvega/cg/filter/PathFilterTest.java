@@ -0,0 +1,59 @@
+package dev.danvega.cg.filter;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PathFilterTest {
+
+    private static final List<String> INCLUDES = List.of("**/*.md", "*.xml", "**/*.java", "src/**/*.y?ml", "docs/**");
+    private static final List<String> EXCLUDES = List.of(".mvn/**", "target/**", "mvnw", "**/generated/*.java");
+
+    @Test
+    void includes_ShouldMatchPlainGlobSemantics() {
+        PathFilter filter = PathFilter.of(INCLUDES, EXCLUDES);
+        List<String> paths = List.of("README.md", "docs/README.md", "pom.xml", "module/pom.xml",
+                "src/main/App.java", "App.java", "src/main/resources/application.yaml", "src/app.yml",
+                "docs/images/logo.png", ".mvn/wrapper/maven-wrapper.properties", "target/classes/App.java",
+                "mvnw", "module/mvnw", "src/generated/Stub.java", "a/.java", "notes.txt");
+
+        for (String path : paths) {
+            assertEquals(matchesGlobs(path, INCLUDES) && !matchesGlobs(path, EXCLUDES), filter.includes(path), path);
+        }
+    }
+
+    @Test
+    void excludesDirectory_ShouldPruneExcludedSubtrees() {
+        PathFilter filter = PathFilter.of(INCLUDES, EXCLUDES);
+
+        assertTrue(filter.excludesDirectory("target"));
+        assertTrue(filter.excludesDirectory("target/classes"));
+        assertTrue(filter.excludesDirectory(".mvn"));
+        assertFalse(filter.excludesDirectory("src"));
+        assertFalse(filter.excludesDirectory("module/target"));
+        assertFalse(filter.excludesDirectory("src/generated"));
+    }
+
+    @Test
+    void includes_WithoutIncludePatterns_ShouldIncludeEverythingNotExcluded() {
+        PathFilter filter = PathFilter.of(List.of(), List.of("target/**"));
+
+        assertTrue(filter.includes("any/file.bin"));
+        assertFalse(filter.includes("target/file.bin"));
+    }
+
+    private static boolean matchesGlobs(String path, List<String> patterns) {
+        for (String pattern : patterns) {
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+            if (matcher.matches(Paths.get(path))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
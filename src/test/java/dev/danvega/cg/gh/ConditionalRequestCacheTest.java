@@ -0,0 +1,70 @@
+package dev.danvega.cg.gh;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestClient;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.header;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+class ConditionalRequestCacheTest {
+
+    @TempDir
+    Path cacheDir;
+
+    @Test
+    void intercept_WhenNotModified_ShouldReplayCachedBody() throws IOException {
+        ConditionalRequestCache cache = new ConditionalRequestCache(cacheDir, 1024 * 1024, 1024);
+        RestClient.Builder builder = RestClient.builder().requestInterceptor(cache);
+        MockRestServiceServer server = MockRestServiceServer.bindTo(builder).build();
+        RestClient client = builder.build();
+
+        HttpHeaders etag = new HttpHeaders();
+        etag.setETag("\"v1\"");
+        server.expect(requestTo("https://api.github.com/repos/o/r/contents/"))
+                .andRespond(withSuccess("[{\"name\":\"a\"}]", MediaType.APPLICATION_JSON).headers(etag));
+        server.expect(requestTo("https://api.github.com/repos/o/r/contents/"))
+                .andExpect(header(HttpHeaders.IF_NONE_MATCH, "\"v1\""))
+                .andRespond(withStatus(HttpStatus.NOT_MODIFIED));
+
+        String first = client.get().uri("https://api.github.com/repos/o/r/contents/").retrieve().body(String.class);
+        String second = client.get().uri("https://api.github.com/repos/o/r/contents/").retrieve().body(String.class);
+
+        server.verify();
+        assertEquals(first, second);
+        assertEquals(new ConditionalRequestCache.Stats(1, 1, 0, 1, cache.stats().bytes()), cache.stats());
+    }
+
+    @Test
+    void write_WhenOverMaxSize_ShouldEvictLeastRecentlyUsed() throws IOException {
+        ConditionalRequestCache cache = new ConditionalRequestCache(cacheDir, 300, 200);
+        RestClient.Builder builder = RestClient.builder().requestInterceptor(cache);
+        MockRestServiceServer server = MockRestServiceServer.bindTo(builder).ignoreExpectOrder(true).build();
+        RestClient client = builder.build();
+
+        String[] paths = {"a", "b", "c"};
+        for (String path : paths) {
+            HttpHeaders etag = new HttpHeaders();
+            etag.setETag("\"" + path + "\"");
+            server.expect(requestTo("https://api.github.com/" + path))
+                    .andRespond(withSuccess("x".repeat(120), MediaType.APPLICATION_JSON).headers(etag));
+        }
+        for (String path : paths) {
+            client.get().uri("https://api.github.com/" + path).retrieve().body(String.class);
+        }
+
+        ConditionalRequestCache.Stats stats = cache.stats();
+        assertEquals(1, stats.evictions());
+        assertEquals(2, stats.entries());
+    }
+}
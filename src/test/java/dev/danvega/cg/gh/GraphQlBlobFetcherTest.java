@@ -0,0 +1,201 @@
+package dev.danvega.cg.gh;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import dev.danvega.cg.filter.ContentLimits;
+import dev.danvega.cg.filter.PathFilter;
+import dev.danvega.cg.metrics.PipelineMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.client.RestClient;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the GraphQL fetch mode against a local HTTP server that answers tree, GraphQL and blob requests.
+ */
+class GraphQlBlobFetcherTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, String> files = new LinkedHashMap<>();
+    private final List<Integer> queries = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> restRequests = Collections.synchronizedList(new ArrayList<>());
+    private volatile int maxAliases = Integer.MAX_VALUE;
+    private HttpServer server;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void download_ShouldFetchBlobsInBatchesInTreeOrder() throws IOException {
+        for (int i = 0; i < 250; i++) {
+            files.put(String.format("src/File%03d.java", i), "class File" + i + " { }");
+        }
+
+        Map<String, String> written = download(service(100, DataSize.ofMegabytes(2), ContentLimits.NONE));
+
+        assertEquals(files, written);
+        assertEquals(List.of(100, 100, 50), queries);
+        assertEquals(List.of("/repos/o/r/git/trees/HEAD"), restRequests);
+    }
+
+    @Test
+    void download_ShouldCapBatchesBySize() throws IOException {
+        for (int i = 0; i < 10; i++) {
+            files.put("docs/page" + i + ".md", "x".repeat(400));
+        }
+
+        Map<String, String> written = download(service(100, DataSize.ofBytes(1000), ContentLimits.NONE));
+
+        assertEquals(files, written);
+        assertEquals(List.of(2, 2, 2, 2, 2), queries);
+    }
+
+    @Test
+    void download_WhenBatchFails_ShouldSplitAndShrinkFollowingBatches() throws IOException {
+        for (int i = 0; i < 200; i++) {
+            files.put(String.format("src/File%03d.java", i), "class File" + i + " { }");
+        }
+        maxAliases = 30;
+
+        Map<String, String> written = download(service(100, DataSize.ofMegabytes(2), ContentLimits.NONE));
+
+        assertEquals(files, written);
+        // 100 fails, both halves of 50 fail and their quarters of 25 succeed, the next batches stay at 25
+        assertEquals(List.of(100, 50, 25, 25, 50, 25, 25, 25), queries.subList(0, 8));
+        assertTrue(queries.stream().skip(8).allMatch(size -> size <= 50));
+        assertEquals(200, queries.stream().filter(size -> size <= maxAliases).mapToInt(Integer::intValue).sum());
+    }
+
+    @Test
+    void download_ShouldSkipBinaryAndFetchUnresolvedOrTruncatedBlobsOverRest() throws IOException {
+        files.put("a.md", "A");
+        files.put("image.png", "binary");
+        files.put("huge.txt", "truncated");
+        files.put("gone.md", "unresolved");
+        files.put("latin1.txt", "lossy");
+
+        Map<String, String> written = download(service(100, DataSize.ofMegabytes(2),
+                new ContentLimits(DataSize.ofBytes(0), DataSize.ofBytes(0), true)));
+
+        assertEquals(Map.of("a.md", "A", "huge.txt", "truncated", "gone.md", "unresolved", "latin1.txt", "lossy"), written);
+        assertEquals(List.of(5), queries);
+        assertEquals(List.of("/repos/o/r/git/trees/HEAD", "/repos/o/r/git/blobs/" + sha("huge.txt"),
+                "/repos/o/r/git/blobs/" + sha("gone.md"), "/repos/o/r/git/blobs/" + sha("latin1.txt")), restRequests);
+    }
+
+    private GitHubService service(int batchSize, DataSize maxBatchSize, ContentLimits limits) {
+        GitHubConfiguration config = new GitHubConfiguration("token", List.of(), List.of(), FetchMode.GRAPHQL, 4,
+                new GitHubConfiguration.HttpCache(false, null, null, null),
+                new GitHubConfiguration.BlobStore(false, null, null, null),
+                "http://127.0.0.1:" + server.getAddress().getPort(),
+                new GitHubConfiguration.RateLimit(false, 0, Duration.ZERO, Duration.ZERO, Duration.ZERO, 0),
+                new GitHubConfiguration.GraphQl(batchSize, maxBatchSize));
+        return new GitHubService(RestClient.builder(), objectMapper, config, PathFilter.of(List.of(), List.of()),
+                limits, new PipelineMetrics(new SimpleMeterRegistry()));
+    }
+
+    private static Map<String, String> download(GitHubService service) throws IOException {
+        Map<String, String> written = new LinkedHashMap<>();
+        service.downloadRepositoryContents("o", "r", (path, content) -> written.put(path, new String(content, StandardCharsets.UTF_8)));
+        return written;
+    }
+
+    private static String sha(String path) {
+        return String.format("%040x", Math.abs(path.hashCode()));
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        if (path.equals("/graphql")) {
+            JsonNode variables = objectMapper.readTree(exchange.getRequestBody()).path("variables");
+            int aliases = variables.size() - 2;
+            queries.add(aliases);
+            if (aliases > maxAliases) {
+                respond(exchange, 502, "{\"message\":\"We couldn't respond to your request in time\"}");
+                return;
+            }
+            ObjectNode repository = objectMapper.createObjectNode();
+            for (int i = 0; i < aliases; i++) {
+                String file = variables.path("e" + i).asText().substring("HEAD:".length());
+                String content = files.get(file);
+                if (content.equals("unresolved")) {
+                    repository.putNull("f" + i);
+                    continue;
+                }
+                ObjectNode blob = repository.putObject("f" + i);
+                blob.put("byteSize", content.length());
+                blob.put("isBinary", content.equals("binary"));
+                blob.put("isTruncated", content.equals("truncated"));
+                if (content.equals("binary")) {
+                    blob.putNull("text");
+                } else if (content.equals("lossy")) {
+                    // Bytes that are not valid UTF-8 come back as replacement characters
+                    blob.put("text", "lo\uFFFDy");
+                } else {
+                    blob.put("text", content.equals("truncated") ? "trunc" : content);
+                }
+            }
+            ObjectNode response = objectMapper.createObjectNode();
+            response.putObject("data").set("repository", repository);
+            respond(exchange, 200, response.toString());
+            return;
+        }
+
+        restRequests.add(path);
+        if (path.equals("/repos/o/r/git/trees/HEAD")) {
+            StringBuilder tree = new StringBuilder("{\"sha\":\"root\",\"truncated\":false,\"tree\":[");
+            String separator = "";
+            for (Map.Entry<String, String> file : files.entrySet()) {
+                tree.append(separator).append("{\"path\":\"").append(file.getKey())
+                        .append("\",\"mode\":\"100644\",\"type\":\"blob\",\"sha\":\"").append(sha(file.getKey()))
+                        .append("\",\"size\":").append(file.getValue().length()).append('}');
+                separator = ",";
+            }
+            respond(exchange, 200, tree.append("]}").toString());
+            return;
+        }
+        for (Map.Entry<String, String> file : files.entrySet()) {
+            if (path.equals("/repos/o/r/git/blobs/" + sha(file.getKey()))) {
+                respond(exchange, 200, file.getValue());
+                return;
+            }
+        }
+        respond(exchange, 404, "{}");
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package dev.danvega.cg.gh;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PackedBlobStoreTest {
+
+    private static final String SHA_A = "e69de29bb2d1d6434b8b29ae775ad8c2e48c5391";
+    private static final String SHA_B = "d670460b4b4aece5915caf5c68d12f560a9fe3e4";
+
+    @TempDir
+    Path storeDir;
+
+    @Test
+    void put_ShouldPersistBlobsAcrossReopen() throws IOException {
+        try (PackedBlobStore store = new PackedBlobStore(storeDir, 1024, 0)) {
+            store.put(SHA_A, "first".getBytes(StandardCharsets.UTF_8));
+            store.put(SHA_B, "second".getBytes(StandardCharsets.UTF_8));
+            assertArrayEquals("first".getBytes(StandardCharsets.UTF_8), store.get(SHA_A));
+        }
+
+        try (PackedBlobStore store = new PackedBlobStore(storeDir, 1024, 0)) {
+            assertEquals(2, store.size());
+            assertTrue(store.contains(SHA_B));
+            assertEquals("second", new String(store.get(SHA_B), StandardCharsets.UTF_8));
+            assertNull(store.get("0000000000000000000000000000000000000000"));
+        }
+    }
+
+    @Test
+    void put_ShouldRollOverToNewSegment() throws IOException {
+        try (PackedBlobStore store = new PackedBlobStore(storeDir, 8, 0)) {
+            store.put(SHA_A, "12345678".getBytes(StandardCharsets.UTF_8));
+            store.put(SHA_B, "abcdefgh".getBytes(StandardCharsets.UTF_8));
+            assertEquals("abcdefgh", new String(store.get(SHA_B), StandardCharsets.UTF_8));
+        }
+
+        assertTrue(Files.exists(storeDir.resolve("segment-00000.pack")));
+        assertTrue(Files.exists(storeDir.resolve("segment-00001.pack")));
+    }
+
+    @Test
+    void put_BeyondMaxSize_ShouldDropOldestSegmentsAndRewriteIndex() throws IOException {
+        String shaC = "0123456789abcdef0123456789abcdef01234567";
+        try (PackedBlobStore store = new PackedBlobStore(storeDir, 8, 16)) {
+            store.put(SHA_A, "12345678".getBytes(StandardCharsets.UTF_8));
+            store.put(SHA_B, "abcdefgh".getBytes(StandardCharsets.UTF_8));
+            store.put(shaC, "ABCDEFGH".getBytes(StandardCharsets.UTF_8));
+
+            assertFalse(store.contains(SHA_A));
+            assertNull(store.get(SHA_A));
+            assertEquals("abcdefgh", new String(store.get(SHA_B), StandardCharsets.UTF_8));
+        }
+
+        assertFalse(Files.exists(storeDir.resolve("segment-00000.pack")));
+        try (PackedBlobStore store = new PackedBlobStore(storeDir, 8, 16)) {
+            assertEquals(2, store.size());
+            assertEquals("ABCDEFGH", new String(store.get(shaC), StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package dev.danvega.cg.gh;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import dev.danvega.cg.filter.ContentLimits;
+import dev.danvega.cg.filter.PathFilter;
+import dev.danvega.cg.metrics.PipelineMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClient;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the scheduler against a local HTTP server that simulates GitHub's primary and secondary rate limits.
+ */
+class RateLimitSchedulerTest {
+
+    private static final GitHubConfiguration.RateLimit SETTINGS = new GitHubConfiguration.RateLimit(
+            true, 3, Duration.ofMillis(100), Duration.ofSeconds(2), Duration.ofMinutes(5), 10);
+
+    @TempDir
+    Path tempDir;
+
+    private final MutableClock clock = new MutableClock();
+    private final List<Duration> sleeps = Collections.synchronizedList(new ArrayList<>());
+    private final Map<String, Queue<StubResponse>> responses = new ConcurrentHashMap<>();
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+    private final Map<String, String> acceptHeaders = new ConcurrentHashMap<>();
+    private HttpServer server;
+    private String baseUrl;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void intercept_WhenTooManyRequests_ShouldRetryAfterRequestedDelay() {
+        stub("/a", new StubResponse(429, "", Map.of("Retry-After", "2")));
+        stub("/a", new StubResponse(200, "ok", Map.of()));
+
+        assertEquals("ok", client().get().uri("/a").retrieve().body(String.class));
+        assertEquals(List.of("/a", "/a"), requests);
+        assertEquals(1, sleeps.size());
+        assertTrue(sleeps.get(0).compareTo(Duration.ofSeconds(2)) >= 0);
+        assertTrue(sleeps.get(0).compareTo(Duration.ofMillis(2100)) < 0);
+    }
+
+    @Test
+    void intercept_WhenRateLimitedWithoutDelay_ShouldBackOffExponentiallyAndHalveConcurrency() {
+        RateLimitScheduler scheduler = scheduler(8);
+        stub("/a", new StubResponse(403, "API rate limit exceeded", Map.of("X-RateLimit-Remaining", "0",
+                "X-RateLimit-Reset", String.valueOf(clock.instant().getEpochSecond()))));
+        stub("/a", new StubResponse(429, "", Map.of()));
+        stub("/a", new StubResponse(200, "ok", Map.of()));
+
+        assertEquals("ok", client(scheduler).get().uri("/a").retrieve().body(String.class));
+        assertEquals(3, requests.size());
+        assertEquals(2, sleeps.size());
+        // Equal jitter keeps every wait between half and all of the backoff for its attempt
+        assertTrue(sleeps.get(0).toMillis() >= 50 && sleeps.get(0).toMillis() <= 100);
+        assertTrue(sleeps.get(1).toMillis() >= 100 && sleeps.get(1).toMillis() <= 200);
+        assertEquals(2, scheduler.stats().concurrency());
+    }
+
+    @Test
+    void intercept_WhenForbiddenBySecondaryLimitWithoutHeaders_ShouldWaitAtLeastAMinuteAndBackOff() {
+        RateLimitScheduler scheduler = scheduler(8);
+        String message = "{\"message\":\"You have exceeded a secondary rate limit. Please wait a few minutes before you try again.\"}";
+        stub("/a", new StubResponse(403, message, Map.of()));
+        stub("/a", new StubResponse(403, message, Map.of()));
+        stub("/a", new StubResponse(200, "ok", Map.of()));
+
+        assertEquals("ok", client(scheduler).get().uri("/a").retrieve().body(String.class));
+        assertEquals(3, requests.size());
+        assertEquals(2, sleeps.size());
+        assertTrue(sleeps.get(0).compareTo(Duration.ofMinutes(1)) >= 0);
+        assertTrue(sleeps.get(0).compareTo(Duration.ofSeconds(61)) < 0);
+        assertTrue(sleeps.get(1).compareTo(Duration.ofMinutes(2)) >= 0);
+        assertEquals(2, scheduler.stats().concurrency());
+    }
+
+    @Test
+    void intercept_WhenQuotaExhausted_ShouldWaitForReset() {
+        Instant reset = clock.instant().plusSeconds(30);
+        stub("/a", new StubResponse(200, "first", Map.of("X-RateLimit-Remaining", "0",
+                "X-RateLimit-Reset", String.valueOf(reset.getEpochSecond()))));
+        stub("/b", new StubResponse(200, "second", Map.of()));
+        RestClient client = client();
+
+        assertEquals("first", client.get().uri("/a").retrieve().body(String.class));
+        assertTrue(sleeps.isEmpty());
+        assertEquals("second", client.get().uri("/b").retrieve().body(String.class));
+
+        assertEquals(List.of(Duration.ofSeconds(30)), sleeps);
+    }
+
+    @Test
+    void intercept_WhenQuotaLow_ShouldSpreadRequestsUntilReset() {
+        Instant reset = clock.instant().plusSeconds(50);
+        stub("/a", new StubResponse(200, "a", Map.of("X-RateLimit-Remaining", "5",
+                "X-RateLimit-Reset", String.valueOf(reset.getEpochSecond()))));
+        stub("/b", new StubResponse(200, "b", Map.of()));
+        stub("/c", new StubResponse(200, "c", Map.of()));
+        RestClient client = client();
+
+        client.get().uri("/a").retrieve().body(String.class);
+        client.get().uri("/b").retrieve().body(String.class);
+        client.get().uri("/c").retrieve().body(String.class);
+
+        // 5 calls left for 50 seconds: the next call goes out at once, the one after that 10 seconds later
+        assertEquals(List.of(Duration.ofSeconds(10)), sleeps);
+    }
+
+    @Test
+    void intercept_WhenRetriesExhausted_ShouldThrowRateLimitExceeded() {
+        for (int i = 0; i <= SETTINGS.maxRetries(); i++) {
+            stub("/a", new StubResponse(429, "", Map.of("Retry-After", "1")));
+        }
+
+        RateLimitExceededException e = assertThrows(RateLimitExceededException.class,
+                () -> client().get().uri("/a").retrieve().body(String.class));
+        assertEquals(SETTINGS.maxRetries() + 1, requests.size());
+        assertTrue(e.retryAt().isAfter(clock.instant()));
+    }
+
+    @Test
+    void intercept_WhenForbiddenWithoutRateLimit_ShouldNotRetry() {
+        stub("/a", new StubResponse(403, "Resource not accessible", Map.of("X-RateLimit-Remaining", "4000",
+                "X-RateLimit-Reset", String.valueOf(clock.instant().plusSeconds(60).getEpochSecond()))));
+
+        assertThrows(HttpClientErrorException.Forbidden.class, () -> client().get().uri("/a").retrieve().body(String.class));
+        assertEquals(1, requests.size());
+        assertTrue(sleeps.isEmpty());
+    }
+
+    @Test
+    void downloadRepositoryContents_AfterRateLimitFailure_ShouldResumeFromBlobStore() throws IOException {
+        String tree = """
+                {"sha":"root","truncated":false,"tree":[
+                  {"path":"a.md","mode":"100644","type":"blob","sha":"aaaa","size":1},
+                  {"path":"b.md","mode":"100644","type":"blob","sha":"bbbb","size":1}]}""";
+        String reset = String.valueOf(Instant.now().plus(Duration.ofHours(1)).getEpochSecond());
+        stub("/repos/o/r/git/trees/HEAD", new StubResponse(200, tree, Map.of()));
+        stub("/repos/o/r/git/blobs/aaaa", new StubResponse(200, "A", Map.of()));
+        stub("/repos/o/r/git/blobs/bbbb", new StubResponse(403, "API rate limit exceeded",
+                Map.of("X-RateLimit-Remaining", "0", "X-RateLimit-Reset", reset)));
+        stub("/repos/o/r/git/trees/HEAD", new StubResponse(200, tree, Map.of()));
+        stub("/repos/o/r/git/blobs/bbbb", new StubResponse(200, "B", Map.of()));
+
+        GitHubConfiguration config = new GitHubConfiguration("token", List.of(), List.of(), FetchMode.TREES, 1,
+                new GitHubConfiguration.HttpCache(false, null, null, null),
+                new GitHubConfiguration.BlobStore(true, tempDir.resolve("blobs"), DataSize.ofMegabytes(1), null),
+                baseUrl, new GitHubConfiguration.RateLimit(true, 3, Duration.ofMillis(10), Duration.ofMillis(100),
+                Duration.ofSeconds(5), 10), null);
+        Map<String, String> files = new LinkedHashMap<>();
+        GitHubService interrupted = new GitHubService(RestClient.builder(), new ObjectMapper(), config, PathFilter.of(List.of(), List.of()),
+                ContentLimits.NONE, new PipelineMetrics(new SimpleMeterRegistry()));
+        try {
+            assertThrows(RateLimitExceededException.class,
+                    () -> interrupted.downloadRepositoryContents("o", "r", (path, content) -> files.put(path, new String(content, StandardCharsets.UTF_8))));
+        } finally {
+            interrupted.close();
+        }
+
+        // A later run, once the quota has been reset, only fetches the blob that is still missing
+        requests.clear();
+        GitHubService resumed = new GitHubService(RestClient.builder(), new ObjectMapper(), config, PathFilter.of(List.of(), List.of()),
+                ContentLimits.NONE, new PipelineMetrics(new SimpleMeterRegistry()));
+        try {
+            resumed.downloadRepositoryContents("o", "r", (path, content) -> files.put(path, new String(content, StandardCharsets.UTF_8)));
+        } finally {
+            resumed.close();
+        }
+        assertEquals(Map.of("a.md", "A", "b.md", "B"), files);
+        assertEquals(List.of("/repos/o/r/git/trees/HEAD", "/repos/o/r/git/blobs/bbbb"), requests);
+        assertEquals("application/vnd.github.raw+json", acceptHeaders.get("/repos/o/r/git/blobs/bbbb"));
+    }
+
+    private RateLimitScheduler scheduler(int maxConcurrency) {
+        return new RateLimitScheduler(SETTINGS, maxConcurrency, clock, duration -> {
+            sleeps.add(duration);
+            clock.advance(duration);
+        });
+    }
+
+    private RestClient client() {
+        return client(scheduler(4));
+    }
+
+    private RestClient client(RateLimitScheduler scheduler) {
+        return RestClient.builder().baseUrl(baseUrl).requestInterceptor(scheduler).build();
+    }
+
+    private void stub(String path, StubResponse response) {
+        responses.computeIfAbsent(path, p -> new ConcurrentLinkedQueue<>()).add(response);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        requests.add(path);
+        String accept = exchange.getRequestHeaders().getFirst("Accept");
+        if (accept != null) {
+            acceptHeaders.put(path, accept);
+        }
+        Queue<StubResponse> queue = responses.get(path);
+        StubResponse response = queue != null ? queue.poll() : null;
+        if (response == null) {
+            response = new StubResponse(404, "{\"message\":\"Not Found\"}", Map.of());
+        }
+        byte[] body = response.body().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        response.headers().forEach((name, value) -> exchange.getResponseHeaders().set(name, value));
+        exchange.sendResponseHeaders(response.status(), body.length == 0 ? -1 : body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private record StubResponse(int status, String body, Map<String, String> headers) { }
+
+    private static class MutableClock extends Clock {
+
+        private Instant now = Instant.parse("2025-01-01T00:00:00Z");
+
+        synchronized void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public synchronized Instant instant() {
+            return now;
+        }
+    }
+}
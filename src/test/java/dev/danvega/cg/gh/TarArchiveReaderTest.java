@@ -0,0 +1,74 @@
+package dev.danvega.cg.gh;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TarArchiveReaderTest {
+
+    @Test
+    void nextEntry_ShouldReadFilesAndSkipUnreadData() throws IOException {
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        writeEntry(tar, "owner-repo-abc/", '5', new byte[0]);
+        writeEntry(tar, "owner-repo-abc/skipped.bin", '0', new byte[700]);
+        writeEntry(tar, "owner-repo-abc/README.md", '0', "# Hello".getBytes(StandardCharsets.UTF_8));
+        tar.write(new byte[1024]);
+
+        TarArchiveReader reader = new TarArchiveReader(new ByteArrayInputStream(tar.toByteArray()));
+
+        TarArchiveReader.Entry dir = reader.nextEntry();
+        assertTrue(dir.directory());
+        assertEquals("owner-repo-abc/skipped.bin", reader.nextEntry().path());
+        TarArchiveReader.Entry readme = reader.nextEntry();
+        assertEquals("owner-repo-abc/README.md", readme.path());
+        assertEquals("# Hello", new String(reader.readCurrent(), StandardCharsets.UTF_8));
+        assertNull(reader.nextEntry());
+    }
+
+    @Test
+    void nextEntry_ShouldUsePaxPathAndIgnoreGlobalHeaders() throws IOException {
+        String longPath = "owner-repo-abc/" + "nested/".repeat(20) + "File.java";
+        byte[] pax = paxRecord("path", longPath);
+
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        writeEntry(tar, "pax_global_header", 'g', paxRecord("comment", "abc"));
+        writeEntry(tar, "PaxHeader", 'x', pax);
+        writeEntry(tar, "truncated-name", '0', "class File {}".getBytes(StandardCharsets.UTF_8));
+        tar.write(new byte[1024]);
+
+        TarArchiveReader reader = new TarArchiveReader(new ByteArrayInputStream(tar.toByteArray()));
+
+        TarArchiveReader.Entry entry = reader.nextEntry();
+        assertEquals(longPath, entry.path());
+        assertEquals("class File {}", new String(reader.readCurrent(), StandardCharsets.UTF_8));
+        assertNull(reader.nextEntry());
+    }
+
+    private static byte[] paxRecord(String key, String value) {
+        String body = " " + key + "=" + value + "\n";
+        int length = body.getBytes(StandardCharsets.UTF_8).length;
+        int total = length + String.valueOf(length).length();
+        if (String.valueOf(total).length() != String.valueOf(length).length()) {
+            total++;
+        }
+        return (total + body).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void writeEntry(ByteArrayOutputStream tar, String name, char type, byte[] data) throws IOException {
+        byte[] header = new byte[512];
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(nameBytes, 0, header, 0, Math.min(nameBytes.length, 100));
+        byte[] size = String.format("%011o", data.length).getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(size, 0, header, 124, size.length);
+        header[156] = (byte) type;
+        System.arraycopy("ustar".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 5);
+        tar.write(header);
+        tar.write(data);
+        tar.write(new byte[(512 - data.length % 512) % 512]);
+    }
+}
@@ -0,0 +1,94 @@
+package dev.danvega.cg.job;
+
+import dev.danvega.cg.GeneratedContent;
+import dev.danvega.cg.metrics.PipelineMetrics;
+import dev.danvega.cg.output.Gzip;
+import dev.danvega.cg.output.TokenSummary;
+import gg.jte.TemplateEngine;
+import gg.jte.TemplateOutput;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.GZIPOutputStream;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+class GenerationJobControllerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private GenerationJobService jobService;
+    private TemplateEngine templateEngine;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        jobService = mock(GenerationJobService.class);
+        templateEngine = mock(TemplateEngine.class);
+        mockMvc = MockMvcBuilders.standaloneSetup(
+                new GenerationJobController(jobService, templateEngine, new PipelineMetrics(new SimpleMeterRegistry())))
+                .build();
+    }
+
+    @Test
+    void view_WhenCompleted_ShouldRenderDecompressedResultAndSummary() throws Exception {
+        TokenSummary summary = new TokenSummary(100, 12, 8, false, null,
+                List.of(new TokenSummary.FileTokens("a.md", 12, 8)));
+        GenerationJob job = completedJob("File: a.md\n\né a\n\n", summary);
+        when(jobService.find("job-1")).thenReturn(Optional.of(job));
+        doAnswer(invocation -> {
+            Map<String, Object> model = invocation.getArgument(1);
+            TemplateOutput output = invocation.getArgument(2);
+            GeneratedContent content = (GeneratedContent) model.get("content");
+            output.writeContent("<textarea>");
+            content.writeTo(output);
+            output.writeContent("</textarea>" + content.summary().tokens());
+            return null;
+        }).when(templateEngine).render(eq("result.jte"), anyMap(), any(TemplateOutput.class));
+
+        mockMvc.perform(get("/jobs/job-1/view"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("text/html;charset=UTF-8"))
+                .andExpect(content().string("<textarea>File: a.md\n\né a\n\n</textarea>12"));
+    }
+
+    @Test
+    void view_WhenNotCompleted_ShouldReturnConflict() throws Exception {
+        GenerationJob job = new GenerationJob("job-2", null, "/tmp/project", null, 0, tempDir.resolve("job-2.md.gz"));
+        when(jobService.find("job-2")).thenReturn(Optional.of(job));
+
+        mockMvc.perform(get("/jobs/job-2/view"))
+                .andExpect(status().isConflict());
+        mockMvc.perform(get("/jobs/unknown/view"))
+                .andExpect(status().isNotFound());
+        verifyNoInteractions(templateEngine);
+    }
+
+    private GenerationJob completedJob(String document, TokenSummary summary) throws Exception {
+        Path resultFile = tempDir.resolve("job-1.md.gz");
+        try (OutputStream file = Files.newOutputStream(resultFile);
+             GZIPOutputStream out = Gzip.compress(file, false)) {
+            out.write(document.getBytes(StandardCharsets.UTF_8));
+        }
+        GenerationJob job = new GenerationJob("job-1", null, "/tmp/project", null, 100, resultFile);
+        job.start();
+        job.complete(Files.size(resultFile), summary);
+        return job;
+    }
+}
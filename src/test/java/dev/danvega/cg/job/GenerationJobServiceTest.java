@@ -0,0 +1,134 @@
+package dev.danvega.cg.job;
+
+import dev.danvega.cg.ContentGeneratorService;
+import dev.danvega.cg.GenerationRequest;
+import dev.danvega.cg.output.Gzip;
+import dev.danvega.cg.output.ProgressListener;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class GenerationJobServiceTest {
+
+    @TempDir
+    Path jobDir;
+
+    private ContentGeneratorService contentGeneratorService;
+    private GenerationJobService jobService;
+
+    @BeforeEach
+    void setUp() {
+        contentGeneratorService = mock(ContentGeneratorService.class);
+        jobService = new GenerationJobService(contentGeneratorService, jobDir, 1, 1,
+                Duration.ofMinutes(10), Duration.ofMillis(50), true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jobService.close();
+    }
+
+    @Test
+    void submit_ShouldRunJobAndKeepResult() throws Exception {
+        doAnswer(invocation -> {
+            GZIPOutputStream out = Gzip.compress(invocation.getArgument(1), true);
+            ProgressListener listener = invocation.<GenerationRequest>getArgument(0).listener();
+            listener.filesDiscovered(2);
+            out.write("File: a.md\n\nA\n\n".getBytes(StandardCharsets.UTF_8));
+            listener.fileWritten("a.md", 15);
+            out.write("File: b.md\n\nB\n\n".getBytes(StandardCharsets.UTF_8));
+            listener.fileWritten("b.md", 15);
+            out.finish();
+            return null;
+        }).when(contentGeneratorService).generateContent(argThat(request -> "https://github.com/user/repo".equals(request.githubUrl())
+                && request.tokenBudget() == 0), any(OutputStream.class), eq(true));
+
+        GenerationJob job = jobService.submit("https://github.com/user/repo", null, null);
+        awaitTerminal(job);
+
+        JobProgress progress = job.progress();
+        assertEquals(JobState.COMPLETED, progress.state());
+        assertEquals(2, progress.filesDiscovered());
+        assertEquals(2, progress.filesFetched());
+        assertEquals(Files.size(job.resultFile()), progress.bytes());
+        assertEquals(0L, progress.etaMillis());
+        try (InputStream in = Gzip.decompress(Files.newInputStream(job.resultFile()))) {
+            assertEquals("File: a.md\n\nA\n\nFile: b.md\n\nB\n\n", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        assertSame(job, jobService.find(job.id()).orElseThrow());
+    }
+
+    @Test
+    void cancel_ShouldStopRunningJobAtNextFile() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            ProgressListener listener = invocation.<GenerationRequest>getArgument(0).listener();
+            listener.filesDiscovered(1_000_000);
+            started.countDown();
+            for (int i = 0; i < 1_000_000; i++) {
+                Thread.sleep(5);
+                listener.fileWritten("file" + i, 1);
+            }
+            return null;
+        }).when(contentGeneratorService).generateContent(any(GenerationRequest.class), any(OutputStream.class),
+                anyBoolean());
+
+        GenerationJob job = jobService.submit(null, "/tmp/project", null);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(jobService.cancel(job.id()));
+        awaitTerminal(job);
+
+        assertEquals(JobState.CANCELLED, job.state());
+        assertFalse(jobService.cancel(job.id()));
+        // The worker removes the partial result once generation has unwound
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (Files.exists(job.resultFile()) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(Files.exists(job.resultFile()));
+    }
+
+    @Test
+    void submit_ShouldRejectJobsBeyondQueueCapacity() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            release.await();
+            return null;
+        }).when(contentGeneratorService).generateContent(any(GenerationRequest.class), any(OutputStream.class),
+                anyBoolean());
+
+        GenerationJob running = jobService.submit(null, "/tmp/a", null);
+        GenerationJob queued = jobService.submit(null, "/tmp/b", null);
+        assertThrows(RejectedExecutionException.class, () -> jobService.submit(null, "/tmp/c", null));
+
+        assertTrue(jobService.cancel(queued.id()));
+        release.countDown();
+        awaitTerminal(running);
+        assertEquals(JobState.COMPLETED, running.state());
+        assertEquals(JobState.CANCELLED, queued.state());
+    }
+
+    private static void awaitTerminal(GenerationJob job) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!job.state().isTerminal() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
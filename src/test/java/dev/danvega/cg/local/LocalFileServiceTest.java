@@ -0,0 +1,159 @@
+package dev.danvega.cg.local;
+
+import dev.danvega.cg.filter.ContentLimits;
+import dev.danvega.cg.filter.PathFilter;
+import dev.danvega.cg.metrics.PipelineMetrics;
+import dev.danvega.cg.output.DocumentWriter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LocalFileServiceTest {
+
+    @TempDir
+    Path sourceDir;
+
+    private final PathFilter pathFilter = PathFilter.of(List.of("**/*.java", "**/*.md"), List.of("target/**"));
+
+    @Test
+    void processLocalDirectory_ShouldWriteMatchingFilesInSortedOrder() throws IOException {
+        write("src/main/B.java", "class B {}");
+        write("src/main/A.java", "class A {}");
+        write("docs/guide.md", "# Guide");
+        write("docs/image.png", "png");
+        write("target/classes/A.java", "generated");
+
+        List<String> sections = new ArrayList<>();
+        service(16, DataSize.ofMegabytes(1)).processLocalDirectory(sourceDir.toString(),
+                (path, content) -> sections.add(path + "=" + new String(content, StandardCharsets.UTF_8)));
+
+        assertEquals(List.of(
+                Path.of("docs", "guide.md") + "=# Guide",
+                Path.of("src", "main", "A.java") + "=class A {}",
+                Path.of("src", "main", "B.java") + "=class B {}"), sections);
+    }
+
+    @Test
+    void processLocalDirectory_ShouldMatchSequentialOutputWithTinyByteBudget() throws IOException {
+        for (int i = 0; i < 200; i++) {
+            write("pkg" + (i % 7) + "/File" + i + ".java", "class File" + i + " {}\n".repeat(i % 13 + 1));
+        }
+
+        List<String> sequential = new ArrayList<>();
+        service(1, DataSize.ofBytes(1)).processLocalDirectory(sourceDir.toString(),
+                (path, content) -> sequential.add(path + "=" + new String(content, StandardCharsets.UTF_8)));
+        List<String> parallel = new ArrayList<>();
+        service(32, DataSize.ofBytes(64)).processLocalDirectory(sourceDir.toString(),
+                (path, content) -> parallel.add(path + "=" + new String(content, StandardCharsets.UTF_8)));
+
+        assertEquals(200, sequential.size());
+        assertEquals(sequential, parallel);
+    }
+
+    @Test
+    void processLocalDirectory_ShouldCopyBytesAndSkipInvalidUtf8() throws IOException {
+        write("a/Greeting.java", "class Greeting { String s = \"Grüße, 世界 🌍\"; }");
+        Files.createDirectories(sourceDir.resolve("b"));
+        Files.write(sourceDir.resolve("b/Broken.java"), new byte[] {'c', 'l', (byte) 0xC3, 0x28});
+        Files.write(sourceDir.resolve("b/Surrogate.java"), new byte[] {(byte) 0xED, (byte) 0xA0, (byte) 0x80});
+        Path output = Files.createTempFile("output", ".md");
+
+        try (FileChannel channel = FileChannel.open(output, StandardOpenOption.WRITE);
+             DocumentWriter writer = new DocumentWriter(channel)) {
+            service(4, DataSize.ofMegabytes(1)).processLocalDirectory(sourceDir.toString(), writer);
+        }
+
+        assertEquals("File: " + Path.of("a", "Greeting.java") + "\n\nclass Greeting { String s = \"Grüße, 世界 🌍\"; }\n\n",
+                Files.readString(output));
+        Files.delete(output);
+    }
+
+    @Test
+    void processLocalDirectory_ShouldHonourGitIgnoreFiles() throws IOException {
+        write(".gitignore", "node_modules/\n/build\n*.gen.java\n");
+        write("node_modules/lib/index.md", "# Dependency");
+        write("build/Out.java", "class Out {}");
+        write("src/build/Kept.java", "class Kept {}");
+        write("src/Model.gen.java", "class Generated {}");
+        write("src/.gitignore", "!Model.gen.java\nlocal/\n");
+        write("src/local/Scratch.java", "class Scratch {}");
+
+        List<String> paths = new ArrayList<>();
+        service(4, DataSize.ofMegabytes(1)).processLocalDirectory(sourceDir.toString(),
+                (path, content) -> paths.add(path.replace('\\', '/')));
+
+        assertEquals(List.of("src/Model.gen.java", "src/build/Kept.java"), paths);
+    }
+
+    @Test
+    void processLocalDirectory_WithLimits_ShouldSkipLargeAndBinaryFilesAndStopAtTotalSize() throws IOException {
+        write("a/Small.java", "class Small {}");
+        write("b/Large.java", "class Large {}\n".repeat(100));
+        write("c/Binary.java", "class Binary {}\0\0");
+        write("d/Next.java", "class Next {}");
+        write("e/Last.java", "class Last { int x; }");
+        ContentLimits limits = new ContentLimits(DataSize.ofBytes(100), DataSize.ofBytes(45), true);
+
+        LocalFileService service = new LocalFileService(pathFilter, limits, new PipelineMetrics(new SimpleMeterRegistry()), true, 4, DataSize.ofMegabytes(1), false, 0);
+        List<String> sections = new ArrayList<>();
+        service.processLocalDirectory(sourceDir.toString(), (path, content) -> sections.add(path.replace('\\', '/')));
+
+        // Binary.java still counts towards the total, which is why Last.java no longer fits
+        assertEquals(List.of("a/Small.java", "d/Next.java"), sections);
+    }
+
+    @Test
+    void processLocalDirectory_WithWatchEnabled_ShouldPatchChangedFiles() throws Exception {
+        write("src/A.java", "class A {}");
+        write("src/B.java", "class B {}");
+        LocalFileService service = new LocalFileService(pathFilter, ContentLimits.NONE, new PipelineMetrics(new SimpleMeterRegistry()), true, 4, DataSize.ofMegabytes(1), true, 2);
+        try {
+            assertEquals(List.of("src/A.java=class A {}", "src/B.java=class B {}"), generate(service));
+
+            write("src/A.java", "class A { int changed; }");
+            Files.delete(sourceDir.resolve("src/B.java"));
+            write("src/nested/C.java", "class C {}");
+            write("target/Ignored.java", "class Ignored {}");
+
+            List<String> expected = List.of("src/A.java=class A { int changed; }", "src/nested/C.java=class C {}");
+            long deadline = System.currentTimeMillis() + 10_000;
+            List<String> sections = generate(service);
+            while (!sections.equals(expected) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(100);
+                sections = generate(service);
+            }
+            assertEquals(expected, sections);
+        } finally {
+            service.close();
+        }
+    }
+
+    private List<String> generate(LocalFileService service) throws IOException {
+        List<String> sections = new ArrayList<>();
+        service.processLocalDirectory(sourceDir.toString(),
+                (path, content) -> sections.add(path.replace('\\', '/') + "=" + new String(content, StandardCharsets.UTF_8)));
+        return sections;
+    }
+
+    private LocalFileService service(int readConcurrency, DataSize maxInFlight) {
+        return new LocalFileService(pathFilter, ContentLimits.NONE, new PipelineMetrics(new SimpleMeterRegistry()), true, readConcurrency, maxInFlight, false, 0);
+    }
+
+    private void write(String path, String content) throws IOException {
+        Path file = sourceDir.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+    }
+}
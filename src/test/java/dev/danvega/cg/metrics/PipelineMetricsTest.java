@@ -0,0 +1,83 @@
+package dev.danvega.cg.metrics;
+
+import dev.danvega.cg.output.DocumentWriter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PipelineMetricsTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void observe_ShouldRecordMetersAndSnapshot() throws Exception {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        PipelineMetrics metrics = new PipelineMetrics(registry);
+
+        assertEquals("listed", metrics.observe(PipelineStage.LIST, "owner/repo", () -> "listed"));
+        assertThrows(IOException.class, () -> metrics.observe(PipelineStage.FETCH, "a.md", () -> {
+            throw new IOException("Not found");
+        }));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DocumentWriter writer = new DocumentWriter(out)) {
+            MeteredSink sink = new MeteredSink(writer, metrics);
+            sink.writeFile("a.md", "A".getBytes(StandardCharsets.UTF_8));
+            sink.writeFile("b.md", "BB".getBytes(StandardCharsets.UTF_8));
+        }
+        metrics.apiCall();
+        metrics.gauge("remaining", () -> 42);
+
+        assertEquals(1, registry.get("cg.list").tags("stage", "list", "error", "none").timer().count());
+        assertEquals(1, registry.get("cg.fetch").tags("stage", "fetch", "error", "IOException").timer().count());
+        assertEquals(2, registry.get("cg.write").tag("error", "none").timer().count());
+        assertEquals(2, registry.get(PipelineMetrics.FILES).counter().count());
+        assertEquals(3, registry.get(PipelineMetrics.BYTES).counter().count());
+        assertEquals(1, registry.get(PipelineMetrics.API_CALLS).counter().count());
+        assertEquals(42, registry.get("remaining").gauge().value());
+        PipelineMetrics.Snapshot snapshot = metrics.snapshot();
+        assertEquals(1, snapshot.stages().get("cg.list").count());
+        assertEquals(1, snapshot.stages().get("cg.fetch").count());
+        assertEquals(2, snapshot.stages().get("cg.write").count());
+        assertEquals(0, snapshot.stages().get("cg.render").count());
+        assertEquals(2, snapshot.files());
+        assertEquals(3, snapshot.bytes());
+        assertEquals(1, snapshot.apiCalls());
+        assertEquals(42.0, snapshot.gauges().get("remaining"));
+        assertEquals("File: a.md\n\nA\n\nFile: b.md\n\nBB\n\n", out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void observe_ShouldEmitJfrEvents() throws Exception {
+        PipelineMetrics metrics = new PipelineMetrics(new SimpleMeterRegistry());
+        Path file = tempDir.resolve("stages.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(StageEvent.NAME);
+            recording.start();
+            metrics.observe(PipelineStage.WRITE, "src/App.java", 128, () -> null);
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                .filter(event -> event.getEventType().getName().equals(StageEvent.NAME))
+                .toList();
+        assertEquals(1, events.size());
+        assertEquals("WRITE", events.get(0).getString("stage"));
+        assertEquals("src/App.java", events.get(0).getString("detail"));
+        assertEquals(128, events.get(0).getLong("bytes"));
+        assertFalse(events.get(0).getBoolean("failed"));
+    }
+}
@@ -0,0 +1,173 @@
+package dev.danvega.cg.output;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeduplicatingSinkTest {
+
+    private static final String LICENSE = "Permission is hereby granted, free of charge, to any person obtaining a copy "
+            + "of this software and associated documentation files.\n";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void writeFile_ShouldWriteIdenticalContentOnceAndKeepEveryPath() throws IOException {
+        Map<String, String> written = new LinkedHashMap<>();
+        DeduplicatingSink sink = new DeduplicatingSink(collect(written), settings(DataSize.ofMegabytes(1)));
+
+        sink.writeFile("LICENSE", LICENSE);
+        sink.writeFile("vendor/a/LICENSE", LICENSE);
+        sink.writeFile("small.txt", "tiny");
+        sink.writeFile("vendor/small.txt", "tiny");
+        Path copy = Files.writeString(tempDir.resolve("LICENSE"), LICENSE);
+        try (FileChannel channel = FileChannel.open(copy)) {
+            sink.writeFile("vendor/b/LICENSE", channel, channel.size());
+        }
+
+        assertEquals(List.of("LICENSE", "vendor/a/LICENSE", "small.txt", "vendor/small.txt", "vendor/b/LICENSE"),
+                List.copyOf(written.keySet()));
+        assertEquals(LICENSE, written.get("LICENSE"));
+        assertEquals("[Identical to LICENSE]", written.get("vendor/a/LICENSE"));
+        assertEquals("[Identical to LICENSE]", written.get("vendor/b/LICENSE"));
+        // Files below the minimum size are always written in full
+        assertEquals("tiny", written.get("vendor/small.txt"));
+        DeduplicatingSink.Savings savings = sink.savings();
+        assertEquals(2, savings.duplicates());
+        assertEquals(2L * (LICENSE.length() - "[Identical to LICENSE]".length()), savings.bytes());
+        assertTrue(savings.tokens() > 0);
+    }
+
+    @Test
+    void writeFile_WithChecksumCollision_ShouldCompareContent() throws IOException {
+        // Equal sizes and CRC-32C, different content: the last four bytes are chosen to reach the same checksum
+        byte[] first = (LICENSE + "AAAA").getBytes(StandardCharsets.UTF_8);
+        byte[] second = collide(first, (LICENSE.replace('P', 'Q') + "AAAA").getBytes(StandardCharsets.UTF_8));
+        assertEquals(crc(first), crc(second));
+        assertEquals(first.length, second.length);
+
+        Map<String, String> written = new LinkedHashMap<>();
+        DeduplicatingSink sink = new DeduplicatingSink(collect(written), settings(DataSize.ofMegabytes(1)));
+        sink.writeFile("first.txt", first);
+        sink.writeFile("second.txt", second);
+        sink.writeFile("third.txt", second.clone());
+
+        assertEquals(new String(second, StandardCharsets.UTF_8), written.get("second.txt"));
+        assertEquals("[Identical to second.txt]", written.get("third.txt"));
+        assertEquals(1, sink.savings().duplicates());
+    }
+
+    @Test
+    void writeFile_BeyondMemoryLimit_ShouldStreamChannelsAndStillMatchRememberedContent() throws IOException {
+        Map<String, String> written = new LinkedHashMap<>();
+        DeduplicatingSink sink = new DeduplicatingSink(collect(written), settings(DataSize.ofBytes(LICENSE.length())));
+
+        sink.writeFile("LICENSE", LICENSE);
+        Path other = Files.writeString(tempDir.resolve("NOTICE"), LICENSE.toUpperCase());
+        Path copy = Files.writeString(tempDir.resolve("COPY"), LICENSE);
+        try (FileChannel notice = FileChannel.open(other); FileChannel license = FileChannel.open(copy)) {
+            sink.writeFile("NOTICE", notice, notice.size());
+            sink.writeFile("vendor/LICENSE", license, license.size());
+            sink.writeFile("vendor/NOTICE", notice, notice.size());
+        }
+
+        assertEquals(LICENSE.toUpperCase(), written.get("NOTICE"));
+        assertEquals("[Identical to LICENSE]", written.get("vendor/LICENSE"));
+        // NOTICE did not fit into memory, so its copy cannot be confirmed and is written in full
+        assertEquals(LICENSE.toUpperCase(), written.get("vendor/NOTICE"));
+    }
+
+    private static DeduplicationConfiguration settings(DataSize maxMemory) {
+        return new DeduplicationConfiguration(true, DataSize.ofBytes(16), maxMemory);
+    }
+
+    private static ContentSink collect(Map<String, String> written) {
+        return (path, content) -> written.put(path, new String(content, StandardCharsets.UTF_8));
+    }
+
+    private static int crc(byte[] content) {
+        CRC32C crc = new CRC32C();
+        crc.update(content);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Overwrites the last four bytes of {@code target} so that its CRC-32C equals that of {@code source}. A CRC is
+     * linear, so the four bytes are found by solving for each of the 32 checksum bits.
+     */
+    private static byte[] collide(byte[] source, byte[] target) {
+        int wanted = crc(source);
+        byte[] result = target.clone();
+        int n = result.length;
+        result[n - 4] = result[n - 3] = result[n - 2] = result[n - 1] = 0;
+        int base = crc(result);
+        int[] columns = new int[32];
+        for (int bit = 0; bit < 32; bit++) {
+            byte[] flipped = result.clone();
+            flipped[n - 4 + bit / 8] ^= (byte) (1 << (bit % 8));
+            columns[bit] = crc(flipped) ^ base;
+        }
+        int[] solution = solve(columns, wanted ^ base);
+        for (int bit = 0; bit < 32; bit++) {
+            if (solution[bit] != 0) {
+                result[n - 4 + bit / 8] ^= (byte) (1 << (bit % 8));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Solves the linear system over GF(2) whose columns are the effects of the 32 bits on the checksum.
+     */
+    private static int[] solve(int[] columns, int target) {
+        long[] rows = new long[32];
+        for (int row = 0; row < 32; row++) {
+            long value = 0;
+            for (int bit = 0; bit < 32; bit++) {
+                value |= (long) ((columns[bit] >>> row) & 1) << bit;
+            }
+            rows[row] = value | (long) ((target >>> row) & 1) << 32;
+        }
+        int[] pivotRow = new int[32];
+        int rank = 0;
+        for (int bit = 0; bit < 32; bit++) {
+            int pivot = -1;
+            for (int row = rank; row < 32; row++) {
+                if ((rows[row] >>> bit & 1) != 0) {
+                    pivot = row;
+                    break;
+                }
+            }
+            if (pivot < 0) {
+                throw new IllegalStateException("Singular system");
+            }
+            long swap = rows[rank];
+            rows[rank] = rows[pivot];
+            rows[pivot] = swap;
+            for (int row = 0; row < 32; row++) {
+                if (row != rank && (rows[row] >>> bit & 1) != 0) {
+                    rows[row] ^= rows[rank];
+                }
+            }
+            pivotRow[bit] = rank++;
+        }
+        int[] solution = new int[32];
+        for (int bit = 0; bit < 32; bit++) {
+            solution[bit] = (int) (rows[pivotRow[bit]] >>> 32 & 1);
+        }
+        return solution;
+    }
+}
@@ -0,0 +1,89 @@
+package dev.danvega.cg.output;
+
+import dev.danvega.cg.filter.FilePriority;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBudgetSinkTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void estimate_ShouldCountWordsSymbolsAndCharacters() {
+        assertEquals(0, TokenEstimator.estimate(bytes("  \n\t ")));
+        // "public", "static", "void", "main", "(", ")", "{", "}"
+        assertEquals(8, TokenEstimator.estimate(bytes("public static void main() {}")));
+        // A 20 character identifier is split into chunks of six
+        assertEquals(4, TokenEstimator.estimate(bytes("averyveryverylongone")));
+        // Every non-ASCII character costs a token, however many bytes it takes
+        assertEquals(3, TokenEstimator.estimate(bytes("äö€")));
+    }
+
+    @Test
+    void update_ShouldCarryUnfinishedWordsAcrossBuffers() throws IOException {
+        String text = "int counter = 0; // Zähler\n".repeat(5000);
+        TokenEstimator estimator = new TokenEstimator();
+        byte[] content = bytes(text);
+        for (int offset = 0; offset < content.length; offset += 7) {
+            estimator.update(ByteBuffer.wrap(content, offset, Math.min(7, content.length - offset)));
+        }
+        assertEquals(TokenEstimator.estimate(content), estimator.count());
+
+        Path file = Files.write(tempDir.resolve("Counter.java"), content);
+        try (FileChannel channel = FileChannel.open(file)) {
+            assertEquals(TokenEstimator.estimate(content), new TokenEstimator().estimate(channel, channel.size()));
+            assertEquals(0, channel.position());
+        }
+    }
+
+    @Test
+    void writeFile_ShouldStopAtFirstFileBeyondBudget() throws IOException {
+        List<String> written = new ArrayList<>();
+        FilePriority priority = FilePriority.of(List.of("README*", "src/main/**"));
+        TokenBudgetSink sink = new TokenBudgetSink((path, content) -> written.add(path), 30, priority);
+
+        sink.writeFile("README.md", "# Project");
+        sink.writeFile("src/main/App.java", "class App {}");
+        TokenBudgetExceededException e = assertThrows(TokenBudgetExceededException.class,
+                () -> sink.writeFile("src/test/AppTest.java", "class AppTest { void test() { assert true; } }"));
+
+        assertTrue(e.getMessage().contains("src/test/AppTest.java"));
+        assertEquals(List.of("README.md", "src/main/App.java"), written);
+        TokenSummary summary = sink.summary();
+        assertTrue(summary.truncated());
+        assertEquals("src/test/AppTest.java", summary.stoppedAt());
+        assertEquals(2, summary.files().size());
+        assertEquals(21, summary.bytes());
+        assertEquals(summary.files().get(0).tokens() + summary.files().get(1).tokens(), summary.tokens());
+        assertTrue(summary.tokens() <= 30);
+    }
+
+    @Test
+    void fileOrder_ShouldRankByFirstMatchingPatternAndKeepTies() {
+        FilePriority priority = FilePriority.of(List.of("README*", "pom.xml", "src/main/**"));
+        TokenBudgetSink sink = new TokenBudgetSink((path, content) -> { }, 100, priority);
+
+        List<String> paths = new ArrayList<>(List.of("src/test/BTest.java", "src/main/B.java", "pom.xml",
+                "docs/guide.md", "README.md", "src/main/A.java", "src/test/ATest.java"));
+        paths.sort(sink.fileOrder());
+
+        assertEquals(List.of("README.md", "pom.xml", "src/main/B.java", "src/main/A.java",
+                "src/test/BTest.java", "docs/guide.md", "src/test/ATest.java"), paths);
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
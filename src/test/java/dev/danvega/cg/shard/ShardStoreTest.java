@@ -0,0 +1,106 @@
+package dev.danvega.cg.shard;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.danvega.cg.output.ContentSink;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void commit_ShouldSplitAtFileBoundariesWithinLimits() throws IOException {
+        ShardStore store = new ShardStore(new ObjectMapper(), tempDir, true, DataSize.ofBytes(200), 0, 2);
+        List<String> delegated = new ArrayList<>();
+        ShardWriter writer = store.open("repo", "key", (path, content) -> delegated.add(path));
+        for (int i = 0; i < 10; i++) {
+            writer.writeFile("src/File" + i + ".java", ("class File" + i + " { }").repeat(1 + i % 3));
+        }
+        Path large = tempDir.resolve("large.txt");
+        Files.writeString(large, "x".repeat(500));
+        try (FileChannel channel = FileChannel.open(large, StandardOpenOption.READ)) {
+            writer.writeFile("large.txt", channel, channel.size());
+        }
+        writer.writeFile("last.md", "# Last");
+        ShardManifest manifest = writer.commit();
+
+        assertEquals(12, delegated.size());
+        assertEquals(manifest, store.manifest("repo").orElseThrow());
+        assertTrue(store.isCurrent("repo", "key"));
+        assertFalse(store.isCurrent("repo", "other"));
+        for (ShardManifest.Shard shard : manifest.shards()) {
+            long size = Files.size(store.shard("repo", shard.index()).orElseThrow());
+            assertEquals(shard.bytes(), size);
+            // Only a shard holding a single oversized section may exceed the limit
+            assertTrue(size <= 200 || shard.files() == 1);
+        }
+        for (ShardManifest.Section section : manifest.files()) {
+            String text = new String(store.section("repo", section.path()).orElseThrow(), StandardCharsets.UTF_8);
+            assertTrue(text.startsWith("File: " + section.path() + "\n\n"));
+            assertTrue(text.endsWith("\n\n"));
+            assertEquals(section.length(), text.length());
+        }
+        ShardManifest.Section oversized = manifest.section("large.txt").orElseThrow();
+        assertEquals(0, oversized.offset());
+        assertEquals("File: last.md\n\n# Last\n\n",
+                new String(store.section("repo", "last.md").orElseThrow(), StandardCharsets.UTF_8));
+        assertEquals(manifest.bytes(), manifest.shards().stream().mapToLong(ShardManifest.Shard::bytes).sum());
+    }
+
+    @Test
+    void commit_ShouldStartShardsAtTokenLimitAndReplacePreviousShards() throws IOException {
+        ShardStore store = new ShardStore(new ObjectMapper(), tempDir, true, DataSize.ofBytes(0), 20, 1);
+        ShardWriter first = store.open("repo", null, (path, content) -> { });
+        for (int i = 0; i < 6; i++) {
+            first.writeFile("f" + i + ".txt", "a b c d e");
+        }
+        ShardManifest manifest = first.commit();
+        ShardWriter second = store.open("repo", null, (path, content) -> { });
+        second.writeFile("only.txt", "replaced");
+        ShardManifest replaced = second.commit();
+
+        assertTrue(manifest.shards().size() > 1);
+        assertTrue(manifest.shards().stream().allMatch(shard -> shard.tokens() <= 20));
+        assertEquals(replaced, store.manifest("repo").orElseThrow());
+        assertTrue(store.section("repo", "f0.txt").isEmpty());
+        assertTrue(store.shard("repo", 1).isEmpty());
+        try (var files = Files.list(tempDir)) {
+            assertEquals(List.of("repo.shards"), files.map(path -> path.getFileName().toString()).toList());
+        }
+    }
+
+    @Test
+    void abort_ShouldKeepPreviousShardsAndRejectUnsafeNames() throws IOException {
+        ShardStore store = new ShardStore(new ObjectMapper(), tempDir, true, DataSize.ofKilobytes(1), 0, 2);
+        ShardWriter kept = store.open("repo", "key", (path, content) -> { });
+        kept.writeFile("kept.md", "kept");
+        ShardManifest manifest = kept.commit();
+        ContentSink failing = (path, content) -> {
+            throw new IOException("Disk full");
+        };
+        ShardWriter aborted = store.open("repo", "other", failing);
+        assertThrows(IOException.class, () -> aborted.writeFile("lost.md", "lost"));
+        aborted.abort();
+
+        assertEquals(manifest, store.manifest("repo").orElseThrow());
+        assertTrue(store.manifest("..").isEmpty());
+        assertTrue(store.manifest("../repo").isEmpty());
+        try (var files = Files.list(tempDir)) {
+            assertEquals(1, files.count());
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package dev.danvega.cg.snapshot;
+
+import dev.danvega.cg.output.ContentSink;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void find_AfterCommit_ShouldServeViewsInDocumentOrder() throws IOException {
+        SnapshotStore store = new SnapshotStore(true, tempDir.resolve("snapshots"), DataSize.ofMegabytes(1));
+        Map<String, String> passedOn = new LinkedHashMap<>();
+        SnapshotWriter writer = store.open("key", collect(passedOn));
+        writer.writeFile("README.md", "# Readme");
+        writer.writeFile("src/main/App.java", "class App { }");
+        Path notes = Files.writeString(tempDir.resolve("notes.txt"), "notes");
+        try (FileChannel channel = FileChannel.open(notes)) {
+            writer.writeFile("docs/notes.txt", channel, channel.size());
+        }
+        writer.writeFile("src/main/Util.java", "class Util { }");
+        writer.writeFile("src/test/AppTest.java", "class AppTest { }");
+        assertFalse(store.contains("key"));
+        writer.commit();
+
+        Snapshot snapshot = store.find("key").orElseThrow();
+        assertEquals(5, passedOn.size());
+        assertEquals(5, snapshot.size());
+        assertSame(snapshot, store.find("key").orElseThrow());
+        assertEquals(List.of("src/main/App.java", "src/main/Util.java", "src/test/AppTest.java"),
+                List.copyOf(view(snapshot, new ViewFilter(List.of("**/*.java"), List.of(), "")).keySet()));
+        assertEquals(List.of("src/main/App.java", "src/main/Util.java"),
+                List.copyOf(view(snapshot, new ViewFilter(List.of(), List.of(), "/src/main/")).keySet()));
+        assertEquals(Map.of("docs/notes.txt", "notes"),
+                view(snapshot, new ViewFilter(List.of(), List.of("**/*.java", "*.md"), "")));
+        assertEquals(Map.of("src/main/Util.java", "class Util { }"),
+                view(snapshot, new ViewFilter(List.of("**/*.java"), List.of("**/App*.java"), "src/")));
+    }
+
+    @Test
+    void write_WithSinkOrder_ShouldFollowSinkOrder() throws IOException {
+        SnapshotStore store = new SnapshotStore(true, tempDir, DataSize.ofMegabytes(1));
+        SnapshotWriter writer = store.open("key", (path, content) -> { });
+        writer.writeFile("b.txt", "b");
+        writer.writeFile("a.txt", "a");
+        writer.commit();
+        List<String> order = new ArrayList<>();
+
+        store.find("key").orElseThrow().write(new ViewFilter(List.of("*.txt"), List.of(), ""), new ContentSink() {
+            @Override
+            public Comparator<String> fileOrder() {
+                return Comparator.naturalOrder();
+            }
+
+            @Override
+            public void writeFile(String path, byte[] content) {
+                order.add(path);
+            }
+        });
+
+        assertEquals(List.of("a.txt", "b.txt"), order);
+    }
+
+    @Test
+    void publish_BeyondMaxSize_ShouldEvictLeastRecentlyUsed() throws IOException {
+        // Every snapshot takes about 150 bytes, so two of them fit but not three
+        SnapshotStore store = new SnapshotStore(true, tempDir, DataSize.ofBytes(400));
+        commit(store, "first");
+        commit(store, "second");
+        assertTrue(store.find("first").isPresent());
+        age();
+        commit(store, "third");
+
+        assertTrue(store.contains("first"));
+        assertFalse(store.contains("second"));
+        assertTrue(store.contains("third"));
+    }
+
+    @Test
+    void find_WhilePublishing_ShouldNeverMixGenerations() throws Exception {
+        SnapshotStore store = new SnapshotStore(true, tempDir, DataSize.ofMegabytes(1));
+        AtomicBoolean done = new AtomicBoolean();
+        Thread publisher = Thread.ofPlatform().start(() -> {
+            try {
+                for (int generation = 0; generation < 200; generation++) {
+                    // Every generation has a different layout, so a mixed pair of files yields wrong slices
+                    SnapshotWriter writer = store.open("key", (path, content) -> { });
+                    writer.writeFile("a.txt", String.valueOf(generation % 10).repeat(1 + generation % 7));
+                    writer.writeFile("b.txt", String.valueOf(generation % 10).repeat(1 + generation % 7));
+                    writer.commit();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                done.set(true);
+            }
+        });
+
+        while (!done.get()) {
+            Optional<Snapshot> snapshot = store.find("key");
+            if (snapshot.isPresent()) {
+                Map<String, String> files = view(snapshot.get(), new ViewFilter(List.of(), List.of(), ""));
+                assertEquals(files.get("a.txt"), files.get("b.txt"));
+                assertTrue(files.get("a.txt").chars().distinct().count() == 1, files.get("a.txt"));
+            }
+        }
+        publisher.join();
+    }
+
+    @Test
+    void abort_ShouldLeaveNoSnapshot() throws IOException {
+        SnapshotStore store = new SnapshotStore(true, tempDir, DataSize.ofMegabytes(1));
+        SnapshotWriter writer = store.open("key", (path, content) -> { });
+        writer.writeFile("a.txt", "a");
+        writer.abort();
+
+        assertFalse(store.contains("key"));
+        assertTrue(store.find("key").isEmpty());
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    private void commit(SnapshotStore store, String key) throws IOException {
+        age();
+        SnapshotWriter writer = store.open(key, (path, content) -> { });
+        writer.writeFile(key + ".txt", "x".repeat(100));
+        writer.commit();
+    }
+
+    /**
+     * Moves the last use of every snapshot a minute back, so their order does not depend on the clock resolution.
+     */
+    private void age() throws IOException {
+        try (Stream<Path> files = Files.list(tempDir)) {
+            for (Path file : files.toList()) {
+                Instant modified = Files.getLastModifiedTime(file).toInstant();
+                Files.setLastModifiedTime(file, FileTime.from(modified.minus(Duration.ofMinutes(1))));
+            }
+        }
+    }
+
+    private static Map<String, String> view(Snapshot snapshot, ViewFilter view) throws IOException {
+        Map<String, String> written = new LinkedHashMap<>();
+        snapshot.write(view, collect(written));
+        return written;
+    }
+
+    private static ContentSink collect(Map<String, String> written) {
+        return (path, content) -> written.put(path, new String(content, StandardCharsets.UTF_8));
+    }
+}